@@ -0,0 +1,558 @@
+package sh.hell.compactchess;
+
+import sh.hell.compactchess.engine.Engine;
+import sh.hell.compactchess.engine.EvalAnnotator;
+import sh.hell.compactchess.exceptions.ChessException;
+import sh.hell.compactchess.game.CGNReader;
+import sh.hell.compactchess.game.CGNVersion;
+import sh.hell.compactchess.game.CGNWriter;
+import sh.hell.compactchess.game.Game;
+import sh.hell.compactchess.game.GameStatus;
+import sh.hell.compactchess.game.GameValidator;
+import sh.hell.compactchess.game.LazyGame;
+import sh.hell.compactchess.game.Move;
+import sh.hell.compactchess.game.PGNReader;
+import sh.hell.compactchess.game.PGNWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The non-interactive subcommands of {@link Main}, which read from stdin and write to stdout so they can be used in pipelines.
+ * Input is read on the calling thread and handed to a pool of workers in chunks, whose output is written in the order of the input.
+ * A summary of the throughput is written to stderr on exit, even if the command failed.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public final class Batch
+{
+	private static final int CHUNK_SIZE = 64;
+	private final String command;
+	private final HashMap<String, String> options = new HashMap<>();
+	private final AtomicLong items = new AtomicLong();
+	private final AtomicLong plies = new AtomicLong();
+	private final InputStream in = new BufferedInputStream(System.in, 1 << 16);
+	private final OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private volatile boolean failed = false;
+
+	private Batch(String[] args)
+	{
+		this.command = args[0];
+		for(int i = 1; i < args.length; i++)
+		{
+			if(!args[i].startsWith("--"))
+			{
+				throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+			}
+			final String key = args[i].substring(2);
+			if(i + 1 < args.length && !args[i + 1].startsWith("--"))
+			{
+				this.options.put(key, args[++i]);
+			}
+			else
+			{
+				this.options.put(key, "true");
+			}
+		}
+		if(this.options.containsKey("threads"))
+		{
+			this.threads = Integer.parseInt(this.options.get("threads"));
+			if(this.threads < 1)
+			{
+				throw new IllegalArgumentException("At least 1 thread is needed");
+			}
+		}
+	}
+
+	/**
+	 * Runs the given command on {@link System#in} and {@link System#out} as they are at the time of the call.
+	 *
+	 * @return The exit code: 0 on success, 1 if the command failed or found illegal games, and 2 for invalid arguments.
+	 */
+	public static int run(String[] args)
+	{
+		final Batch batch;
+		try
+		{
+			batch = new Batch(args);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			Batch.usage();
+			return 2;
+		}
+		final long start = System.nanoTime();
+		try
+		{
+			switch(batch.command)
+			{
+				case "convert":
+					batch.convert();
+					break;
+
+				case "perft":
+					batch.perft();
+					break;
+
+				case "analyse":
+				case "analyze":
+					batch.analyse();
+					break;
+
+				case "validate":
+					batch.validate();
+					break;
+
+				case "stats":
+					batch.stats();
+					break;
+
+				default:
+					Batch.usage();
+					return 2;
+			}
+			batch.out.flush();
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			Batch.usage();
+			return 2;
+		}
+		catch(IOException | ChessException | InterruptedException e)
+		{
+			System.err.println(e.getClass().getSimpleName() + ": " + e.getMessage());
+			return 1;
+		}
+		finally
+		{
+			batch.summarize(System.nanoTime() - start);
+		}
+		return (batch.failed ? 1 : 0);
+	}
+
+	private static void usage()
+	{
+		System.err.println("Usage: <command> [options] < input > output");
+		System.err.println();
+		System.err.println("  convert --from pgn|cgn --to pgn|cgn   Converts games");
+		System.err.println("  validate                             Writes \"<game> OK\" or \"<game> Ply <ply> (<move>): <reason>\" for every game");
+		System.err.println("  stats                                Writes the number of games, plies and results");
+		System.err.println("  analyse --engine <binary>            Annotates every position with [%eval] of a UCI engine");
+		System.err.println("  perft                                Writes \"<nodes> <FEN>\" for every FEN line");
+		System.err.println();
+		System.err.println("  --threads <n>         Number of workers, defaults to the number of processors");
+		System.err.println("  --cgn-version <V1|V2|V3>");
+		System.err.println("  --trusted             Don't validate moves");
+		System.err.println("  --depth <n>           Depth for analyse and perft, defaults to 12 and 3");
+	}
+
+	private void summarize(long nanos)
+	{
+		final double seconds = Math.max(nanos, 1) / 1000000000d;
+		final String unit = (this.command.equals("perft") ? "positions" : "games");
+		final String plyUnit = (this.command.equals("perft") ? "nodes" : "plies");
+		System.err.println(String.format(Locale.ROOT, "%d %s, %d %s in %.3f s: %.1f %s/s, %.1f %s/s", this.items.get(), unit, this.plies.get(), plyUnit, seconds, this.items.get() / seconds, unit, this.plies.get() / seconds, plyUnit));
+	}
+
+	private String option(String key, String fallback)
+	{
+		final String value = this.options.get(key);
+		return (value == null ? fallback : value);
+	}
+
+	private CGNVersion cgnVersion()
+	{
+		try
+		{
+			return CGNVersion.valueOf(this.option("cgn-version", CGNVersion.latest.name()).toUpperCase());
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Unknown CGN version: " + this.options.get("cgn-version"));
+		}
+	}
+
+	private String format(String key)
+	{
+		final String format = this.option(key, "pgn").toLowerCase();
+		if(!format.equals("pgn") && !format.equals("cgn"))
+		{
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+		return format;
+	}
+
+	private Source<LazyGame> games()
+	{
+		final boolean trusted = this.options.containsKey("trusted");
+		if(this.format("from").equals("cgn"))
+		{
+			final CGNReader reader = new CGNReader(this.in, false, this.cgnVersion()).setTrusted(trusted);
+			return new Source<LazyGame>()
+			{
+				@Override
+				LazyGame next() throws IOException, ChessException
+				{
+					return reader.readLazyGame();
+				}
+			};
+		}
+		final PGNReader reader = new PGNReader(this.in).setTrusted(trusted);
+		return new Source<LazyGame>()
+		{
+			@Override
+			LazyGame next() throws IOException, ChessException
+			{
+				return reader.readLazyGame();
+			}
+		};
+	}
+
+	private void convert() throws IOException, ChessException, InterruptedException
+	{
+		final boolean cgn = this.format("to").equals("cgn");
+		final CGNVersion version = this.cgnVersion();
+		this.process(this.games(), new Job<LazyGame>()
+		{
+			@Override
+			byte[] process(List<LazyGame> chunk, long first) throws IOException, ChessException
+			{
+				final ArrayList<Game> games = Batch.this.load(chunk);
+				final ByteArrayOutputStream os = new ByteArrayOutputStream();
+				if(cgn)
+				{
+					new CGNWriter(os, version).setBlockSize(CHUNK_SIZE).write(games).flush();
+				}
+				else
+				{
+					new PGNWriter(os).write(games).flush();
+				}
+				return os.toByteArray();
+			}
+		});
+	}
+
+	private ArrayList<Game> load(List<LazyGame> chunk) throws IOException, ChessException
+	{
+		final ArrayList<Game> games = new ArrayList<>(chunk.size());
+		for(LazyGame lazyGame : chunk)
+		{
+			final Game game = lazyGame.getGame();
+			this.plies.addAndGet(game.moves.size());
+			games.add(game);
+		}
+		return games;
+	}
+
+	private void validate() throws IOException, ChessException, InterruptedException
+	{
+		this.process(this.games(), new Job<LazyGame>()
+		{
+			@Override
+			byte[] process(List<LazyGame> chunk, long first) throws IOException
+			{
+				final StringBuilder sb = new StringBuilder();
+				for(LazyGame lazyGame : chunk)
+				{
+					final GameValidator.Report report = GameValidator.validate(lazyGame);
+					Batch.this.plies.addAndGet(report.plies);
+					if(!report.isLegal())
+					{
+						Batch.this.failed = true;
+					}
+					sb.append(++first).append(" ").append(report).append("\n");
+				}
+				return sb.toString().getBytes(StandardCharsets.UTF_8);
+			}
+		});
+	}
+
+	private void stats() throws IOException, ChessException, InterruptedException
+	{
+		final long[] statuses = new long[GameStatus.values().length];
+		final AtomicLong maxPlies = new AtomicLong();
+		final AtomicLong valid = new AtomicLong();
+		final AtomicLong invalid = new AtomicLong();
+		this.process(this.games(), new Job<LazyGame>()
+		{
+			@Override
+			byte[] process(List<LazyGame> chunk, long first) throws IOException
+			{
+				for(LazyGame lazyGame : chunk)
+				{
+					final Game game;
+					try
+					{
+						game = lazyGame.getGame();
+					}
+					catch(ChessException e)
+					{
+						invalid.incrementAndGet();
+						continue;
+					}
+					valid.incrementAndGet();
+					Batch.this.plies.addAndGet(game.moves.size());
+					synchronized(statuses)
+					{
+						statuses[game.status.ordinal()]++;
+						if(game.moves.size() > maxPlies.get())
+						{
+							maxPlies.set(game.moves.size());
+						}
+					}
+				}
+				return new byte[0];
+			}
+		});
+		final StringBuilder sb = new StringBuilder();
+		// Invalid games have no plies, so they're only counted on their own.
+		sb.append("Games: ").append(valid.get()).append("\n");
+		sb.append("Plies: ").append(this.plies.get()).append("\n");
+		sb.append(String.format(Locale.ROOT, "Average plies: %.1f%n", (valid.get() == 0 ? 0 : (double) this.plies.get() / valid.get())));
+		sb.append("Longest game: ").append(maxPlies.get()).append(" plies\n");
+		if(invalid.get() > 0)
+		{
+			sb.append("Invalid games: ").append(invalid.get()).append("\n");
+		}
+		for(GameStatus status : GameStatus.values())
+		{
+			if(statuses[status.ordinal()] > 0)
+			{
+				sb.append(status.name()).append(": ").append(statuses[status.ordinal()]).append("\n");
+			}
+		}
+		this.out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void analyse() throws IOException, ChessException, InterruptedException
+	{
+		final String binary = this.options.get("engine");
+		if(binary == null || binary.equals("true"))
+		{
+			throw new IllegalArgumentException("analyse needs --engine <binary>");
+		}
+		final int depth = Integer.parseInt(this.option("depth", "12"));
+		final ArrayBlockingQueue<Engine> engines = new ArrayBlockingQueue<>(this.threads);
+		final HashMap<String, String> uciOptions = new HashMap<>();
+		uciOptions.put("Threads", "1");
+		try
+		{
+			for(int i = 0; i < this.threads; i++)
+			{
+				engines.add(new Engine(binary, uciOptions));
+			}
+			this.process(this.games(), new Job<LazyGame>()
+			{
+				@Override
+				byte[] process(List<LazyGame> chunk, long first) throws IOException, ChessException, InterruptedException
+				{
+					final ArrayList<Game> games = Batch.this.load(chunk);
+					final Engine engine = engines.take();
+					try
+					{
+						for(Game game : games)
+						{
+							EvalAnnotator.annotate(engine, game, depth);
+						}
+					}
+					finally
+					{
+						engines.put(engine);
+					}
+					final ByteArrayOutputStream os = new ByteArrayOutputStream();
+					new PGNWriter(os).write(games).flush();
+					return os.toByteArray();
+				}
+			});
+		}
+		finally
+		{
+			for(Engine engine : engines)
+			{
+				engine.interrupt();
+			}
+		}
+	}
+
+	private void perft() throws IOException, ChessException, InterruptedException
+	{
+		final int depth = Integer.parseInt(this.option("depth", "3"));
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(this.in, StandardCharsets.UTF_8));
+		this.process(new Source<String>()
+		{
+			@Override
+			String next() throws IOException
+			{
+				String line;
+				do
+				{
+					line = reader.readLine();
+				}
+				while(line != null && line.trim().isEmpty());
+				return (line == null ? null : line.trim());
+			}
+		}, new Job<String>()
+		{
+			@Override
+			byte[] process(List<String> chunk, long first) throws ChessException
+			{
+				final StringBuilder sb = new StringBuilder();
+				for(String fen : chunk)
+				{
+					final long nodes = Batch.perft(new Game().loadFEN(fen).start(), depth);
+					Batch.this.plies.addAndGet(nodes);
+					sb.append(nodes).append(" ").append(fen).append("\n");
+				}
+				return sb.toString().getBytes(StandardCharsets.UTF_8);
+			}
+		});
+	}
+
+	/**
+	 * @return The number of positions reached after playing all legal move sequences of the given depth.
+	 */
+	private static long perft(Game game, int depth) throws ChessException
+	{
+		if(depth == 0)
+		{
+			return 1;
+		}
+		final ArrayList<Move> moves = game.getPossibleMoves();
+		if(depth == 1)
+		{
+			return moves.size();
+		}
+		long nodes = 0;
+		for(Move move : moves)
+		{
+			nodes += Batch.perft(move.commitInCopy(true, false), depth - 1);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Hands chunks of the given input to the workers and writes their results in order, keeping at most twice as many chunks pending as there are workers.
+	 */
+	private <T> void process(Source<T> source, final Job<T> job) throws IOException, ChessException, InterruptedException
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+		try
+		{
+			long first = 0;
+			T item;
+			ArrayList<T> chunk = new ArrayList<>(CHUNK_SIZE);
+			while((item = source.next()) != null)
+			{
+				chunk.add(item);
+				if(chunk.size() == CHUNK_SIZE)
+				{
+					pending.add(this.submit(executor, job, chunk, first));
+					first += chunk.size();
+					chunk = new ArrayList<>(CHUNK_SIZE);
+					while(!pending.isEmpty() && (pending.size() > 2 * this.threads || pending.peek().isDone()))
+					{
+						this.out.write(Batch.get(pending.poll()));
+					}
+				}
+			}
+			if(!chunk.isEmpty())
+			{
+				pending.add(this.submit(executor, job, chunk, first));
+			}
+			while(!pending.isEmpty())
+			{
+				this.out.write(Batch.get(pending.poll()));
+			}
+		}
+		finally
+		{
+			for(Future<byte[]> future : pending)
+			{
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	private <T> Future<byte[]> submit(ExecutorService executor, final Job<T> job, final ArrayList<T> chunk, final long first)
+	{
+		return executor.submit(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws IOException, ChessException, InterruptedException
+			{
+				final byte[] result = job.process(chunk, first);
+				Batch.this.items.addAndGet(chunk.size());
+				return result;
+			}
+		});
+	}
+
+	private static byte[] get(Future<byte[]> future) throws IOException, ChessException, InterruptedException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch(ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			if(cause instanceof ChessException)
+			{
+				throw (ChessException) cause;
+			}
+			if(cause instanceof InterruptedException)
+			{
+				throw (InterruptedException) cause;
+			}
+			if(cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static abstract class Source<T>
+	{
+		/**
+		 * @return The next item or null if the end of the input has been reached.
+		 */
+		abstract T next() throws IOException, ChessException;
+	}
+
+	private static abstract class Job<T>
+	{
+		/**
+		 * @param first The number of items before this chunk.
+		 * @return What to write for the given chunk.
+		 */
+		abstract byte[] process(List<T> chunk, long first) throws IOException, ChessException, InterruptedException;
+	}
+}
@@ -3,7 +3,9 @@ package sh.hell.compactchess;
 import sh.hell.compactchess.engine.Engine;
 import sh.hell.compactchess.exceptions.ChessException;
 import sh.hell.compactchess.game.AlgebraicNotationVariation;
+import sh.hell.compactchess.game.CGNVersion;
 import sh.hell.compactchess.game.Game;
+import sh.hell.compactchess.game.GameExporter;
 import sh.hell.compactchess.game.GameStatus;
 import sh.hell.compactchess.game.Move;
 
@@ -19,8 +21,15 @@ import java.util.Scanner;
 @SuppressWarnings("ResultOfMethodCallIgnored")
 public class Main
 {
+	/**
+	 * Runs the interactive menu or, if a command is given, that command on stdin and stdout. Run with "help" to list the commands.
+	 */
 	public static void main(String[] args) throws IOException, ChessException, InterruptedException
 	{
+		if(args.length > 0)
+		{
+			System.exit(Batch.run(args));
+		}
 		System.out.println();
 		main();
 	}
@@ -278,11 +287,8 @@ public class Main
 
 					case 'P':
 					case 'p':
-						for(Game game : games)
-						{
-							System.out.println(game.toPGN());
-							System.out.println();
-						}
+						new GameExporter().export(games, System.out);
+						System.out.println();
 						convertNotationTo(games);
 						return;
 
@@ -322,10 +328,7 @@ public class Main
 		final String file = new Scanner(System.in).useDelimiter("\\n").next();
 		System.out.println();
 		FileOutputStream os = new FileOutputStream(file);
-		for(Game game : games)
-		{
-			game.toCGN(os);
-		}
+		new GameExporter().setCGN(CGNVersion.latest).export(games, os);
 		os.close();
 		convertNotationTo(games);
 	}
@@ -0,0 +1,97 @@
+package sh.hell.compactchess.engine;
+
+import sh.hell.compactchess.exceptions.ChessException;
+import sh.hell.compactchess.game.Color;
+import sh.hell.compactchess.game.EndReason;
+import sh.hell.compactchess.game.Game;
+import sh.hell.compactchess.game.GamePipeline;
+import sh.hell.compactchess.game.Move;
+import sh.hell.compactchess.game.PositionCursor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A pipeline stage which annotates every move with [%eval] as evaluated by a UCI engine to a fixed depth.
+ * Every thread of the stage starts its own engine the first time it gets a game.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class EvalAnnotator extends GamePipeline.Stage
+{
+	private final String binary;
+	private final List<String> binaryArguments;
+	private final Map<String, String> uciOptions;
+	private final int depth;
+	private Engine engine = null;
+
+	public EvalAnnotator(String binary, Map<String, String> uciOptions, int depth)
+	{
+		this(binary, null, uciOptions, depth);
+	}
+
+	public EvalAnnotator(String binary, List<String> binaryArguments, Map<String, String> uciOptions, int depth)
+	{
+		this.binary = binary;
+		this.binaryArguments = binaryArguments;
+		this.uciOptions = uciOptions;
+		this.depth = depth;
+	}
+
+	/**
+	 * Annotates every move of the given game with the evaluation of the position after it from white's perspective.
+	 */
+	public static void annotate(Engine engine, Game game, int depth) throws IOException, ChessException, InterruptedException
+	{
+		for(PositionCursor position : game.positions())
+		{
+			final Move move = position.getMove();
+			if(move == null || (position.getPly() == game.moves.size() && game.endReason == EndReason.CHECKMATE))
+			{
+				continue;
+			}
+			engine.evaluateDepth(position.getGame(), depth).awaitConclusion();
+			final String eval;
+			if(engine.foundMate())
+			{
+				eval = "#" + (engine.getMater() == Color.WHITE ? "" : "-") + engine.getMateIn();
+			}
+			else
+			{
+				eval = String.format(Locale.ROOT, "%.2f", (position.getToMove() == Color.WHITE ? engine.score : -engine.score) / 100d);
+			}
+			synchronized(move.annotationTags)
+			{
+				move.annotationTags.add("[%eval " + eval + "]");
+			}
+		}
+	}
+
+	@Override
+	public Game process(Game game) throws IOException, ChessException, InterruptedException
+	{
+		if(this.engine == null)
+		{
+			this.engine = new Engine(this.binary, this.binaryArguments, this.uciOptions);
+		}
+		EvalAnnotator.annotate(this.engine, game, this.depth);
+		return game;
+	}
+
+	@Override
+	public GamePipeline.Stage worker()
+	{
+		return new EvalAnnotator(this.binary, this.binaryArguments, this.uciOptions, this.depth);
+	}
+
+	@Override
+	public void close()
+	{
+		if(this.engine != null)
+		{
+			this.engine.interrupt();
+			this.engine = null;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package sh.hell.compactchess.game;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded least-recently-used cache of finished algebraic notation strings, including check and checkmate suffixes, keyed by position hash and move.
+ * Set {@link Move#algebraicNotationCache} to have {@link Move#toAlgebraicNotation(AlgebraicNotationVariation, Language)} and {@link Game#toPGN()} consult it.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class AlgebraicNotationCache
+{
+	public final int capacity;
+	private final LinkedHashMap<Key, String> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public AlgebraicNotationCache(final int capacity)
+	{
+		if(capacity < 1)
+		{
+			throw new RuntimeException("Capacity has to be at least 1.");
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Key, String>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest)
+			{
+				return this.size() > AlgebraicNotationCache.this.capacity;
+			}
+		};
+	}
+
+	static int moveKey(Move move, Variant variant, AlgebraicNotationVariation variation, Language language)
+	{
+		return move.fromSquare.index() | (move.toSquare.index() << 6) | ((move.promoteTo == null ? 0 : move.promoteTo.ordinal() + 1) << 12) | (variant.ordinal() << 15) | (variation.ordinal() << 18) | (language.ordinal() << 21);
+	}
+
+	String get(long positionHash, int moveKey)
+	{
+		final String an;
+		synchronized(this.entries)
+		{
+			an = this.entries.get(new Key(positionHash, moveKey));
+		}
+		if(an == null)
+		{
+			misses.incrementAndGet();
+		}
+		else
+		{
+			hits.incrementAndGet();
+		}
+		return an;
+	}
+
+	void put(long positionHash, int moveKey, String an)
+	{
+		synchronized(this.entries)
+		{
+			this.entries.put(new Key(positionHash, moveKey), an);
+		}
+	}
+
+	public int size()
+	{
+		synchronized(this.entries)
+		{
+			return this.entries.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public double getHitRate()
+	{
+		final long hits = this.hits.get();
+		final long lookups = hits + this.misses.get();
+		if(lookups == 0)
+		{
+			return 0;
+		}
+		return (double) hits / lookups;
+	}
+
+	public AlgebraicNotationCache clear()
+	{
+		synchronized(this.entries)
+		{
+			this.entries.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+		return this;
+	}
+
+	private static final class Key
+	{
+		final long positionHash;
+		final int moveKey;
+
+		Key(long positionHash, int moveKey)
+		{
+			this.positionHash = positionHash;
+			this.moveKey = moveKey;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int) (positionHash ^ (positionHash >>> 32)) * 31 + moveKey;
+		}
+
+		@Override
+		public boolean equals(Object o2)
+		{
+			return o2 instanceof Key && this.positionHash == ((Key) o2).positionHash && this.moveKey == ((Key) o2).moveKey;
+		}
+	}
+}
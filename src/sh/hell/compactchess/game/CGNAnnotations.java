@@ -0,0 +1,263 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores [%clk], [%emt] and [%eval] commands in {@link CGNVersion#V3} as binary records instead of text.
+ * Clocks are delta-coded against the previous clock of the same player, and all values are zigzag varints.
+ * A record is only used if it turns back into exactly the same text, so annotations always round-trip.
+ */
+final class CGNAnnotations
+{
+	static final int CLOCK = 0b10000111;
+	static final int ELAPSED = 0b10001000;
+	static final int EVAL = 0b10001001;
+	private static final Pattern commandPattern = Pattern.compile("\\[%(clk|emt|eval) ([^\\]\\s]+)]");
+	private static final Pattern timePattern = Pattern.compile("^(-?)(\\d+):(\\d\\d):(\\d\\d)(?:\\.(\\d{1,3}))?$");
+	private static final Pattern evalPattern = Pattern.compile("^(?:#(-?\\d+)|(-?)(\\d+)\\.(\\d\\d))$");
+
+	private CGNAnnotations()
+	{
+	}
+
+	static boolean isRecord(int b)
+	{
+		return b == CLOCK || b == ELAPSED || b == EVAL;
+	}
+
+	/**
+	 * Writes the given annotation of the given ply as a mix of records and text annotations.
+	 *
+	 * @param clocks The last clock of either player in milliseconds, indexed by the parity of the ply.
+	 */
+	static void write(OutputStream os, String annotation, long[] clocks, int ply) throws IOException
+	{
+		final ArrayList<String> parts = new ArrayList<>();
+		final Matcher matcher = commandPattern.matcher(annotation);
+		int end = 0;
+		while(matcher.find())
+		{
+			CGNAnnotations.addText(parts, annotation.substring(end, matcher.start()));
+			parts.add(matcher.group());
+			end = matcher.end();
+		}
+		CGNAnnotations.addText(parts, annotation.substring(end));
+		if(end == 0 || !CGNAnnotations.join(parts).equals(annotation) || !CGNAnnotations.canonical(parts))
+		{
+			os.write(0b10000000);
+			Game.writeCGNString(os, annotation, CGNVersion.V3);
+			return;
+		}
+		for(String part : parts)
+		{
+			final Matcher command = commandPattern.matcher(part);
+			if(!command.matches())
+			{
+				os.write(0b10000000);
+				Game.writeCGNString(os, part, CGNVersion.V3);
+			}
+			else if(command.group(1).equals("clk"))
+			{
+				final long clock = CGNAnnotations.parseTime(command.group(2));
+				os.write(CLOCK);
+				CGNWriter.writeVarInt(os, CGNAnnotations.zigzag(clock - clocks[ply & 1]));
+				clocks[ply & 1] = clock;
+			}
+			else if(command.group(1).equals("emt"))
+			{
+				os.write(ELAPSED);
+				CGNWriter.writeVarInt(os, CGNAnnotations.zigzag(CGNAnnotations.parseTime(command.group(2))));
+			}
+			else
+			{
+				os.write(EVAL);
+				CGNWriter.writeVarInt(os, CGNAnnotations.zigzag(CGNAnnotations.parseEval(command.group(2))));
+			}
+		}
+	}
+
+	private static void addText(ArrayList<String> parts, String text)
+	{
+		text = text.trim();
+		if(!text.equals(""))
+		{
+			parts.add(text);
+		}
+	}
+
+	private static String join(ArrayList<String> parts)
+	{
+		final StringBuilder str = new StringBuilder();
+		for(String part : parts)
+		{
+			if(str.length() != 0)
+			{
+				str.append(" ");
+			}
+			str.append(part);
+		}
+		return str.toString();
+	}
+
+	private static boolean canonical(ArrayList<String> parts)
+	{
+		for(String part : parts)
+		{
+			final Matcher command = commandPattern.matcher(part);
+			if(!command.matches())
+			{
+				continue;
+			}
+			final String value = command.group(2);
+			if(command.group(1).equals("eval") ? !evalPattern.matcher(value).matches() || !CGNAnnotations.formatEval(CGNAnnotations.parseEval(value)).equals(value) : !timePattern.matcher(value).matches() || !CGNAnnotations.formatTime(CGNAnnotations.parseTime(value)).equals(value))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the record introduced by the given control byte.
+	 *
+	 * @return The annotation the record stands for.
+	 */
+	static String read(CGNReader reader, int b, long[] clocks, int ply) throws IOException, ChessException
+	{
+		final long value = CGNAnnotations.unzigzag(reader.readVarInt());
+		if(b == CLOCK)
+		{
+			clocks[ply & 1] += value;
+			return "[%clk " + CGNAnnotations.formatTime(clocks[ply & 1]) + "]";
+		}
+		if(b == ELAPSED)
+		{
+			return "[%emt " + CGNAnnotations.formatTime(value) + "]";
+		}
+		if(b == EVAL)
+		{
+			return "[%eval " + CGNAnnotations.formatEval(value) + "]";
+		}
+		throw new ChessException("Invalid CGN annotation record: " + String.format("%02X", b));
+	}
+
+	/**
+	 * Reads the values of the last [%clk], [%emt] and [%eval] commands in the given annotation. Commands with values that can't be parsed are ignored.
+	 *
+	 * @param values Set to the clock, the elapsed time and the evaluation as returned by {@link #parseEval(String)}, each being left as it is if there's no such command.
+	 */
+	static void parse(String annotation, long[] values)
+	{
+		final Matcher matcher = commandPattern.matcher(annotation);
+		while(matcher.find())
+		{
+			try
+			{
+				if(matcher.group(1).equals("clk"))
+				{
+					values[0] = CGNAnnotations.parseTime(matcher.group(2));
+				}
+				else if(matcher.group(1).equals("emt"))
+				{
+					values[1] = CGNAnnotations.parseTime(matcher.group(2));
+				}
+				else
+				{
+					values[2] = CGNAnnotations.parseEval(matcher.group(2));
+				}
+			}
+			catch(NumberFormatException ignored)
+			{
+			}
+		}
+	}
+
+	static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * @return The milliseconds of the given h:mm:ss time with an optional fraction.
+	 */
+	static long parseTime(String time)
+	{
+		final Matcher matcher = timePattern.matcher(time);
+		if(!matcher.matches())
+		{
+			throw new NumberFormatException("Invalid time: " + time);
+		}
+		long msecs = Long.parseLong(matcher.group(2)) * 3600000 + Long.parseLong(matcher.group(3)) * 60000 + Long.parseLong(matcher.group(4)) * 1000;
+		if(matcher.group(5) != null)
+		{
+			String fraction = matcher.group(5);
+			while(fraction.length() < 3)
+			{
+				fraction += "0";
+			}
+			msecs += Long.parseLong(fraction);
+		}
+		return (matcher.group(1).equals("-") ? -msecs : msecs);
+	}
+
+	static String formatTime(long msecs)
+	{
+		String time = "";
+		if(msecs < 0)
+		{
+			msecs = msecs * -1;
+			time = "-";
+		}
+		time += String.format("%d:%02d:%02d", msecs / 3600000, (msecs / 60000) % 60, (msecs / 1000) % 60);
+		if(msecs % 1000 != 0)
+		{
+			String fraction = String.format("%03d", msecs % 1000);
+			while(fraction.endsWith("0"))
+			{
+				fraction = fraction.substring(0, fraction.length() - 1);
+			}
+			time += "." + fraction;
+		}
+		return time;
+	}
+
+	/**
+	 * @return The given evaluation in centipawns shifted left by one, or the moves until mate shifted left by one with the lowest bit set.
+	 */
+	static long parseEval(String eval)
+	{
+		final Matcher matcher = evalPattern.matcher(eval);
+		if(!matcher.matches())
+		{
+			throw new NumberFormatException("Invalid evaluation: " + eval);
+		}
+		if(matcher.group(1) != null)
+		{
+			return (Long.parseLong(matcher.group(1)) << 1) | 1;
+		}
+		final long centipawns = Long.parseLong(matcher.group(3)) * 100 + Long.parseLong(matcher.group(4));
+		return (matcher.group(2).equals("-") ? -centipawns : centipawns) << 1;
+	}
+
+	static String formatEval(long eval)
+	{
+		if((eval & 1) != 0)
+		{
+			return "#" + (eval >> 1);
+		}
+		final long centipawns = eval >> 1;
+		final long abs = Math.abs(centipawns);
+		return (centipawns < 0 ? "-" : "") + (abs / 100) + "." + String.format("%02d", abs % 100);
+	}
+}
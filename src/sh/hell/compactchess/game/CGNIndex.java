@@ -0,0 +1,375 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * A sidecar file holding the byte offset of every game in a CGN file and, optionally, its date, Elo ratings and result in fixed-width entries, so games can be looked up by number with positional reads.
+ * With {@link CGNVersion#V3}, the offset is the one of the block containing the game, and the entry also holds the index of the game within that block.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class CGNIndex implements Closeable
+{
+	static final int MAGIC = 0x43474E49;
+	static final int HEADER_SIZE = 10;
+	static final int FLAG_HEADER_FIELDS = 0x01;
+	public final CGNVersion version;
+	public final boolean hasHeaderFields;
+	public final boolean dontCalculate;
+	private final RandomAccessFile cgnFile;
+	private final RandomAccessFile indexFile;
+	private final FileChannel cgn;
+	private final FileChannel index;
+	private final int games;
+	private final int entrySize;
+	private boolean trusted = false;
+
+	public CGNIndex(File cgn, File index) throws IOException, ChessException
+	{
+		this(cgn, index, false);
+	}
+
+	public CGNIndex(File cgn, File index, boolean dontCalculate) throws IOException, ChessException
+	{
+		this.dontCalculate = dontCalculate;
+		this.cgnFile = new RandomAccessFile(cgn, "r");
+		this.indexFile = new RandomAccessFile(index, "r");
+		this.cgn = this.cgnFile.getChannel();
+		this.index = this.indexFile.getChannel();
+		final ByteBuffer header = CGNIndex.read(this.index, 0, HEADER_SIZE);
+		if(header.getInt(0) != MAGIC)
+		{
+			this.close();
+			throw new ChessException(index.getName() + " is not a CGN index");
+		}
+		this.version = CGNVersion.values()[header.get(4)];
+		this.hasHeaderFields = ((header.get(5) & FLAG_HEADER_FIELDS) != 0);
+		this.games = header.getInt(6);
+		this.entrySize = (this.hasHeaderFields ? 21 : 12);
+		if(this.index.size() != HEADER_SIZE + (long) this.games * this.entrySize)
+		{
+			this.close();
+			throw new ChessException(index.getName() + " is incomplete");
+		}
+	}
+
+	/**
+	 * Scans the given CGN file without replaying any moves and writes an index of it.
+	 *
+	 * @param headerFields Set to true to also store the date, Elo ratings and result of every game.
+	 */
+	public static CGNIndex build(File cgn, CGNVersion version, File index, boolean headerFields) throws IOException, ChessException
+	{
+		final CGNReader reader = new CGNReader(new FileInputStream(cgn), false, version);
+		final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)));
+		int games = 0;
+		try
+		{
+			os.writeInt(MAGIC);
+			os.writeByte(version.ordinal());
+			os.writeByte(headerFields ? FLAG_HEADER_FIELDS : 0);
+			os.writeInt(0);
+			GameHeader header;
+			while((header = reader.readHeader()) != null)
+			{
+				os.writeLong(reader.getGameOffset());
+				os.writeInt(reader.getGameInBlock());
+				if(headerFields)
+				{
+					os.writeInt(CGNIndex.date(header.getTag("Date")));
+					os.writeShort(header.getElo(Color.WHITE));
+					os.writeShort(header.getElo(Color.BLACK));
+					os.writeByte(header.status.ordinal());
+				}
+				games++;
+			}
+		}
+		finally
+		{
+			os.close();
+			reader.close();
+		}
+		final RandomAccessFile file = new RandomAccessFile(index, "rw");
+		try
+		{
+			file.seek(6);
+			file.writeInt(games);
+		}
+		finally
+		{
+			file.close();
+		}
+		return new CGNIndex(cgn, index);
+	}
+
+	/**
+	 * @return The given PGN date as yyyymmdd with unknown parts being 0, or 0 if there is no date.
+	 */
+	static int date(String date)
+	{
+		if(date == null)
+		{
+			return 0;
+		}
+		final String[] parts = date.split("\\.");
+		int value = 0;
+		for(int i = 0; i < 3; i++)
+		{
+			value *= (i == 0 ? 1 : 100);
+			if(i < parts.length)
+			{
+				try
+				{
+					value += Integer.parseInt(parts[i].trim());
+				}
+				catch(NumberFormatException ignored)
+				{
+				}
+			}
+		}
+		return value;
+	}
+
+	static ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) == -1)
+			{
+				throw new EOFException("Unexpected end of file");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @param trusted Set to true to replay moves without validating them.
+	 * @see Game#fromCGN(java.io.InputStream, boolean, CGNVersion, boolean)
+	 */
+	public CGNIndex setTrusted(boolean trusted)
+	{
+		this.trusted = trusted;
+		return this;
+	}
+
+	public int size()
+	{
+		return this.games;
+	}
+
+	private ByteBuffer entry(int game) throws IOException
+	{
+		if(game < 0 || game >= this.games)
+		{
+			throw new IndexOutOfBoundsException("Game " + game + " of " + this.games);
+		}
+		return CGNIndex.read(this.index, HEADER_SIZE + (long) game * this.entrySize, this.entrySize);
+	}
+
+	private ByteBuffer headerFields(int game) throws IOException
+	{
+		if(!this.hasHeaderFields)
+		{
+			throw new IllegalStateException("The index has no header fields");
+		}
+		return this.entry(game);
+	}
+
+	/**
+	 * @return The offset of the given game or, with {@link CGNVersion#V3}, of the block containing it.
+	 */
+	public long getOffset(int game) throws IOException
+	{
+		return this.entry(game).getLong(0);
+	}
+
+	/**
+	 * @return The date of the given game as yyyymmdd with unknown parts being 0.
+	 */
+	public int getDate(int game) throws IOException
+	{
+		return this.headerFields(game).getInt(12);
+	}
+
+	/**
+	 * @return The Elo of the given player or -1 if it is unknown.
+	 */
+	public int getElo(int game, Color color) throws IOException
+	{
+		return this.headerFields(game).getShort(color == Color.WHITE ? 16 : 18);
+	}
+
+	public GameStatus getStatus(int game) throws IOException
+	{
+		return GameStatus.values()[this.headerFields(game).get(20)];
+	}
+
+	/**
+	 * @return The bytes of the game at the given offset or, with {@link CGNVersion#V3}, the block at the given offset.
+	 */
+	private byte[] readUnit(int game, long offset) throws IOException, ChessException
+	{
+		final long length;
+		if(this.version == CGNVersion.V3)
+		{
+			final ByteBuffer header = CGNIndex.read(this.cgn, offset, (int) Math.min(15, this.cgn.size() - offset));
+			header.get();
+			CGNIndex.readVarInt(header);
+			final long blockLength = CGNIndex.readVarInt(header);
+			length = header.position() + 4 + blockLength;
+		}
+		else
+		{
+			length = (game + 1 < this.games ? this.getOffset(game + 1) : this.cgn.size()) - offset;
+		}
+		if(length < 0 || length > Integer.MAX_VALUE)
+		{
+			throw new ChessException((this.version == CGNVersion.V3 ? "Block" : "Game") + " at offset " + offset + " has an invalid length of " + length + " bytes");
+		}
+		return CGNIndex.read(this.cgn, offset, (int) length).array();
+	}
+
+	static long readVarInt(ByteBuffer buffer) throws ChessException
+	{
+		long value = 0;
+		for(int shift = 0; shift < 64 && buffer.hasRemaining(); shift += 7)
+		{
+			final int b = buffer.get() & 0xFF;
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new ChessException("Malformed varint in CGN");
+	}
+
+	public Game getGame(int game) throws IOException, ChessException
+	{
+		final ByteBuffer entry = this.entry(game);
+		final CGNReader reader = new CGNReader(this.readUnit(game, entry.getLong(0)), this.dontCalculate, this.version).setTrusted(this.trusted);
+		for(int i = entry.getInt(8); i > 0; i--)
+		{
+			reader.readHeader();
+		}
+		final Game result = reader.readGame();
+		if(result == null)
+		{
+			throw new ChessException("Game " + game + " is missing from the CGN");
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the games from the given game (inclusive) to the given game (exclusive), reading each block or, without blocks, streaming the whole range only once.
+	 */
+	public ArrayList<Game> getGames(int from, int to) throws IOException, ChessException
+	{
+		if(from < 0 || to > this.games || from > to)
+		{
+			throw new IndexOutOfBoundsException("Games " + from + " to " + to + " of " + this.games);
+		}
+		final ArrayList<Game> games = new ArrayList<>(to - from);
+		if(from == to)
+		{
+			return games;
+		}
+		if(this.version != CGNVersion.V3)
+		{
+			final long offset = this.getOffset(from);
+			final long end = (to < this.games ? this.getOffset(to) : this.cgn.size());
+			final CGNReader reader = new CGNReader(new RangeInputStream(this.cgn, offset, end), this.dontCalculate, this.version, (int) Math.min(end - offset, 0x10000)).setTrusted(this.trusted);
+			for(int i = from; i < to; i++)
+			{
+				games.add(reader.readGame());
+			}
+			return games;
+		}
+		CGNReader reader = null;
+		long blockOffset = -1;
+		int nextInBlock = 0;
+		for(int i = from; i < to; i++)
+		{
+			final ByteBuffer entry = this.entry(i);
+			final long offset = entry.getLong(0);
+			final int inBlock = entry.getInt(8);
+			if(reader == null || offset != blockOffset || inBlock != nextInBlock)
+			{
+				reader = new CGNReader(this.readUnit(i, offset), this.dontCalculate, this.version).setTrusted(this.trusted);
+				blockOffset = offset;
+				for(int j = inBlock; j > 0; j--)
+				{
+					reader.readHeader();
+				}
+			}
+			games.add(reader.readGame());
+			nextInBlock = inBlock + 1;
+		}
+		return games;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.indexFile.close();
+		this.cgnFile.close();
+	}
+
+	/**
+	 * Reads a range of a channel with positional reads, so it doesn't move the position of the channel.
+	 */
+	private static final class RangeInputStream extends InputStream
+	{
+		private final FileChannel channel;
+		private final long end;
+		private long position;
+
+		RangeInputStream(FileChannel channel, long position, long end)
+		{
+			this.channel = channel;
+			this.position = position;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final byte[] b = new byte[1];
+			return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if(len == 0)
+			{
+				return 0;
+			}
+			if(this.position >= this.end)
+			{
+				return -1;
+			}
+			final int read = this.channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, this.end - this.position)), this.position);
+			if(read > 0)
+			{
+				this.position += read;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package sh.hell.compactchess.game;
+
+public enum CGNMoveEncoding
+{
+	/**
+	 * Every move takes two bytes holding the coordinates of its squares and its promotion.
+	 */
+	COORDINATES,
+	/**
+	 * Every move takes one byte holding its index in the sorted list of pseudo-legal moves of the position it was played in. Requires {@link CGNVersion#V3}.
+	 */
+	INDEX
+}
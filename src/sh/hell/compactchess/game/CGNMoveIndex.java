@@ -0,0 +1,94 @@
+package sh.hell.compactchess.game;
+
+import java.util.Arrays;
+
+/**
+ * Lists the pseudo-legal moves of a position in a deterministic order for {@link CGNMoveEncoding#INDEX}.
+ * A move is packed as its from square index, to square index and promotion ordinal, and the list is sorted by that value, so it doesn't depend on the order of {@link Game#pieces}.
+ * Castling is listed whenever the king and a rook are on their home squares, regardless of the castling abilities, because those are out of date in games which were loaded without calculation, so writer and reader could disagree on them.
+ */
+final class CGNMoveIndex
+{
+	private CGNMoveIndex()
+	{
+	}
+
+	static int pack(Square fromSquare, Square toSquare, PieceType promoteTo)
+	{
+		return Square.index(fromSquare.file, fromSquare.rank) << 9 | Square.index(toSquare.file, toSquare.rank) << 3 | (promoteTo == null ? 0 : promoteTo.ordinal());
+	}
+
+	static int[] moves(Game game)
+	{
+		int[] moves = new int[64];
+		int size = 0;
+		for(Square from : game.getPieces(game.toMove))
+		{
+			final int fromIndex = Square.index(from.file, from.rank) << 9;
+			for(Square to : game.getSquaresControlledBy(from))
+			{
+				if(size + 6 > moves.length)
+				{
+					moves = Arrays.copyOf(moves, moves.length * 2);
+				}
+				final int move = fromIndex | Square.index(to.file, to.rank) << 3;
+				if(from.pieceType == PieceType.PAWN && (game.toMove == Color.WHITE ? to.rank == 7 : to.rank == 0))
+				{
+					for(PieceType promoteTo : game.variant.getPossiblePromotions())
+					{
+						moves[size++] = move | promoteTo.ordinal();
+					}
+				}
+				else
+				{
+					moves[size++] = move;
+				}
+			}
+			if(from.pieceType == PieceType.KING && from.rank == (game.toMove == Color.WHITE ? 0 : 7) && game.variant != Variant.ANTICHESS && game.variant != Variant.RACING_KINGS)
+			{
+				if(size + 8 > moves.length)
+				{
+					moves = Arrays.copyOf(moves, moves.length * 2);
+				}
+				if(game.variant == Variant.CHESS960)
+				{
+					for(Square rook : game.getPieces(game.toMove, PieceType.ROOK))
+					{
+						if(rook.rank == from.rank)
+						{
+							moves[size++] = fromIndex | Square.index(rook.file, rook.rank) << 3;
+						}
+					}
+				}
+				else if(from.file == 4)
+				{
+					if(CGNMoveIndex.isRook(game.square((byte) 7, from.rank), game.toMove))
+					{
+						moves[size++] = fromIndex | Square.index((byte) 6, from.rank) << 3;
+					}
+					if(CGNMoveIndex.isRook(game.square((byte) 0, from.rank), game.toMove))
+					{
+						moves[size++] = fromIndex | Square.index((byte) 2, from.rank) << 3;
+					}
+				}
+			}
+		}
+		moves = Arrays.copyOf(moves, size);
+		Arrays.sort(moves);
+		return moves;
+	}
+
+	private static boolean isRook(Square square, Color color)
+	{
+		return square.pieceType == PieceType.ROOK && square.pieceColor == color;
+	}
+
+	/**
+	 * @return The index of the given move in {@link #moves(Game)} of the given position or -1 if it's not in there.
+	 */
+	static int indexOf(Game game, Square fromSquare, Square toSquare, PieceType promoteTo)
+	{
+		final int index = Arrays.binarySearch(CGNMoveIndex.moves(game), CGNMoveIndex.pack(fromSquare, toSquare, promoteTo));
+		return index < 0 ? -1 : index;
+	}
+}
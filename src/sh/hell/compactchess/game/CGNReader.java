@@ -0,0 +1,867 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Reads CGN games one at a time through its own buffer, so it works on any stream and doesn't rely on {@link InputStream#available()}.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class CGNReader implements Iterator<Game>, Iterable<Game>, Closeable
+{
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+	public final CGNVersion version;
+	public final boolean dontCalculate;
+	private final InputStream is;
+	private byte[] buffer;
+	private int position = 0;
+	private int limit = 0;
+	private long bufferOffset = 0;
+	private boolean eof = false;
+	private boolean trusted = false;
+	private final CRC32 crc = new CRC32();
+	private int blockGames = 0;
+	private boolean moveIndex = false;
+	private boolean tagDictionary = false;
+	private List<String> dictionary = new ArrayList<>();
+	private List<String> blockDictionary = null;
+	private int blockDictionaryStrings = 0;
+	private long gameOffset = -1;
+	private int gameInBlock = 0;
+	private int gameInBlockOffset = -1;
+	private int gameInBlockStrings = 0;
+	private long blockEnd = -1;
+	private int mark = -1;
+	private LazyBlock lazyBlock = null;
+	private CGNReader lazyBlockReader = null;
+	private Game next = null;
+
+	public CGNReader(InputStream is)
+	{
+		this(is, false, CGNVersion.latest);
+	}
+
+	public CGNReader(InputStream is, boolean dontCalculate, CGNVersion version)
+	{
+		this(is, dontCalculate, version, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CGNReader(InputStream is, boolean dontCalculate, CGNVersion version, int bufferSize)
+	{
+		this.is = is;
+		this.dontCalculate = dontCalculate;
+		this.version = version;
+		this.buffer = new byte[Math.max(16, bufferSize)];
+	}
+
+	public CGNReader(byte[] cgn, boolean dontCalculate, CGNVersion version)
+	{
+		this.is = new ByteArrayInputStream(cgn);
+		this.dontCalculate = dontCalculate;
+		this.version = version;
+		this.buffer = cgn;
+		this.limit = cgn.length;
+		this.eof = true;
+	}
+
+	/**
+	 * Creates a reader for the single game at the given offset of a block read by {@link #readLazyGame()}, so it doesn't have to read the games before it.
+	 *
+	 * @param dictionaryStrings The number of strings in the tag dictionary of the block before the game.
+	 */
+	CGNReader(LazyBlock block, int offset, int dictionaryStrings, boolean dontCalculate) throws ChessException
+	{
+		this(block.getBytes(), dontCalculate, CGNVersion.V3);
+		this.position = offset;
+		this.blockGames = 1;
+		this.moveIndex = block.moveIndex;
+		this.tagDictionary = block.tagDictionary;
+		this.blockDictionary = block.dictionary;
+		this.blockDictionaryStrings = dictionaryStrings;
+	}
+
+	/**
+	 * @param trusted Set to true to replay moves without validating them.
+	 * @see Game#fromCGN(InputStream, boolean, CGNVersion, boolean)
+	 */
+	public CGNReader setTrusted(boolean trusted)
+	{
+		this.trusted = trusted;
+		return this;
+	}
+
+	/**
+	 * @return The number of bytes that have been consumed so far, which is the offset of the next game if called between games.
+	 */
+	public long getPosition()
+	{
+		return this.bufferOffset + this.position;
+	}
+
+	/**
+	 * Makes sure that at least the given amount of bytes is buffered, unless the end of the stream is reached first.
+	 *
+	 * @return true if the bytes are available.
+	 */
+	private boolean fill(int bytes) throws IOException
+	{
+		if(this.limit - this.position >= bytes)
+		{
+			return true;
+		}
+		if(this.eof)
+		{
+			return false;
+		}
+		final int keep = (this.mark == -1 ? this.position : this.mark);
+		if(keep > 0)
+		{
+			System.arraycopy(this.buffer, keep, this.buffer, 0, this.limit - keep);
+			this.bufferOffset += keep;
+			this.limit -= keep;
+			this.position -= keep;
+			if(this.mark != -1)
+			{
+				this.mark = 0;
+			}
+		}
+		if(this.position + bytes > this.buffer.length)
+		{
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.position + bytes, this.buffer.length * 2));
+		}
+		while(this.limit - this.position < bytes)
+		{
+			final int read = this.is.read(this.buffer, this.limit, this.buffer.length - this.limit);
+			if(read == -1)
+			{
+				this.eof = true;
+				return false;
+			}
+			this.limit += read;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The next byte or -1 if the end of the stream has been reached.
+	 */
+	int read() throws IOException
+	{
+		if(this.position == this.limit && !this.fill(1))
+		{
+			return -1;
+		}
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	int readByte() throws IOException
+	{
+		final int b = this.read();
+		if(b == -1)
+		{
+			throw new EOFException("Unexpected end of CGN");
+		}
+		return b;
+	}
+
+	long readVarInt() throws IOException
+	{
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7)
+		{
+			final int b = this.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in CGN");
+	}
+
+	private int readLength() throws IOException
+	{
+		final long length = this.readVarInt();
+		if(length > Integer.MAX_VALUE)
+		{
+			throw new IOException("Invalid length in CGN: " + length);
+		}
+		if(!this.fill((int) length))
+		{
+			throw new EOFException("Unexpected end of CGN");
+		}
+		return (int) length;
+	}
+
+	String readString() throws IOException
+	{
+		if(this.version == CGNVersion.V3)
+		{
+			final int length = this.readLength();
+			final String string = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return string;
+		}
+		int end = this.indexOfZero(this.position);
+		while(end == -1)
+		{
+			final int scanned = this.limit - this.position;
+			if(!this.fill(scanned + 1))
+			{
+				throw new EOFException("Unexpected end of CGN");
+			}
+			end = this.indexOfZero(this.position + scanned);
+		}
+		final String string = new String(this.buffer, this.position, end - this.position, StandardCharsets.UTF_8);
+		this.position = end + 1;
+		return string;
+	}
+
+	void skipString() throws IOException
+	{
+		if(this.version == CGNVersion.V3)
+		{
+			final int length = this.readLength();
+			this.position += length;
+			return;
+		}
+		while(true)
+		{
+			final int end = this.indexOfZero(this.position);
+			if(end != -1)
+			{
+				this.position = end + 1;
+				return;
+			}
+			this.position = this.limit;
+			if(!this.fill(1))
+			{
+				throw new EOFException("Unexpected end of CGN");
+			}
+		}
+	}
+
+	/**
+	 * Reads a tag key or value, which in a block with a tag dictionary is either a new string, which is interned and added to the dictionary, or the id of one.
+	 * A reader which starts in the middle of a block looks up the strings defined before its game in the dictionary of the block.
+	 */
+	private String readTagString() throws IOException, ChessException
+	{
+		if(!this.tagDictionary)
+		{
+			return this.readString();
+		}
+		final long id = this.readVarInt();
+		if(id == 0)
+		{
+			final String string = this.readString().intern();
+			this.dictionary.add(string);
+			return string;
+		}
+		if(id <= this.blockDictionaryStrings)
+		{
+			return this.blockDictionary.get((int) id - 1);
+		}
+		if(id > this.blockDictionaryStrings + this.dictionary.size())
+		{
+			throw new ChessException("Invalid CGN dictionary id " + id + " for " + (this.blockDictionaryStrings + this.dictionary.size()) + " strings");
+		}
+		return this.dictionary.get((int) id - this.blockDictionaryStrings - 1);
+	}
+
+	private int indexOfZero(int from)
+	{
+		for(int i = from; i < this.limit; i++)
+		{
+			if(this.buffer[i] == 0x00)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the next block header if the current block has no more games.
+	 *
+	 * @return true if there is another game.
+	 */
+	private boolean startGame() throws IOException, ChessException
+	{
+		if(this.version != CGNVersion.V3)
+		{
+			this.gameOffset = this.getPosition();
+			return this.fill(2);
+		}
+		while(this.blockGames == 0)
+		{
+			this.gameOffset = this.getPosition();
+			this.gameInBlock = -1;
+			if(this.blockEnd != -1 && this.getPosition() != this.blockEnd)
+			{
+				throw new ChessException("CGN block ended at " + this.getPosition() + " instead of " + this.blockEnd);
+			}
+			if(!this.fill(1))
+			{
+				return false;
+			}
+			final int flags = this.readByte();
+			if((flags & ~(CGNWriter.FLAG_MOVE_INDEX | CGNWriter.FLAG_TAG_DICTIONARY)) != 0)
+			{
+				throw new ChessException("Unsupported CGN block flags: " + String.format("%02X", flags));
+			}
+			this.moveIndex = ((flags & CGNWriter.FLAG_MOVE_INDEX) != 0);
+			this.tagDictionary = ((flags & CGNWriter.FLAG_TAG_DICTIONARY) != 0);
+			this.dictionary.clear();
+			final long games = this.readVarInt();
+			final int length = this.readLength();
+			long checksum = 0;
+			for(int i = 0; i < 4; i++)
+			{
+				checksum = (checksum << 8) | this.readByte();
+			}
+			if(!this.fill(length))
+			{
+				throw new EOFException("Unexpected end of CGN");
+			}
+			this.crc.reset();
+			this.crc.update(this.buffer, this.position, length);
+			if(this.crc.getValue() != checksum)
+			{
+				throw new ChessException("CGN block at " + this.getPosition() + " is corrupted");
+			}
+			this.blockGames = (int) games;
+			this.blockEnd = this.getPosition() + length;
+		}
+		this.blockGames--;
+		this.gameInBlock++;
+		this.gameInBlockOffset = this.position;
+		this.gameInBlockStrings = this.dictionary.size();
+		return true;
+	}
+
+	/**
+	 * @return The offset of the game that has been read last or, with {@link CGNVersion#V3}, of the block containing it.
+	 */
+	long getGameOffset()
+	{
+		return this.gameOffset;
+	}
+
+	/**
+	 * @return The index of the game that has been read last within its block or 0 if the CGN has no blocks.
+	 */
+	int getGameInBlock()
+	{
+		return this.gameInBlock;
+	}
+
+	/**
+	 * Reads the next {@link CGNVersion#V3} block without decoding it, e.g. to have it decoded on another thread.
+	 *
+	 * @return The block including its header, which can be read by its own {@link CGNReader}, or null if the end of the input has been reached.
+	 */
+	public byte[] readBlock() throws IOException, ChessException
+	{
+		if(this.version != CGNVersion.V3)
+		{
+			throw new ChessException("Only V3 CGN has blocks");
+		}
+		if(this.blockGames != 0)
+		{
+			throw new ChessException("The current block has not been read completely");
+		}
+		if(!this.fill(1))
+		{
+			return null;
+		}
+		final ByteArrayOutputStream block = new ByteArrayOutputStream();
+		block.write(this.readByte());
+		CGNWriter.writeVarInt(block, this.readVarInt());
+		final int length = this.readLength();
+		CGNWriter.writeVarInt(block, length);
+		for(int i = 0; i < 4; i++)
+		{
+			block.write(this.readByte());
+		}
+		if(!this.fill(length))
+		{
+			throw new EOFException("Unexpected end of CGN");
+		}
+		block.write(this.buffer, this.position, length);
+		this.position += length;
+		this.blockEnd = this.getPosition();
+		return block.toByteArray();
+	}
+
+	/**
+	 * @return The next game or null if the end of the input has been reached.
+	 */
+	public Game readGame() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final Game game = this.next;
+			this.next = null;
+			return game;
+		}
+		if(this.lazyBlockReader != null)
+		{
+			final Game game = this.lazyBlockReader.readGame();
+			if(game != null)
+			{
+				return game;
+			}
+			this.lazyBlockReader = null;
+			this.lazyBlock = null;
+		}
+		if(!this.startGame())
+		{
+			return null;
+		}
+		final Game game = new Game();
+		if(this.version == CGNVersion.V1)
+		{
+			for(int tags = (byte) this.readByte(); tags > 0; tags--)
+			{
+				Game.processTag(game, this.readString(), this.readString());
+			}
+		}
+		else
+		{
+			do
+			{
+				final int tagByte = this.readByte();
+				final CGNTagMap tag = CGNTagMap.fromOrdinal(tagByte);
+				if(tag == null)
+				{
+					throw new ChessException("Invalid CGN tag: " + String.format("%02X", tagByte));
+				}
+				if(tag == CGNTagMap._ENDOFTAGS)
+				{
+					break;
+				}
+				if(tag == CGNTagMap._FROMSTRING)
+				{
+					Game.processTag(game, this.readTagString(), this.readTagString());
+				}
+				else
+				{
+					Game.processTag(game, tag.name(), this.readTagString());
+				}
+			}
+			while(true);
+		}
+		Move lastMove = null;
+		final GameStatus _status = game.status;
+		final TimeControl _timeControl = game.timeControl;
+		game.status = GameStatus.BUILDING;
+		game.timeControl = TimeControl.UNLIMITED;
+		game.start();
+		game.plyStart = 0;
+		final OpeningCache cache = Game.openingCache;
+		final OpeningReplay opening = (cache != null && !this.dontCalculate && game.status == GameStatus.ONGOING ? new OpeningReplay(cache, game, null, this.trusted) : null);
+		final TrustedReplay replay = (this.trusted && opening == null ? new TrustedReplay(game) : null);
+		final long[] clocks = new long[2];
+		int ply = -1;
+		int b1;
+		while((b1 = this.read()) != -1)
+		{
+			if(this.moveIndex && ((b1 & 0b10000000) == 0 || b1 == 0b10000101))
+			{
+				final int index = (b1 == 0b10000101 ? 0x80 + this.readByte() : b1);
+				lastMove = (opening == null ? null : opening.next(0x10000 | index));
+				if(lastMove == null)
+				{
+					final int[] moves = CGNMoveIndex.moves(game);
+					if(index >= moves.length)
+					{
+						throw new ChessException("Invalid move index " + index + " for " + moves.length + " moves");
+					}
+					final int move = moves[index];
+					final PieceType promoteTo = ((move & 0b111) == 0 ? null : PieceType.fromOrdinal((byte) (move & 0b111)));
+					lastMove = this.commit(game, replay, opening, game.square((byte) ((move >>> 9) & 0b111), (byte) ((move >>> 12) & 0b111)), game.square((byte) ((move >>> 3) & 0b111), (byte) ((move >>> 6) & 0b111)), promoteTo);
+				}
+				ply++;
+			}
+			else if((b1 & 0b10000000) == 0 || (this.moveIndex && b1 == 0b10000110))
+			{
+				if(b1 == 0b10000110)
+				{
+					b1 = this.readByte();
+				}
+				final int b2 = this.readByte();
+				lastMove = (opening == null ? null : opening.next((b1 << 8) | b2));
+				if(lastMove == null)
+				{
+					final PieceType promoteTo = ((b2 & 0b111) == 0 ? null : PieceType.fromOrdinal((byte) (b2 & 0b111)));
+					final Square fromSquare = game.square((byte) ((b1 >>> 4) & 0b111), (byte) ((b1 >>> 1) & 0b111));
+					final Square toSquare = game.square((byte) (((b1 << 2) & 0b100) | ((b2 >>> 6) & 0b011)), (byte) ((b2 >>> 3) & 0b111));
+					lastMove = this.commit(game, replay, opening, fromSquare, toSquare, promoteTo);
+				}
+				ply++;
+			}
+			else
+			{
+				if(this.version == CGNVersion.V1)
+				{
+					if(b1 == 0b10000000)
+					{
+						break;
+					}
+					else if(b1 == 0b10000001)
+					{
+						final String annotation = this.readString();
+						if(lastMove != null)
+						{
+							lastMove.annotate(annotation);
+						}
+					}
+				}
+				else if(b1 == 0b10000000 || (this.version == CGNVersion.V3 && CGNAnnotations.isRecord(b1)))
+				{
+					final String annotation = (b1 == 0b10000000 ? this.readString() : CGNAnnotations.read(this, b1, clocks, ply));
+					if(lastMove != null)
+					{
+						lastMove.annotate(annotation);
+					}
+				}
+				else
+				{
+					// 0b10000001: There are no more moves/bytes but the game is still ongoing.
+					game.status = CGNReader.endStatus(b1, game.status);
+					break;
+				}
+			}
+		}
+		if(opening != null)
+		{
+			opening.finish();
+		}
+		else if(replay != null)
+		{
+			replay.finish();
+		}
+		if(this.version == CGNVersion.V1 && _status != GameStatus.BUILDING)
+		{
+			game.status = _status;
+		}
+		if(game.endReason == EndReason.UNTERMINATED && game.status != GameStatus.BUILDING && game.status != GameStatus.ONGOING)
+		{
+			if(game.status == GameStatus.DRAW)
+			{
+				game.endReason = EndReason.DRAW_AGREEMENT;
+			}
+			else
+			{
+				game.endReason = EndReason.RESIGNATION;
+			}
+		}
+		game.timeControl = _timeControl;
+		return game;
+	}
+
+	private Move commit(Game game, TrustedReplay replay, OpeningReplay opening, Square fromSquare, Square toSquare, PieceType promoteTo) throws ChessException
+	{
+		if(opening != null)
+		{
+			return opening.move(fromSquare, toSquare, promoteTo);
+		}
+		if(replay != null)
+		{
+			return replay.move(fromSquare, toSquare, promoteTo);
+		}
+		final Move move = new Move(game, fromSquare, toSquare, promoteTo, true);
+		move.commit(false, this.dontCalculate);
+		return move;
+	}
+
+	/**
+	 * Reads the tags of the next game and skips over its moves and annotations.
+	 *
+	 * @return The header of the next game or null if the end of the input has been reached.
+	 */
+	public GameHeader readHeader() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final GameHeader header = new GameHeader(this.next);
+			this.next = null;
+			return header;
+		}
+		if(this.lazyBlockReader != null)
+		{
+			final GameHeader header = this.lazyBlockReader.readHeader();
+			if(header != null)
+			{
+				return header;
+			}
+			this.lazyBlockReader = null;
+			this.lazyBlock = null;
+		}
+		if(!this.startGame())
+		{
+			return null;
+		}
+		final GameHeader header = new GameHeader();
+		if(this.version == CGNVersion.V1)
+		{
+			for(int tags = (byte) this.readByte(); tags > 0; tags--)
+			{
+				header.tags.put(this.readString(), this.readString());
+			}
+		}
+		else
+		{
+			do
+			{
+				final int tagByte = this.readByte();
+				final CGNTagMap tag = CGNTagMap.fromOrdinal(tagByte);
+				if(tag == null)
+				{
+					throw new ChessException("Invalid CGN tag: " + String.format("%02X", tagByte));
+				}
+				if(tag == CGNTagMap._ENDOFTAGS)
+				{
+					break;
+				}
+				if(tag == CGNTagMap._FROMSTRING)
+				{
+					header.tags.put(this.readTagString(), this.readTagString());
+				}
+				else
+				{
+					header.tags.put(tag.name(), this.readTagString());
+				}
+			}
+			while(true);
+		}
+		header.plyCount = 0;
+		int b;
+		while((b = this.read()) != -1)
+		{
+			if((b & 0b10000000) == 0)
+			{
+				if(!this.moveIndex)
+				{
+					this.readByte();
+				}
+				header.plyCount++;
+			}
+			else if(this.moveIndex && (b == 0b10000101 || b == 0b10000110))
+			{
+				this.readByte();
+				if(b == 0b10000110)
+				{
+					this.readByte();
+				}
+				header.plyCount++;
+			}
+			else if(this.version == CGNVersion.V1)
+			{
+				if(b == 0b10000000)
+				{
+					break;
+				}
+				if(b == 0b10000001)
+				{
+					this.skipString();
+				}
+			}
+			else if(b == 0b10000000)
+			{
+				this.skipString();
+			}
+			else if(this.version == CGNVersion.V3 && CGNAnnotations.isRecord(b))
+			{
+				this.readVarInt();
+			}
+			else
+			{
+				header.status = CGNReader.endStatus(b, header.status);
+				break;
+			}
+		}
+		if(this.version == CGNVersion.V1 && header.tags.containsKey("Result"))
+		{
+			header.status = Game.resultStatus(header.tags.get("Result"));
+		}
+		return header;
+	}
+
+	/**
+	 * Reads the header of the next game and keeps its encoded moves, which are only replayed when something position-dependent is accessed.
+	 * With {@link CGNVersion#V3}, the games of a block share the bytes of the block, which are dropped once all of them have been loaded.
+	 *
+	 * @return The next game or null if the end of the input has been reached.
+	 */
+	public LazyGame readLazyGame() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final LazyGame game = new LazyGame(this.next);
+			this.next = null;
+			return game;
+		}
+		if(this.version == CGNVersion.V3)
+		{
+			do
+			{
+				if(this.lazyBlockReader != null)
+				{
+					final GameHeader header = this.lazyBlockReader.readHeader();
+					if(header != null)
+					{
+						return new LazyGame(header, this.lazyBlock, this.lazyBlockReader.gameInBlockOffset, this.lazyBlockReader.gameInBlockStrings, this.dontCalculate, this.trusted);
+					}
+				}
+				final byte[] block = this.readBlock();
+				if(block == null)
+				{
+					this.lazyBlock = null;
+					this.lazyBlockReader = null;
+					return null;
+				}
+				this.lazyBlock = new LazyBlock(block);
+				this.lazyBlockReader = new CGNReader(block, this.dontCalculate, this.version).setTrusted(this.trusted);
+				// Strings are only ever added to the dictionary of the block, which the lazy games look them up in from other threads.
+				this.lazyBlockReader.dictionary = this.lazyBlock.dictionary;
+			}
+			while(true);
+		}
+		this.mark = this.position;
+		try
+		{
+			final GameHeader header = this.readHeader();
+			if(header == null)
+			{
+				return null;
+			}
+			return new LazyGame(header, Arrays.copyOfRange(this.buffer, this.mark, this.position), this.version, this.dontCalculate, this.trusted);
+		}
+		finally
+		{
+			this.mark = -1;
+		}
+	}
+
+	static GameStatus endStatus(int b, GameStatus status)
+	{
+		if(b == 0b10000010)
+		{
+			return GameStatus.WHITE_WINS;
+		}
+		if(b == 0b10000011)
+		{
+			return GameStatus.BLACK_WINS;
+		}
+		if(b == 0b10000100)
+		{
+			return GameStatus.DRAW;
+		}
+		return status;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if(this.next == null)
+		{
+			try
+			{
+				this.next = this.readGame();
+			}
+			catch(IOException | ChessException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Game next()
+	{
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		final Game game = this.next;
+		this.next = null;
+		return game;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<Game> iterator()
+	{
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.is.close();
+	}
+
+	/**
+	 * A {@link CGNVersion#V3} block read by {@link #readLazyGame()}, whose bytes are shared by its games until all of them have been loaded.
+	 */
+	static final class LazyBlock
+	{
+		final boolean moveIndex;
+		final boolean tagDictionary;
+		final List<String> dictionary = Collections.synchronizedList(new ArrayList<String>());
+		private byte[] bytes;
+		private int unloaded;
+
+		LazyBlock(byte[] bytes) throws IOException
+		{
+			final CGNReader reader = new CGNReader(bytes, true, CGNVersion.V3);
+			final int flags = reader.readByte();
+			this.moveIndex = ((flags & CGNWriter.FLAG_MOVE_INDEX) != 0);
+			this.tagDictionary = ((flags & CGNWriter.FLAG_TAG_DICTIONARY) != 0);
+			this.unloaded = (int) reader.readVarInt();
+			this.bytes = bytes;
+		}
+
+		synchronized byte[] getBytes() throws ChessException
+		{
+			if(this.bytes == null)
+			{
+				throw new ChessException("All games of the CGN block have already been loaded");
+			}
+			return this.bytes;
+		}
+
+		/**
+		 * Drops the bytes of the block once all of its games have been loaded.
+		 */
+		synchronized void loaded()
+		{
+			if(--this.unloaded == 0)
+			{
+				this.bytes = null;
+			}
+		}
+	}
+}
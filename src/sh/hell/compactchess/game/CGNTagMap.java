@@ -40,6 +40,7 @@ public enum CGNTagMap
 	Mode,
 	FEN;
 
+	private static final CGNTagMap[] values = CGNTagMap.values();
 	public final CGNVersion since;
 
 	CGNTagMap()
@@ -66,13 +67,10 @@ public enum CGNTagMap
 
 	public static CGNTagMap fromOrdinal(int ordinal)
 	{
-		for(CGNTagMap cgnTag : CGNTagMap.values())
+		if(ordinal < 0 || ordinal >= values.length)
 		{
-			if(cgnTag.ordinal() == ordinal)
-			{
-				return cgnTag;
-			}
+			return null;
 		}
-		return null;
+		return values[ordinal];
 	}
 }
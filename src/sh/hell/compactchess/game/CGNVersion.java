@@ -3,7 +3,12 @@ package sh.hell.compactchess.game;
 public enum CGNVersion
 {
 	V1,
-	V2;
+	V2,
+	/**
+	 * Games are grouped into blocks, each of which starts with a flags byte, the varint-encoded amount of games and byte length of the block, and a big-endian CRC32 of its bytes.
+	 * Strings are prefixed with their varint-encoded length instead of being null-terminated.
+	 */
+	V3;
 
 	public static final CGNVersion latest = CGNVersion.V2;
 }
@@ -0,0 +1,186 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Writes games to a CGN stream. With {@link CGNVersion#V3}, games are collected into blocks, each of which starts with a header holding its game count, byte length and checksum.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class CGNWriter implements Flushable, Closeable
+{
+	public static final int DEFAULT_BLOCK_SIZE = 256;
+	static final int FLAG_MOVE_INDEX = 0x01;
+	static final int FLAG_TAG_DICTIONARY = 0x02;
+	public final CGNVersion version;
+	public final boolean noTags;
+	public final boolean noAnnotations;
+	public final boolean noAnnotationTags;
+	private final OutputStream os;
+	private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+	private final CRC32 crc = new CRC32();
+	private final HashMap<String, Integer> dictionary = new HashMap<>();
+	private boolean tagDictionary = false;
+	private CGNMoveEncoding moveEncoding = CGNMoveEncoding.COORDINATES;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private int blockGames = 0;
+
+	public CGNWriter(OutputStream os)
+	{
+		this(os, CGNVersion.latest, false, false, false);
+	}
+
+	public CGNWriter(OutputStream os, CGNVersion version)
+	{
+		this(os, version, false, false, false);
+	}
+
+	public CGNWriter(OutputStream os, CGNVersion version, boolean noTags, boolean noAnnotations, boolean noAnnotationTags)
+	{
+		this.os = os;
+		this.version = version;
+		this.noTags = noTags;
+		this.noAnnotations = noAnnotations;
+		this.noAnnotationTags = noAnnotationTags;
+	}
+
+	static void writeVarInt(OutputStream os, long value) throws IOException
+	{
+		while((value & ~0x7FL) != 0)
+		{
+			os.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		os.write((int) value);
+	}
+
+	/**
+	 * @param blockSize The amount of games per block. Only applies to {@link CGNVersion#V3}.
+	 */
+	public CGNWriter setBlockSize(int blockSize)
+	{
+		if(blockSize < 1)
+		{
+			throw new IllegalArgumentException("The block size has to be at least 1");
+		}
+		this.blockSize = blockSize;
+		return this;
+	}
+
+	public int getBlockSize()
+	{
+		return this.blockSize;
+	}
+
+	public CGNWriter setMoveEncoding(CGNMoveEncoding moveEncoding)
+	{
+		if(moveEncoding != CGNMoveEncoding.COORDINATES && this.version != CGNVersion.V3)
+		{
+			throw new IllegalArgumentException(moveEncoding + " move encoding requires V3 CGN");
+		}
+		if(this.blockGames != 0)
+		{
+			throw new IllegalStateException("The move encoding can't change within a block");
+		}
+		this.moveEncoding = moveEncoding;
+		return this;
+	}
+
+	public CGNMoveEncoding getMoveEncoding()
+	{
+		return this.moveEncoding;
+	}
+
+	/**
+	 * @param tagDictionary Set to true to write every distinct tag value only once per block and refer to it by id afterwards. Requires {@link CGNVersion#V3}.
+	 */
+	public CGNWriter setTagDictionary(boolean tagDictionary)
+	{
+		if(tagDictionary && this.version != CGNVersion.V3)
+		{
+			throw new IllegalArgumentException("A tag dictionary requires V3 CGN");
+		}
+		if(this.blockGames != 0)
+		{
+			throw new IllegalStateException("The tag dictionary can't be toggled within a block");
+		}
+		this.tagDictionary = tagDictionary;
+		return this;
+	}
+
+	public boolean hasTagDictionary()
+	{
+		return this.tagDictionary;
+	}
+
+	public CGNWriter write(Game game) throws IOException, ChessException
+	{
+		if(this.version != CGNVersion.V3)
+		{
+			game.writeCGN(this.os, this.noTags, this.noAnnotations, this.noAnnotationTags, this.version, this.moveEncoding, null);
+			return this;
+		}
+		game.writeCGN(this.block, this.noTags, this.noAnnotations, this.noAnnotationTags, this.version, this.moveEncoding, (this.tagDictionary ? this.dictionary : null));
+		if(++this.blockGames == this.blockSize)
+		{
+			this.writeBlock();
+		}
+		return this;
+	}
+
+	public CGNWriter write(Iterable<Game> games) throws IOException, ChessException
+	{
+		for(Game game : games)
+		{
+			this.write(game);
+		}
+		return this;
+	}
+
+	private void writeBlock() throws IOException
+	{
+		if(this.blockGames == 0)
+		{
+			return;
+		}
+		final byte[] bytes = this.block.toByteArray();
+		this.crc.reset();
+		this.crc.update(bytes, 0, bytes.length);
+		final long checksum = this.crc.getValue();
+		this.os.write((this.moveEncoding == CGNMoveEncoding.INDEX ? FLAG_MOVE_INDEX : 0x00) | (this.tagDictionary ? FLAG_TAG_DICTIONARY : 0x00));
+		CGNWriter.writeVarInt(this.os, this.blockGames);
+		CGNWriter.writeVarInt(this.os, bytes.length);
+		this.os.write((int) (checksum >>> 24));
+		this.os.write((int) (checksum >>> 16));
+		this.os.write((int) (checksum >>> 8));
+		this.os.write((int) checksum);
+		this.os.write(bytes);
+		this.block.reset();
+		this.dictionary.clear();
+		this.blockGames = 0;
+	}
+
+	/**
+	 * Writes the current block, even if it's not full, and flushes the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		this.writeBlock();
+		this.os.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.flush();
+		this.os.close();
+	}
+}
@@ -0,0 +1,147 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A compressed CGN file with an index of its frames, which is built from the frame headers alone, so a game can be read by number by inflating only the frame containing it.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class CompressedCGNFile implements Closeable
+{
+	public final boolean dontCalculate;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private long[] offsets = new long[256];
+	private int[] firstGames = new int[256];
+	private int frames = 0;
+	private int games = 0;
+	private boolean trusted = false;
+
+	public CompressedCGNFile(File file) throws IOException, ChessException
+	{
+		this(file, false);
+	}
+
+	public CompressedCGNFile(File file, boolean dontCalculate) throws IOException, ChessException
+	{
+		this.dontCalculate = dontCalculate;
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		try
+		{
+			final ByteBuffer header = CGNIndex.read(this.channel, 0, 5);
+			CompressedCGNReader.readHeader(header.getInt(), header.get() & 0xFF);
+			this.index();
+		}
+		catch(IOException | ChessException | RuntimeException e)
+		{
+			this.file.close();
+			throw e;
+		}
+	}
+
+	private void index() throws IOException, ChessException
+	{
+		final long size = this.channel.size();
+		long position = 5;
+		while(position < size)
+		{
+			final ByteBuffer header = CGNIndex.read(this.channel, position, (int) Math.min(30, size - position));
+			final long games = CGNIndex.readVarInt(header);
+			CGNIndex.readVarInt(header);
+			final long compressed = CGNIndex.readVarInt(header);
+			if(this.frames == this.offsets.length)
+			{
+				this.offsets = Arrays.copyOf(this.offsets, this.frames * 2);
+				this.firstGames = Arrays.copyOf(this.firstGames, this.frames * 2);
+			}
+			this.offsets[this.frames] = position;
+			this.firstGames[this.frames] = this.games;
+			this.frames++;
+			this.games += (int) games;
+			position += header.position() + compressed;
+		}
+		if(position != size)
+		{
+			throw new ChessException("The last compressed CGN frame is incomplete");
+		}
+	}
+
+	/**
+	 * @param trusted Set to true to replay moves without validating them.
+	 * @see Game#fromCGN(java.io.InputStream, boolean, CGNVersion, boolean)
+	 */
+	public CompressedCGNFile setTrusted(boolean trusted)
+	{
+		this.trusted = trusted;
+		return this;
+	}
+
+	public int size()
+	{
+		return this.games;
+	}
+
+	public int getFrameCount()
+	{
+		return this.frames;
+	}
+
+	/**
+	 * @return The inflated V3 CGN block of the given frame.
+	 */
+	public byte[] getBlock(int frame) throws IOException, ChessException
+	{
+		if(frame < 0 || frame >= this.frames)
+		{
+			throw new IndexOutOfBoundsException("Frame " + frame + " of " + this.frames);
+		}
+		final long offset = this.offsets[frame];
+		final ByteBuffer header = CGNIndex.read(this.channel, offset, (int) Math.min(30, this.channel.size() - offset));
+		CGNIndex.readVarInt(header);
+		final int length = (int) CGNIndex.readVarInt(header);
+		final int compressed = (int) CGNIndex.readVarInt(header);
+		return CompressedCGNReader.inflate(CGNIndex.read(this.channel, offset + header.position(), compressed).array(), length);
+	}
+
+	public Game getGame(int game) throws IOException, ChessException
+	{
+		if(game < 0 || game >= this.games)
+		{
+			throw new IndexOutOfBoundsException("Game " + game + " of " + this.games);
+		}
+		int frame = Arrays.binarySearch(this.firstGames, 0, this.frames, game);
+		if(frame < 0)
+		{
+			frame = -frame - 2;
+		}
+		else
+		{
+			// Skip frames without games.
+			while(frame + 1 < this.frames && this.firstGames[frame + 1] == game)
+			{
+				frame++;
+			}
+		}
+		final CGNReader reader = new CGNReader(this.getBlock(frame), this.dontCalculate, CGNVersion.V3).setTrusted(this.trusted);
+		for(int i = this.firstGames[frame]; i < game; i++)
+		{
+			reader.readHeader();
+		}
+		return reader.readGame();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.file.close();
+	}
+}
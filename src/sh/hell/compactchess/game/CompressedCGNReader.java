@@ -0,0 +1,246 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads compressed CGN as written by {@link CompressedCGNWriter}, inflating the next frames on background threads while the games of the current one are being decoded.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class CompressedCGNReader implements Iterator<Game>, Iterable<Game>, Closeable
+{
+	public final boolean dontCalculate;
+	private final DataInputStream is;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final int readAhead;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private boolean eof = false;
+	private boolean trusted = false;
+	private CGNReader block = null;
+	private Game next = null;
+
+	public CompressedCGNReader(InputStream is) throws IOException, ChessException
+	{
+		this(is, false, null);
+	}
+
+	/**
+	 * @param executor The executor to inflate frames on or null to use a new {@link ForkJoinPool}, which is shut down on {@link #close()}.
+	 */
+	public CompressedCGNReader(InputStream is, boolean dontCalculate, ExecutorService executor) throws IOException, ChessException
+	{
+		this.is = new DataInputStream(is);
+		this.dontCalculate = dontCalculate;
+		this.ownExecutor = (executor == null);
+		this.executor = (executor == null ? new ForkJoinPool() : executor);
+		this.readAhead = 2 * Runtime.getRuntime().availableProcessors();
+		CompressedCGNReader.readHeader(this.is.readInt(), this.is.readUnsignedByte());
+	}
+
+	static void readHeader(int magic, int version) throws ChessException
+	{
+		if(magic != CompressedCGNWriter.MAGIC)
+		{
+			throw new ChessException("Not compressed CGN");
+		}
+		if(version != CompressedCGNWriter.FORMAT_VERSION)
+		{
+			throw new ChessException("Unsupported compressed CGN version: " + version);
+		}
+	}
+
+	/**
+	 * @param trusted Set to true to replay moves without validating them.
+	 * @see Game#fromCGN(InputStream, boolean, CGNVersion, boolean)
+	 */
+	public CompressedCGNReader setTrusted(boolean trusted)
+	{
+		this.trusted = trusted;
+		return this;
+	}
+
+	static byte[] inflate(byte[] compressed, int length) throws ChessException
+	{
+		final Inflater inflater = new Inflater();
+		final byte[] block = new byte[length];
+		try
+		{
+			inflater.setInput(compressed);
+			int inflated = 0;
+			while(inflated < length && !inflater.finished())
+			{
+				final int bytes = inflater.inflate(block, inflated, length - inflated);
+				if(bytes == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					break;
+				}
+				inflated += bytes;
+			}
+			if(inflated != length)
+			{
+				throw new ChessException("Compressed CGN frame inflated to " + inflated + " instead of " + length + " bytes");
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new ChessException("Compressed CGN frame is corrupted: " + e.getMessage());
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return block;
+	}
+
+	private long readVarInt(boolean first) throws IOException
+	{
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7)
+		{
+			final int b = this.is.read();
+			if(b == -1)
+			{
+				if(first && shift == 0)
+				{
+					return -1;
+				}
+				throw new EOFException("Unexpected end of compressed CGN");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in compressed CGN");
+	}
+
+	/**
+	 * Reads frames and hands them to the executor until enough are pending or the end of the stream is reached.
+	 */
+	private void readAhead() throws IOException
+	{
+		while(!this.eof && this.pending.size() < this.readAhead)
+		{
+			if(this.readVarInt(true) == -1)
+			{
+				this.eof = true;
+				return;
+			}
+			final int length = (int) this.readVarInt(false);
+			final byte[] compressed = new byte[(int) this.readVarInt(false)];
+			this.is.readFully(compressed);
+			this.pending.add(this.executor.submit(new Callable<byte[]>()
+			{
+				@Override
+				public byte[] call() throws ChessException
+				{
+					return CompressedCGNReader.inflate(compressed, length);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * @return The next game or null if the end of the input has been reached.
+	 */
+	public Game readGame() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final Game game = this.next;
+			this.next = null;
+			return game;
+		}
+		do
+		{
+			if(this.block != null)
+			{
+				final Game game = this.block.readGame();
+				if(game != null)
+				{
+					return game;
+				}
+				this.block = null;
+			}
+			this.readAhead();
+			if(this.pending.isEmpty())
+			{
+				return null;
+			}
+			this.block = new CGNReader(ParallelCGNParser.get(this.pending.poll()), this.dontCalculate, CGNVersion.V3).setTrusted(this.trusted);
+		}
+		while(true);
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if(this.next == null)
+		{
+			try
+			{
+				this.next = this.readGame();
+			}
+			catch(IOException | ChessException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Game next()
+	{
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		final Game game = this.next;
+		this.next = null;
+		return game;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<Game> iterator()
+	{
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		for(Future<byte[]> future : this.pending)
+		{
+			future.cancel(false);
+		}
+		this.pending.clear();
+		if(this.ownExecutor)
+		{
+			this.executor.shutdown();
+		}
+		this.is.close();
+	}
+}
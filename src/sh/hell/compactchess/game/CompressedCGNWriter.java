@@ -0,0 +1,189 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Writes games as compressed CGN: a header followed by frames, each of which holds one deflated {@link CGNVersion#V3} block preceded by its game count, inflated length and deflated length as varints.
+ * Blocks are compressed on background threads while the next block is being encoded, and frames are written in order as soon as they're ready.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class CompressedCGNWriter implements Flushable, Closeable
+{
+	static final int MAGIC = 0x43474E5A;
+	static final int FORMAT_VERSION = 1;
+	public final int level;
+	private final OutputStream os;
+	private final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+	private final CGNWriter writer;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final int maxPending;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private int blockGames = 0;
+
+	public CompressedCGNWriter(OutputStream os) throws IOException
+	{
+		this(os, Deflater.DEFAULT_COMPRESSION, null);
+	}
+
+	/**
+	 * @param level The {@link Deflater} compression level.
+	 * @param executor The executor to compress blocks on or null to use a new {@link ForkJoinPool}, which is shut down on {@link #close()}.
+	 */
+	public CompressedCGNWriter(OutputStream os, int level, ExecutorService executor) throws IOException
+	{
+		this.os = os;
+		this.level = level;
+		this.writer = new CGNWriter(this.blocks, CGNVersion.V3);
+		this.ownExecutor = (executor == null);
+		this.executor = (executor == null ? new ForkJoinPool() : executor);
+		this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+		for(int i = 24; i >= 0; i -= 8)
+		{
+			os.write(MAGIC >>> i);
+		}
+		os.write(FORMAT_VERSION);
+	}
+
+	/**
+	 * @return The V3 writer encoding the blocks, e.g. to change its block size, move encoding or tag dictionary before the first game.
+	 */
+	public CGNWriter getWriter()
+	{
+		return this.writer;
+	}
+
+	static byte[] frame(byte[] block, int games, int level)
+	{
+		final Deflater deflater = new Deflater(level);
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.length / 2);
+		try
+		{
+			deflater.setInput(block);
+			deflater.finish();
+			final byte[] buffer = new byte[8192];
+			while(!deflater.finished())
+			{
+				compressed.write(buffer, 0, deflater.deflate(buffer));
+			}
+		}
+		finally
+		{
+			deflater.end();
+		}
+		final ByteArrayOutputStream frame = new ByteArrayOutputStream(compressed.size() + 15);
+		try
+		{
+			CGNWriter.writeVarInt(frame, games);
+			CGNWriter.writeVarInt(frame, block.length);
+			CGNWriter.writeVarInt(frame, compressed.size());
+			compressed.writeTo(frame);
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return frame.toByteArray();
+	}
+
+	public CompressedCGNWriter write(Game game) throws IOException, ChessException
+	{
+		this.writer.write(game);
+		this.blockGames++;
+		this.submit();
+		this.drain(false);
+		return this;
+	}
+
+	public CompressedCGNWriter write(Iterable<Game> games) throws IOException, ChessException
+	{
+		for(Game game : games)
+		{
+			this.write(game);
+		}
+		return this;
+	}
+
+	/**
+	 * Hands the block the V3 writer has just completed, if any, to the executor.
+	 */
+	private void submit()
+	{
+		if(this.blocks.size() == 0)
+		{
+			return;
+		}
+		final byte[] block = this.blocks.toByteArray();
+		final int games = this.blockGames;
+		final int level = this.level;
+		this.blocks.reset();
+		this.blockGames = 0;
+		this.pending.add(this.executor.submit(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call()
+			{
+				return CompressedCGNWriter.frame(block, games, level);
+			}
+		}));
+	}
+
+	/**
+	 * Writes the frames which are ready, only waiting if too many are pending or if all of them should be written.
+	 */
+	private void drain(boolean all) throws IOException, ChessException
+	{
+		while(!this.pending.isEmpty() && (all || this.pending.size() > this.maxPending || this.pending.peek().isDone()))
+		{
+			this.os.write(ParallelCGNParser.get(this.pending.poll()));
+		}
+	}
+
+	/**
+	 * Compresses the current block, even if it's not full, waits for all frames to be written and flushes the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		this.writer.flush();
+		this.submit();
+		try
+		{
+			this.drain(true);
+		}
+		catch(ChessException e)
+		{
+			throw new IOException(e);
+		}
+		this.os.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			this.flush();
+		}
+		finally
+		{
+			if(this.ownExecutor)
+			{
+				this.executor.shutdown();
+			}
+			this.os.close();
+		}
+	}
+}
@@ -8,16 +8,19 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -26,6 +29,28 @@ import java.util.regex.Pattern;
 public class Game
 {
 	public static final short MAX_SCORE = 12800;
+	/**
+	 * The number of plies between the positions {@link #positionAt(int)} keeps as checkpoints.
+	 */
+	public static final int CHECKPOINT_INTERVAL = 16;
+	static final Pattern pgnTagPattern = Pattern.compile("\\[([A-Za-z0-9]+) \"(.*[^\\\\])\"]");
+	/**
+	 * When set, games read from PGN or CGN skip the plies found in this cache instead of replaying them. Set to null to disable caching.
+	 */
+	public static volatile OpeningCache openingCache = null;
+	private static final int[][] KNIGHT_OFFSETS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+	private static final int[][] DIRECTIONS = {{0, 1}, {1, 1}, {1, 0}, {1, -1}, {0, -1}, {-1, -1}, {-1, 0}, {-1, 1}};
+	private static final long[] zobristKeys = new long[(2 * 6 * 64) + 1 + 4 + 8];
+
+	static
+	{
+		final Random random = new Random(0x436F6D7061637443L);
+		for(int i = 0; i < zobristKeys.length; i++)
+		{
+			zobristKeys[i] = random.nextLong();
+		}
+	}
+
 	public final ArrayList<Move> moves = new ArrayList<>();
 	public final ArrayList<Square> pieces = new ArrayList<>();
 	final public TreeMap<String, String> tags = new TreeMap<>(new PGNTagComparator());
@@ -52,6 +77,7 @@ public class Game
 	public byte whitechecks = 0;
 	public byte blackchecks = 0;
 	private boolean exportable = true;
+	private final ArrayList<PositionSnapshot> checkpoints = new ArrayList<>();
 
 	public Game()
 	{
@@ -80,118 +106,198 @@ public class Game
 
 	public static ArrayList<Game> fromPGN(String pgn, Language language, boolean dontCalculate) throws ChessException
 	{
-		pgn = pgn.replace("\r", "").replace("]\n\n", "]\n");
+		return Game.fromPGN(pgn, language, dontCalculate, false);
+	}
+
+	/**
+	 * @param trusted Set to true if the moves are known to be legal, e.g. because we've exported them ourselves, to replay them without validation. Castling abilities, en passant, repetitions and the final status are still determined.
+	 */
+	public static ArrayList<Game> fromPGN(String pgn, Language language, boolean dontCalculate, boolean trusted) throws ChessException
+	{
 		final ArrayList<Game> games = new ArrayList<>();
-		final String pgnTagPattern = "\\[([A-Za-z0-9]+) \"(.*[^\\\\])\"]";
-		for(final String pgnGame : pgn.split("\n\n"))
+		final PGNReader reader = new PGNReader(new StringReader(pgn), language, dontCalculate).setTrusted(trusted);
+		try
+		{
+			Game game;
+			while((game = reader.readGame()) != null)
+			{
+				games.add(game);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return games;
+	}
+
+	public static ArrayList<Game> fromPGNParallel(String pgn) throws ChessException
+	{
+		return Game.fromPGNParallel(pgn, Language.ENGLISH, false, true);
+	}
+
+	public static ArrayList<Game> fromPGNParallel(String pgn, Language language, boolean dontCalculate, boolean keepOrder) throws ChessException
+	{
+		final ForkJoinPool pool = new ForkJoinPool();
+		try
+		{
+			return Game.fromPGN(pgn, language, dontCalculate, pool, keepOrder);
+		}
+		finally
 		{
-			final Game game = new Game();
-			TimeControl _timeControl = null;
-			byte excluded = 0;
-			byte annotation = 0;
-			Move move = null;
-			for(final String line : pgnGame.split("\n"))
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Splits the PGN into games and parses them on the given pool.
+	 *
+	 * @param keepOrder Set to false to get the games in the order they finished parsing, which saves merging per-task results.
+	 */
+	public static ArrayList<Game> fromPGN(String pgn, Language language, boolean dontCalculate, ForkJoinPool pool, boolean keepOrder) throws ChessException
+	{
+		return ParallelPGNParser.parse(pgn, language, dontCalculate, pool, keepOrder);
+	}
+
+	static Game fromPGN(List<String> lines, Language language, boolean dontCalculate) throws ChessException
+	{
+		return Game.fromPGN(lines, language, dontCalculate, false);
+	}
+
+	static Game fromPGN(List<String> lines, Language language, boolean dontCalculate, boolean trusted) throws ChessException
+	{
+		return Game.fromPGN(new Game(), lines, language, dontCalculate, trusted);
+	}
+
+	/**
+	 * Replays the given PGN into the given new game, so if a move can't be replayed, the game is left with the moves before it.
+	 */
+	static Game fromPGN(Game game, List<String> lines, Language language, boolean dontCalculate, boolean trusted) throws ChessException
+	{
+		TrustedReplay replay = null;
+		OpeningReplay opening = null;
+		TimeControl _timeControl = null;
+		byte excluded = 0;
+		byte annotation = 0;
+		Move move = null;
+		for(final String line : lines)
+		{
+			final Matcher matcher = pgnTagPattern.matcher(line);
+			if(_timeControl == null && matcher.matches())
+			{
+				if(!matcher.group(1).equalsIgnoreCase("Result"))
+				{
+					Game.processTag(game, matcher.group(1), matcher.group(2));
+				}
+			}
+			else
 			{
-				if(_timeControl == null && line.matches(pgnTagPattern))
+				if(line.equals(""))
+				{
+					continue;
+				}
+				if(_timeControl == null)
 				{
-					final Matcher matcher = Pattern.compile(pgnTagPattern).matcher(line);
-					if(matcher.find() && matcher.groupCount() == 2)
+					_timeControl = game.timeControl;
+					game.status = GameStatus.BUILDING;
+					game.timeControl = TimeControl.UNLIMITED;
+					game.start();
+					game.plyStart = 0;
+					final OpeningCache cache = Game.openingCache;
+					if(cache != null && !dontCalculate && game.status == GameStatus.ONGOING)
 					{
-						if(!matcher.group(1).equalsIgnoreCase("Result"))
-						{
-							Game.processTag(game, matcher.group(1), matcher.group(2));
-						}
+						opening = new OpeningReplay(cache, game, language, trusted);
+					}
+					else if(trusted)
+					{
+						replay = new TrustedReplay(game);
 					}
 				}
-				else
+				for(String section : line.split(" "))
 				{
-					if(line.equals(""))
+					section = section.trim();
+					if(section.equals(""))
 					{
 						continue;
 					}
-					if(_timeControl == null)
+					if(section.startsWith(";"))
+					{
+						break;
+					}
+					if(section.startsWith("("))
 					{
-						_timeControl = game.timeControl;
-						game.status = GameStatus.BUILDING;
-						game.timeControl = TimeControl.UNLIMITED;
-						game.start();
-						game.plyStart = 0;
+						excluded++;
 					}
-					for(String section : line.split(" "))
+					if(excluded > 0)
 					{
-						section = section.trim();
-						if(section.equals(""))
-						{
-							continue;
-						}
-						if(section.startsWith(";"))
+						if(section.endsWith(")"))
 						{
-							break;
+							excluded--;
 						}
-						if(section.startsWith("("))
+					}
+					else
+					{
+						if(section.startsWith("{"))
 						{
-							excluded++;
+							annotation++;
+							section = section.substring(1);
 						}
-						if(excluded > 0)
+						if(annotation > 0)
 						{
-							if(section.endsWith(")"))
+							if(section.endsWith("}"))
+							{
+								annotation--;
+								section = section.substring(0, section.length() - 1);
+							}
+							if(move != null && !section.equals(""))
 							{
-								excluded--;
+								move.annotate(section);
 							}
 						}
-						else
+						else if(!section.equals("") && !section.endsWith("."))
 						{
-							if(section.startsWith("{"))
+							if(section.equals("*"))
 							{
-								annotation++;
-								section = section.substring(1);
+								break;
 							}
-							if(annotation > 0)
+							if(section.equals("1-0") || section.equalsIgnoreCase("1-o"))
 							{
-								if(section.endsWith("}"))
-								{
-									annotation--;
-									section = section.substring(0, section.length() - 1);
-								}
-								if(move != null && !section.equals(""))
-								{
-									move.annotate(section);
-								}
+								game.status = GameStatus.WHITE_WINS;
+								break;
 							}
-							else if(!section.equals("") && !section.endsWith("."))
+							if(section.equals("0-1") || section.equalsIgnoreCase("o-1"))
 							{
-								if(section.equals("*"))
-								{
-									break;
-								}
-								if(section.equals("1-0") || section.equalsIgnoreCase("1-o"))
+								game.status = GameStatus.BLACK_WINS;
+								break;
+							}
+							if(section.equals("1/2-1/2") || section.equals("½-½"))
+							{
+								game.status = GameStatus.DRAW;
+								break;
+							}
+							String moveNum = String.valueOf((int) Math.ceil((double) game.plyCount / 2)) + ".";
+							if(section.startsWith(moveNum))
+							{
+								if(section.startsWith(moveNum + ".."))
 								{
-									game.status = GameStatus.WHITE_WINS;
-									break;
+									section = section.substring(moveNum.length() + 2);
 								}
-								if(section.equals("0-1") || section.equalsIgnoreCase("o-1"))
+								else
 								{
-									game.status = GameStatus.BLACK_WINS;
-									break;
+									section = section.substring(moveNum.length());
 								}
-								if(section.equals("1/2-1/2") || section.equals("½-½"))
+							}
+							if(!section.equals(""))
+							{
+								if(opening != null)
 								{
-									game.status = GameStatus.DRAW;
-									break;
+									move = opening.move(section, language);
 								}
-								String moveNum = String.valueOf((int) Math.ceil((double) game.plyCount / 2)) + ".";
-								if(section.startsWith(moveNum))
+								else if(replay != null)
 								{
-									if(section.startsWith(moveNum + ".."))
-									{
-										section = section.substring(moveNum.length() + 2);
-									}
-									else
-									{
-										section = section.substring(moveNum.length());
-									}
+									move = replay.move(section, language);
 								}
-								if(!section.equals(""))
+								else
 								{
 									move = game.move(section, language);
 									move.commit(false, dontCalculate);
@@ -201,21 +307,117 @@ public class Game
 					}
 				}
 			}
-			if(_timeControl != null)
+		}
+		if(_timeControl != null)
+		{
+			if(opening != null)
+			{
+				opening.finish();
+			}
+			else if(replay != null)
+			{
+				replay.finish();
+			}
+			game.timeControl = _timeControl;
+			if(game.status != GameStatus.BUILDING && game.status != GameStatus.ONGOING && game.endReason == EndReason.UNTERMINATED)
 			{
-				game.timeControl = _timeControl;
-				if(game.status != GameStatus.BUILDING && game.status != GameStatus.ONGOING && game.endReason == EndReason.UNTERMINATED)
+				if(game.status == GameStatus.DRAW)
 				{
-					if(game.status == GameStatus.DRAW)
-					{
-						game.endReason = EndReason.DRAW_AGREEMENT;
-					}
-					else
-					{
-						game.endReason = EndReason.RESIGNATION;
-					}
+					game.endReason = EndReason.DRAW_AGREEMENT;
+				}
+				else
+				{
+					game.endReason = EndReason.RESIGNATION;
 				}
 			}
+		}
+		return game;
+	}
+
+	/**
+	 * Reads only the tag sections of the given PGN, without replaying any moves.
+	 */
+	public static ArrayList<GameHeader> headersFromPGN(String pgn) throws ChessException
+	{
+		final ArrayList<GameHeader> headers = new ArrayList<>();
+		final PGNReader reader = new PGNReader(new StringReader(pgn));
+		try
+		{
+			GameHeader header;
+			while((header = reader.readHeader()) != null)
+			{
+				headers.add(header);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return headers;
+	}
+
+	public static ArrayList<GameHeader> headersFromCGN(InputStream is) throws IOException, ChessException
+	{
+		return Game.headersFromCGN(is, CGNVersion.latest);
+	}
+
+	/**
+	 * Reads only the tags and results of the given CGN games, skipping over their moves and annotations.
+	 */
+	public static ArrayList<GameHeader> headersFromCGN(InputStream is, CGNVersion version) throws IOException, ChessException
+	{
+		final ArrayList<GameHeader> headers = new ArrayList<>();
+		final CGNReader reader = new CGNReader(is, false, version);
+		GameHeader header;
+		while((header = reader.readHeader()) != null)
+		{
+			headers.add(header);
+		}
+		return headers;
+	}
+
+	public static ArrayList<LazyGame> lazyFromPGN(String pgn) throws ChessException
+	{
+		return Game.lazyFromPGN(pgn, Language.ENGLISH, false, false);
+	}
+
+	/**
+	 * Reads only the tags of the given PGN games and keeps their movetext, which is only replayed when something position-dependent is accessed.
+	 */
+	public static ArrayList<LazyGame> lazyFromPGN(String pgn, Language language, boolean dontCalculate, boolean trusted) throws ChessException
+	{
+		final ArrayList<LazyGame> games = new ArrayList<>();
+		final PGNReader reader = new PGNReader(new StringReader(pgn), language, dontCalculate).setTrusted(trusted);
+		try
+		{
+			LazyGame game;
+			while((game = reader.readLazyGame()) != null)
+			{
+				games.add(game);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return games;
+	}
+
+	public static ArrayList<LazyGame> lazyFromCGN(InputStream is, CGNVersion version) throws IOException, ChessException
+	{
+		return Game.lazyFromCGN(is, false, version, false);
+	}
+
+	/**
+	 * Reads only the tags and results of the given CGN games and keeps their moves, which are only replayed when something position-dependent is accessed.
+	 */
+	public static ArrayList<LazyGame> lazyFromCGN(InputStream is, boolean dontCalculate, CGNVersion version, boolean trusted) throws IOException, ChessException
+	{
+		final ArrayList<LazyGame> games = new ArrayList<>();
+		final CGNReader reader = new CGNReader(is, dontCalculate, version).setTrusted(trusted);
+		LazyGame game;
+		while((game = reader.readLazyGame()) != null)
+		{
 			games.add(game);
 		}
 		return games;
@@ -232,166 +434,89 @@ public class Game
 	}
 
 	public static ArrayList<Game> fromCGN(InputStream is, boolean dontCalculate, CGNVersion version) throws IOException, ChessException
+	{
+		return Game.fromCGN(is, dontCalculate, version, false);
+	}
+
+	/**
+	 * @param trusted Set to true if the moves are known to be legal, e.g. because we've exported them ourselves, to replay them without validation. Castling abilities, en passant, repetitions and the final status are still determined.
+	 */
+	public static ArrayList<Game> fromCGN(InputStream is, boolean dontCalculate, CGNVersion version, boolean trusted) throws IOException, ChessException
 	{
 		final ArrayList<Game> games = new ArrayList<>();
-		while(is.available() > 1)
+		final CGNReader reader = new CGNReader(is, dontCalculate, version).setTrusted(trusted);
+		Game game;
+		while((game = reader.readGame()) != null)
 		{
-			final Game game = new Game();
-			if(version == CGNVersion.V1)
-			{
-				byte tags = (byte) is.read();
-				while(tags > 0)
-				{
-					Game.processTag(game, Game.readNullTerminatedString(is), Game.readNullTerminatedString(is));
-					tags--;
-				}
-			}
-			else
-			{
-				do
-				{
-					int tagByte = is.read();
-					CGNTagMap tag = CGNTagMap.fromOrdinal(tagByte);
-					if(tag == null)
-					{
-						throw new ChessException("Invalid CGN tag: " + String.format("%02X", tagByte));
-					}
-					if(tag == CGNTagMap._ENDOFTAGS)
-					{
-						break;
-					}
-					if(tag == CGNTagMap._FROMSTRING)
-					{
-						Game.processTag(game, Game.readNullTerminatedString(is), Game.readNullTerminatedString(is));
-					}
-					else
-					{
-						Game.processTag(game, tag.name(), Game.readNullTerminatedString(is));
-					}
-				}
-				while(true);
-			}
-			Move lastMove = null;
-			final GameStatus _status = game.status;
-			final TimeControl _timeControl = game.timeControl;
-			game.status = GameStatus.BUILDING;
-			game.timeControl = TimeControl.UNLIMITED;
-			game.start();
-			game.plyStart = 0;
-			while(is.available() > 0)
-			{
-				final byte b1 = (byte) is.read();
-				final boolean controlMove = ((b1 & 0b10000000) >> 7) == 1;
-				if(controlMove)
-				{
-					if(version == CGNVersion.V1)
-					{
-						if(b1 == (byte) 0b10000000)
-						{
-							break;
-						}
-						else if(b1 == (byte) 0b10000001)
-						{
-							if(lastMove != null)
-							{
-								lastMove.annotate(Game.readNullTerminatedString(is));
-							}
-						}
-					}
-					else
-					{
-						if(b1 == (byte) 0b10000000)
-						{
-							if(lastMove != null)
-							{
-								lastMove.annotate(Game.readNullTerminatedString(is));
-							}
-						}
-						else
-						{
-							// 0b10000001: There are no more moves/bytes but the game is still ongoing.
-							if(b1 == (byte) 0b10000010)
-							{
-								game.status = GameStatus.WHITE_WINS;
-							}
-							else if(b1 == (byte) 0b10000011)
-							{
-								game.status = GameStatus.BLACK_WINS;
-							}
-							else if(b1 == (byte) 0b10000100)
-							{
-								game.status = GameStatus.DRAW;
-							}
-							break;
-						}
-					}
-				}
-				else
-				{
-					final byte b2 = (byte) is.read();
-					final byte fromSquareFile = (byte) ((b1 >>> 4) & 0b111);
-					final byte fromSquareRank = (byte) ((b1 >>> 1) & 0b111);
-					final byte toSquareFile = (byte) (((b1 << 2) & 0b100) | ((b2 >>> 6) & 0b011));
-					final byte toSquareRank = (byte) (b2 >>> 3 & 0b111);
-					final byte promotionValue = (byte) (b2 & 0b111);
-					PieceType promoteTo = null;
-					if(promotionValue > 0)
-					{
-						promoteTo = PieceType.fromOrdinal(promotionValue);
-					}
-					final Square fromSquare = game.square(fromSquareFile, fromSquareRank);
-					final Square toSquare = game.square(toSquareFile, toSquareRank);
-					lastMove = new Move(game, fromSquare, toSquare, promoteTo, true);
-					lastMove.commit(false, dontCalculate);
-				}
-			}
-			if(version == CGNVersion.V1 && _status != GameStatus.BUILDING)
-			{
-				game.status = _status;
-			}
-			if(game.endReason == EndReason.UNTERMINATED && game.status != GameStatus.BUILDING && game.status != GameStatus.ONGOING)
-			{
-				if(game.status == GameStatus.DRAW)
-				{
-					game.endReason = EndReason.DRAW_AGREEMENT;
-				}
-				else
-				{
-					game.endReason = EndReason.RESIGNATION;
-				}
-			}
-			game.timeControl = _timeControl;
 			games.add(game);
 		}
 		return games;
 	}
 
-	private static String readNullTerminatedString(InputStream is) throws IOException
+	public static ArrayList<Game> fromCGNParallel(InputStream is) throws IOException, ChessException
 	{
-		final ArrayList<Byte> byteArrList = new ArrayList<>();
-		if(is.available() == 0)
+		return Game.fromCGNParallel(is, false, false);
+	}
+
+	/**
+	 * Decodes the blocks of the given {@link CGNVersion#V3} CGN on all cores.
+	 */
+	public static ArrayList<Game> fromCGNParallel(InputStream is, boolean dontCalculate, boolean trusted) throws IOException, ChessException
+	{
+		final ForkJoinPool pool = new ForkJoinPool();
+		try
 		{
-			throw new IOException("Insufficient bytes to read null-terminated string");
+			return Game.fromCGN(is, dontCalculate, trusted, pool);
 		}
-		do
+		finally
 		{
-			byte b = (byte) is.read();
-			if(b == 0x00)
-			{
-				break;
-			}
-			byteArrList.add(b);
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Reads the blocks of the given {@link CGNVersion#V3} CGN and decodes them on the given pool.
+	 */
+	public static ArrayList<Game> fromCGN(InputStream is, boolean dontCalculate, boolean trusted, ForkJoinPool pool) throws IOException, ChessException
+	{
+		return ParallelCGNParser.parse(is, dontCalculate, trusted, pool);
+	}
+
+	static GameStatus resultStatus(String result) throws ChessException
+	{
+		final GameStatus status = Game.resultStatus(result, null);
+		if(status == null)
+		{
+			throw new ChessException("Invalid Result: " + result);
+		}
+		return status;
+	}
+
+	/**
+	 * @return The status of the given Result tag or the given fallback if it isn't a valid one.
+	 */
+	static GameStatus resultStatus(String result, GameStatus fallback)
+	{
+		if(result.equals("1-0") || result.equalsIgnoreCase("1-o"))
+		{
+			return GameStatus.WHITE_WINS;
 		}
-		while(true);
-		byte[] byteArr = new byte[byteArrList.size()];
-		for(int i = 0; i < byteArr.length; i++)
+		if(result.equals("0-1") || result.equalsIgnoreCase("o-1"))
 		{
-			byteArr[i] = byteArrList.get(i);
+			return GameStatus.BLACK_WINS;
 		}
-		return new String(byteArr, StandardCharsets.UTF_8);
+		if(result.equals("1/2-1/2") || result.equals("½-½"))
+		{
+			return GameStatus.DRAW;
+		}
+		if(result.equals("*"))
+		{
+			return GameStatus.ONGOING;
+		}
+		return fallback;
 	}
 
-	private static void processTag(Game game, String key, String val) throws ChessException
+	static void processTag(Game game, String key, String val) throws ChessException
 	{
 		if(key.equalsIgnoreCase("FEN"))
 		{
@@ -411,21 +536,10 @@ public class Game
 		}
 		else if(key.equalsIgnoreCase("Result"))
 		{
-			if(val.equals("1-0") || val.equalsIgnoreCase("1-o"))
-			{
-				game.status = GameStatus.WHITE_WINS;
-			}
-			else if(val.equals("0-1") || val.equalsIgnoreCase("o-1"))
-			{
-				game.status = GameStatus.BLACK_WINS;
-			}
-			else if(val.equals("1/2-1/2") || val.equals("½-½"))
+			final GameStatus status = Game.resultStatus(val);
+			if(status != GameStatus.ONGOING)
 			{
-				game.status = GameStatus.DRAW;
-			}
-			else if(!val.equals("*"))
-			{
-				throw new ChessException("Invalid Result: " + val);
+				game.status = status;
 			}
 		}
 		else if(key.equalsIgnoreCase("Termination"))
@@ -539,6 +653,14 @@ public class Game
 	}
 
 	public Move uciMove(String uci) throws ChessException
+	{
+		return this.uciMove(uci, null);
+	}
+
+	/**
+	 * @param trustedFEN The positional FEN of this game to create an unvalidated move for {@link TrustedReplay} or null.
+	 */
+	Move uciMove(String uci, String trustedFEN) throws ChessException
 	{
 		if(uci == null || uci.equals("(none)"))
 		{
@@ -615,19 +737,28 @@ public class Game
 					}
 					if(rookSquare != null)
 					{
-						return new Move(this, square(kingFile, rank), square(rookSquare), null, true);
+						return this.newMove(square(kingFile, rank), square(rookSquare), null, trustedFEN);
 					}
 				}
 			}
 		}
 		if(uci.length() == 5)
 		{
-			return new Move(this, square(uci.substring(0, 2)).copy(), square(uci.substring(2, 4)).copy(), Language.ENGLISH.pieceFromChar(uci.substring(4, 5)), true);
+			return this.newMove(square(uci.substring(0, 2)).copy(), square(uci.substring(2, 4)).copy(), Language.ENGLISH.pieceFromChar(uci.substring(4, 5)), trustedFEN);
 		}
 		else
 		{
-			return new Move(this, square(uci.substring(0, 2)).copy(), square(uci.substring(2, 4)).copy(), null, true);
+			return this.newMove(square(uci.substring(0, 2)).copy(), square(uci.substring(2, 4)).copy(), null, trustedFEN);
+		}
+	}
+
+	private Move newMove(Square fromSquare, Square toSquare, PieceType promoteTo, String trustedFEN) throws ChessException
+	{
+		if(trustedFEN == null)
+		{
+			return new Move(this, fromSquare, toSquare, promoteTo, true);
 		}
+		return new Move(this, fromSquare, toSquare, promoteTo, trustedFEN);
 	}
 
 	public Move move(String move) throws ChessException
@@ -636,6 +767,14 @@ public class Game
 	}
 
 	public Move move(String move, Language language) throws ChessException
+	{
+		return this.move(move, language, null);
+	}
+
+	/**
+	 * @param trustedFEN The positional FEN of this game to create an unvalidated move for {@link TrustedReplay} or null.
+	 */
+	Move move(String move, Language language, String trustedFEN) throws ChessException
 	{
 		if(move == null || move.equals("(none)"))
 		{
@@ -644,11 +783,11 @@ public class Game
 		move = move.replace("x", "").replace("+", "").replace("?", "").replace("!", "").replace("#", "").replace("=", "").replace("(", "").replace(")", "");
 		if(move.equalsIgnoreCase("O-O-O") || move.equals("0-0-0") || move.equals("e1c1") || move.equals("e8c8"))
 		{
-			return this.uciMove(toMove == Color.WHITE ? "e1c1" : "e8c8");
+			return this.uciMove(toMove == Color.WHITE ? "e1c1" : "e8c8", trustedFEN);
 		}
 		else if(move.equalsIgnoreCase("O-O") || move.equals("0-0") || move.equals("e1g1") || move.equals("e8g8"))
 		{
-			return this.uciMove(toMove == Color.WHITE ? "e1g1" : "e8g8");
+			return this.uciMove(toMove == Color.WHITE ? "e1g1" : "e8g8", trustedFEN);
 		}
 		move = move.replace("-", "");
 		PieceType promoteTo = null;
@@ -703,7 +842,7 @@ public class Game
 					{
 						for(Square s : pieces)
 						{
-							if(s.pieceColor == this.toMove && s.pieceType == pieceType && s.rank == rank && this.getSquaresControlledBy(s).contains(toSquare) && new Move(this, s, toSquare, null, true).isLegal())
+							if(s.pieceColor == this.toMove && s.pieceType == pieceType && s.rank == rank && this.getSquaresControlledBy(s).contains(toSquare) && (trustedFEN != null || new Move(this, s, toSquare, null, true).isLegal()))
 							{
 								squares.add(s);
 							}
@@ -717,7 +856,7 @@ public class Game
 					{
 						for(Square s : this.pieces)
 						{
-							if(s.pieceColor == this.toMove && s.pieceType == pieceType && s.file == file && this.getSquaresControlledBy(s).contains(toSquare) && new Move(this, s, toSquare, null, true).isLegal())
+							if(s.pieceColor == this.toMove && s.pieceType == pieceType && s.file == file && this.getSquaresControlledBy(s).contains(toSquare) && (trustedFEN != null || new Move(this, s, toSquare, null, true).isLegal()))
 							{
 								squares.add(s);
 							}
@@ -731,13 +870,24 @@ public class Game
 				{
 					for(Square s : this.pieces)
 					{
-						if(s.pieceColor == this.toMove && s.pieceType == pieceType && this.getSquaresControlledBy(s).contains(toSquare) && new Move(this, s, toSquare, null, true).isLegal())
+						if(s.pieceColor == this.toMove && s.pieceType == pieceType && this.getSquaresControlledBy(s).contains(toSquare) && (trustedFEN != null || new Move(this, s, toSquare, null, true).isLegal()))
 						{
 							squares.add(s);
 						}
 					}
 				}
 			}
+			if(squares.size() > 1 && trustedFEN != null)
+			{
+				// The other pieces might be pinned.
+				for(int i = squares.size() - 1; i >= 0; i--)
+				{
+					if(!new Move(this, squares.get(i), toSquare, null, true).isLegal())
+					{
+						squares.remove(i);
+					}
+				}
+			}
 			if(squares.size() == 0)
 			{
 				throw new InvalidMoveException("No such piece '" + move.substring(0, move.length() - 2) + "' for " + move);
@@ -748,7 +898,7 @@ public class Game
 			}
 			fromSquare = squares.get(0);
 		}
-		return new Move(this, fromSquare, toSquare, promoteTo, true);
+		return this.newMove(fromSquare, toSquare, promoteTo, trustedFEN);
 	}
 
 	public Game setVariant(Variant variant)
@@ -1418,6 +1568,125 @@ public class Game
 		return squares;
 	}
 
+	/**
+	 * @return Whether the given square is in {@link #getSquaresControlledBy(Square)} of the given piece, found with offset and ray tests, so nothing is allocated.
+	 */
+	boolean controls(Square from, Square to)
+	{
+		if(from.pieceType == null || to.pieceColor == from.pieceColor)
+		{
+			return false;
+		}
+		final int fileDiff = to.file - from.file;
+		final int rankDiff = to.rank - from.rank;
+		switch(from.pieceType)
+		{
+			case PAWN:
+				final int direction = (from.pieceColor == Color.WHITE ? 1 : -1);
+				if(fileDiff == 0)
+				{
+					if(to.hasPiece())
+					{
+						return false;
+					}
+					if(rankDiff == direction)
+					{
+						return true;
+					}
+					return rankDiff == 2 * direction && from.rank == (from.pieceColor == Color.WHITE ? 1 : 6) && !this.square(from.file, (byte) (from.rank + direction)).hasPiece();
+				}
+				return (fileDiff == 1 || fileDiff == -1) && rankDiff == direction && (to.pieceColor == from.pieceColor.opposite() || to.equals(this.enPassantSquare));
+			case KNIGHT:
+				return fileDiff * rankDiff == 2 || fileDiff * rankDiff == -2;
+			case KING:
+				return fileDiff >= -1 && fileDiff <= 1 && rankDiff >= -1 && rankDiff <= 1;
+			case ROOK:
+				return (fileDiff == 0 || rankDiff == 0) && this.isRayClear(from, to);
+			case BISHOP:
+				return (fileDiff == rankDiff || fileDiff == -rankDiff) && this.isRayClear(from, to);
+			case QUEEN:
+				return (fileDiff == 0 || rankDiff == 0 || fileDiff == rankDiff || fileDiff == -rankDiff) && this.isRayClear(from, to);
+		}
+		return false;
+	}
+
+	/**
+	 * @return Whether there are no pieces between the given squares, which have to be on a line.
+	 */
+	private boolean isRayClear(Square from, Square to)
+	{
+		final int fileStep = Integer.signum(to.file - from.file);
+		final int rankStep = Integer.signum(to.rank - from.rank);
+		int file = from.file + fileStep;
+		int rank = from.rank + rankStep;
+		while(file != to.file || rank != to.rank)
+		{
+			if(this.squares[rank * 8 + file].hasPiece())
+			{
+				return false;
+			}
+			file += fileStep;
+			rank += rankStep;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether a piece of the given color controls the given square, found by looking outward from it along the rays and at the knight, pawn and king squares, so nothing is allocated.
+	 */
+	boolean isAttacked(Square square, Color by)
+	{
+		final int file = square.file;
+		final int rank = square.rank;
+		final int pawnRank = rank - (by == Color.WHITE ? 1 : -1);
+		if(this.isPiece(file - 1, pawnRank, by, PieceType.PAWN) || this.isPiece(file + 1, pawnRank, by, PieceType.PAWN))
+		{
+			return true;
+		}
+		for(int[] offset : KNIGHT_OFFSETS)
+		{
+			if(this.isPiece(file + offset[0], rank + offset[1], by, PieceType.KNIGHT))
+			{
+				return true;
+			}
+		}
+		for(int[] direction : DIRECTIONS)
+		{
+			final boolean diagonal = (direction[0] != 0 && direction[1] != 0);
+			int file_ = file + direction[0];
+			int rank_ = rank + direction[1];
+			if(this.isPiece(file_, rank_, by, PieceType.KING))
+			{
+				return true;
+			}
+			while(file_ >= 0 && file_ < 8 && rank_ >= 0 && rank_ < 8)
+			{
+				final Square square_ = this.squares[rank_ * 8 + file_];
+				if(square_.hasPiece())
+				{
+					if(square_.pieceColor == by && (square_.pieceType == PieceType.QUEEN || square_.pieceType == (diagonal ? PieceType.BISHOP : PieceType.ROOK)))
+					{
+						return true;
+					}
+					break;
+				}
+				file_ += direction[0];
+				rank_ += direction[1];
+			}
+		}
+		return false;
+	}
+
+	private boolean isPiece(int file, int rank, Color color, PieceType pieceType)
+	{
+		if(file < 0 || file > 7 || rank < 0 || rank > 7)
+		{
+			return false;
+		}
+		final Square square = this.squares[rank * 8 + file];
+		return square.pieceType == pieceType && square.pieceColor == color;
+	}
+
 	public ArrayList<Square> getSquaresControlledBy(Color color)
 	{
 		final ArrayList<Square> squares = new ArrayList<>();
@@ -1631,10 +1900,21 @@ public class Game
 
 	public boolean isCheck()
 	{
-		final ArrayList<Square> squaresControlledByOpponent = this.getSquaresControlledBy(this.toMove.opposite());
-		for(Square s : this.getPieces(this.toMove, PieceType.KING))
+		return this.isCheck(this.toMove);
+	}
+
+	/**
+	 * @return Whether a king of the given color is attacked, regardless of whose turn it is.
+	 */
+	boolean isCheck(Color color)
+	{
+		if(this.squares == null)
+		{
+			return false;
+		}
+		for(Square square : this.squares)
 		{
-			if(squaresControlledByOpponent.contains(s))
+			if(square.pieceType == PieceType.KING && square.pieceColor == color && this.isAttacked(square, color.opposite()))
 			{
 				return true;
 			}
@@ -1720,6 +2000,46 @@ public class Game
 		return sb.toString();
 	}
 
+	/**
+	 * @return A 64-bit Zobrist hash of the pieces, the side to move, the castling abilities and the en passant square.
+	 */
+	public long getHash()
+	{
+		long hash = 0;
+		synchronized(this.pieces)
+		{
+			for(Square s : this.pieces)
+			{
+				hash ^= zobristKeys[(((s.pieceColor.ordinal() * 6) + s.pieceType.ordinal()) * 64) + s.index()];
+			}
+		}
+		if(this.toMove == Color.BLACK)
+		{
+			hash ^= zobristKeys[768];
+		}
+		if(this.whiteCanCastle)
+		{
+			hash ^= zobristKeys[769];
+		}
+		if(this.whiteCanCastleQueenside)
+		{
+			hash ^= zobristKeys[770];
+		}
+		if(this.blackCanCastle)
+		{
+			hash ^= zobristKeys[771];
+		}
+		if(this.blackCanCastleQueenside)
+		{
+			hash ^= zobristKeys[772];
+		}
+		if(this.enPassantSquare != null)
+		{
+			hash ^= zobristKeys[773 + this.enPassantSquare.file];
+		}
+		return hash;
+	}
+
 	public String getFEN()
 	{
 		return this.getFEN(false);
@@ -1783,6 +2103,15 @@ public class Game
 	public TreeMap<String, String> getExportableTags(CGNVersion cgnVersion)
 	{
 		final TreeMap<String, String> tags = new TreeMap<>(new PGNTagComparator());
+		this.putExportableTags(tags, cgnVersion);
+		return tags;
+	}
+
+	/**
+	 * Puts the tags which would be exported into the given map, which should be empty and ordered by {@link PGNTagComparator}, so the map can be reused across games.
+	 */
+	void putExportableTags(TreeMap<String, String> tags, CGNVersion cgnVersion)
+	{
 		tags.putAll(this.tags);
 		if(tags.containsKey("Annotator"))
 		{
@@ -1886,7 +2215,6 @@ public class Game
 		{
 			tags.put("PlyCount", String.valueOf(this.plyCount - this.start.plyCount));
 		}
-		return tags;
 	}
 
 	public String toUCI()
@@ -1937,59 +2265,106 @@ public class Game
 	}
 
 	public String toPGN(boolean noTags, boolean noAnnotations, boolean noAnnotationTags, AlgebraicNotationVariation anvariation, Language language) throws ChessException
+	{
+		final StringBuilder pgn = new StringBuilder();
+		try
+		{
+			this.writePGN(pgn, noTags, noAnnotations, noAnnotationTags, anvariation, language);
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return pgn.toString();
+	}
+
+	public void writePGN(Appendable out) throws IOException, ChessException
+	{
+		this.writePGN(out, false, false, false, AlgebraicNotationVariation.SAN, Language.ENGLISH);
+	}
+
+	public void writePGN(Appendable out, AlgebraicNotationVariation anvariation, Language language) throws IOException, ChessException
+	{
+		this.writePGN(out, false, false, false, anvariation, language);
+	}
+
+	public void writePGN(Appendable out, boolean noTags, boolean noAnnotations, boolean noAnnotationTags, AlgebraicNotationVariation anvariation, Language language) throws IOException, ChessException
+	{
+		this.writePGN(out, new TreeMap<String, String>(new PGNTagComparator()), noTags, noAnnotations, noAnnotationTags, anvariation, language);
+	}
+
+	/**
+	 * Writes the game as PGN straight to the given output.
+	 *
+	 * @param tags An empty map which is used to collect the tags and left empty again, so {@link PGNWriter} can reuse it.
+	 */
+	void writePGN(Appendable out, TreeMap<String, String> tags, boolean noTags, boolean noAnnotations, boolean noAnnotationTags, AlgebraicNotationVariation anvariation, Language language) throws IOException, ChessException
 	{
 		if(!exportable)
 		{
 			throw new ChessException("The game has been modified in a way that PGN can not express");
 		}
-		StringBuilder pgn = new StringBuilder();
-		final TreeMap<String, String> tags = this.getExportableTags(null);
-		if(!noTags)
+		this.putExportableTags(tags, null);
+		try
 		{
-			for(Map.Entry<String, String> tag : tags.entrySet())
+			if(!noTags)
 			{
-				pgn.append("[").append(tag.getKey()).append(" \"").append(tag.getValue().replace("\"", "\\\"")).append("\"]\n");
+				for(Map.Entry<String, String> tag : tags.entrySet())
+				{
+					out.append("[").append(tag.getKey()).append(" \"");
+					final String value = tag.getValue();
+					for(int i = 0; i < value.length(); i++)
+					{
+						final char c = value.charAt(i);
+						if(c == '"')
+						{
+							out.append('\\');
+						}
+						out.append(c);
+					}
+					out.append("\"]\n");
+				}
+				out.append("\n");
 			}
-			pgn.append("\n");
-		}
-		boolean firstMove = true;
-		boolean white = this.start.toMove == Color.WHITE;
-		int moveNum = (int) Math.ceil((double) this.start.plyCount / 2);
-		synchronized(this.moves)
-		{
-			if(this.moves.size() > 0)
+			boolean firstMove = true;
+			boolean white = this.start.toMove == Color.WHITE;
+			int moveNum = (int) Math.ceil((double) this.start.plyCount / 2);
+			synchronized(this.moves)
 			{
 				for(Move move : this.moves)
 				{
 					if(firstMove)
 					{
-						pgn.append(moveNum);
+						out.append(String.valueOf(moveNum));
 						if(white)
 						{
-							pgn.append(". ");
+							out.append(". ");
 						}
 						else
 						{
-							pgn.append("... ");
+							out.append("... ");
 						}
 						firstMove = false;
 					}
 					else if(white)
 					{
 						moveNum++;
-						pgn.append(moveNum).append(". ");
+						out.append(String.valueOf(moveNum)).append(". ");
 					}
-					pgn.append(move.toAlgebraicNotation(anvariation, language)).append(" ");
+					out.append(move.toAlgebraicNotation(anvariation, language)).append(" ");
 					if(!noAnnotations && move.hasAnnotation(noAnnotationTags))
 					{
-						pgn.append("{ ").append(move.getAnnotation(noAnnotationTags)).append(" } ");
+						out.append("{ ").append(move.getAnnotation(noAnnotationTags)).append(" } ");
 					}
 					white = !white;
 				}
 			}
+			out.append(tags.get("Result")).append("\n");
+		}
+		finally
+		{
+			tags.clear();
 		}
-		pgn.append(tags.get("Result")).append("\n");
-		return pgn.toString();
 	}
 
 	public byte[] toCGN() throws IOException, ChessException
@@ -2031,7 +2406,25 @@ public class Game
 		this.toCGN(os, noTags, noAnnotations, noAnnotationTags, CGNVersion.latest);
 	}
 
+	/**
+	 * With {@link CGNVersion#V3}, the game is written as a block of its own. Use a {@link CGNWriter} to write multiple games per block.
+	 */
 	public void toCGN(OutputStream os, boolean noTags, boolean noAnnotations, boolean noAnnotationTags, CGNVersion version) throws IOException, ChessException
+	{
+		if(version == CGNVersion.V3)
+		{
+			new CGNWriter(os, version, noTags, noAnnotations, noAnnotationTags).write(this).flush();
+		}
+		else
+		{
+			this.writeCGN(os, noTags, noAnnotations, noAnnotationTags, version, CGNMoveEncoding.COORDINATES, null);
+		}
+	}
+
+	/**
+	 * @param dictionary The ids of the tag values written so far in the current block, or null to write them in full.
+	 */
+	void writeCGN(OutputStream os, boolean noTags, boolean noAnnotations, boolean noAnnotationTags, CGNVersion version, CGNMoveEncoding moveEncoding, Map<String, Integer> dictionary) throws IOException, ChessException
 	{
 		if(!exportable)
 		{
@@ -2068,19 +2461,19 @@ public class Game
 				}
 				if(mappedTag == CGNTagMap._FROMSTRING)
 				{
-					os.write(key.getBytes(Charset.forName("UTF-8")));
-					os.write(0x00);
+					Game.writeCGNTagString(os, key, version, dictionary);
 				}
-				os.write(value.getBytes(Charset.forName("UTF-8")));
-				os.write(0x00);
+				Game.writeCGNTagString(os, value, version, dictionary);
 			}
-			if(version == CGNVersion.V2)
+			if(version != CGNVersion.V1)
 			{
 				os.write(0x00);
 			}
 		}
 		synchronized(this.moves)
 		{
+			final long[] clocks = new long[2];
+			int ply = 0;
 			for(Move m : this.moves)
 			{
 				int promotionValue = 0;
@@ -2088,21 +2481,45 @@ public class Game
 				{
 					promotionValue = m.promoteTo.ordinal();
 				}
-				os.write((byte) (m.fromSquare.file << 4 | m.fromSquare.rank << 1 | (m.toSquare.file & 0b100) >>> 2));
-				os.write((byte) ((m.toSquare.file & 0b011) << 6 | m.toSquare.rank << 3 | promotionValue));
+				boolean coordinates = true;
+				if(moveEncoding == CGNMoveEncoding.INDEX)
+				{
+					final int index = CGNMoveIndex.indexOf(m.snapshot(), m.fromSquare, m.toSquare, m.promoteTo);
+					if(index != -1 && index < 0x80)
+					{
+						os.write(index);
+						coordinates = false;
+					}
+					else if(index != -1 && index < 0x180)
+					{
+						os.write(0b10000101);
+						os.write(index - 0x80);
+						coordinates = false;
+					}
+					else
+					{
+						// The move is not in the list, so its coordinates follow.
+						os.write(0b10000110);
+					}
+				}
+				if(coordinates)
+				{
+					os.write((byte) (m.fromSquare.file << 4 | m.fromSquare.rank << 1 | (m.toSquare.file & 0b100) >>> 2));
+					os.write((byte) ((m.toSquare.file & 0b011) << 6 | m.toSquare.rank << 3 | promotionValue));
+				}
 				if(!noAnnotations && m.hasAnnotation(noAnnotationTags))
 				{
-					if(version == CGNVersion.V1)
+					if(version == CGNVersion.V3)
 					{
-						os.write(0b10000001);
+						CGNAnnotations.write(os, m.getAnnotation(noAnnotationTags), clocks, ply);
 					}
 					else
 					{
-						os.write(0b10000000);
+						os.write(version == CGNVersion.V1 ? 0b10000001 : 0b10000000);
+						Game.writeCGNString(os, m.getAnnotation(noAnnotationTags), version);
 					}
-					os.write(m.getAnnotation(noAnnotationTags).getBytes(Charset.forName("UTF-8")));
-					os.write(0x00);
 				}
+				ply++;
 			}
 		}
 		if(version == CGNVersion.V1)
@@ -2128,6 +2545,45 @@ public class Game
 		}
 	}
 
+	/**
+	 * Writes the given string in full the first time it occurs in a block, preceded by a 0, and as its varint id starting at 1 afterwards.
+	 */
+	private static void writeCGNTagString(OutputStream os, String string, CGNVersion version, Map<String, Integer> dictionary) throws IOException
+	{
+		if(dictionary == null)
+		{
+			Game.writeCGNString(os, string, version);
+			return;
+		}
+		final Integer id = dictionary.get(string);
+		if(id != null)
+		{
+			CGNWriter.writeVarInt(os, id);
+			return;
+		}
+		os.write(0x00);
+		dictionary.put(string, dictionary.size() + 1);
+		Game.writeCGNString(os, string, version);
+	}
+
+	/**
+	 * Writes a null-terminated string or, with {@link CGNVersion#V3}, a string prefixed with its varint-encoded length.
+	 */
+	static void writeCGNString(OutputStream os, String string, CGNVersion version) throws IOException
+	{
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if(version == CGNVersion.V3)
+		{
+			CGNWriter.writeVarInt(os, bytes.length);
+			os.write(bytes);
+		}
+		else
+		{
+			os.write(bytes);
+			os.write(0x00);
+		}
+	}
+
 	public boolean canDrawBeClaimed()
 	{
 		return this.endReason == EndReason.UNTERMINATED && this.claimableDraw != EndReason.UNTERMINATED;
@@ -2503,6 +2959,89 @@ public class Game
 		return svg.append("</svg>").toString();
 	}
 
+	/**
+	 * Returns a copy of this game as it was after the given number of plies.
+	 * The position is restored from the nearest checkpoint before it, which are kept every {@link #CHECKPOINT_INTERVAL} plies as they're passed, so only the moves after the checkpoint are replayed.
+	 *
+	 * @param ply The number of plies from the starting position, up to the number of moves played.
+	 */
+	public Game positionAt(int ply) throws ChessException
+	{
+		if(this.start == null)
+		{
+			throw new ChessException("The game has not started yet");
+		}
+		final ArrayList<Move> moves;
+		synchronized(this.moves)
+		{
+			if(ply < 0 || ply > this.moves.size())
+			{
+				throw new IndexOutOfBoundsException("Ply " + ply + " of " + this.moves.size());
+			}
+			moves = new ArrayList<>(this.moves.subList(0, ply));
+		}
+		final Game game = this.start.copy();
+		game.start = this.start.copy();
+		game.tags.putAll(this.tags);
+		game.status = GameStatus.ONGOING;
+		game.exportable = this.exportable;
+		final TimeControl _timeControl = game.timeControl;
+		game.timeControl = TimeControl.UNLIMITED;
+		game.plyStart = 0;
+		final int from;
+		synchronized(this.checkpoints)
+		{
+			if(this.checkpoints.isEmpty())
+			{
+				game.repetitionPostitions.put(game.getPositionalFEN(true), 1);
+				this.checkpoints.add(new PositionSnapshot(game));
+			}
+			final int checkpoint = Math.min(ply / CHECKPOINT_INTERVAL, this.checkpoints.size() - 1);
+			this.checkpoints.get(checkpoint).restore(game);
+			from = checkpoint * CHECKPOINT_INTERVAL;
+		}
+		game.moves.addAll(moves.subList(0, from));
+		for(int i = from; i < ply; i++)
+		{
+			moves.get(i).commitTrusted(game);
+			if((i + 1) % CHECKPOINT_INTERVAL == 0)
+			{
+				synchronized(this.checkpoints)
+				{
+					if(this.checkpoints.size() == (i + 1) / CHECKPOINT_INTERVAL)
+					{
+						this.checkpoints.add(new PositionSnapshot(game));
+					}
+				}
+			}
+		}
+		game.timeControl = _timeControl;
+		if(ply == this.moves.size())
+		{
+			game.status = this.status;
+			game.endReason = this.endReason;
+			game.claimableDraw = this.claimableDraw;
+		}
+		else if(game.status == GameStatus.ONGOING)
+		{
+			game.recalculateEndReason(game.isCheck());
+		}
+		return game;
+	}
+
+	/**
+	 * @return A cursor over the positions of this game, from the starting position to the current one, which replays the moves in place on a single copy of this game.
+	 */
+	public PositionCursor positions() throws ChessException
+	{
+		final Move[] moves;
+		synchronized(this.moves)
+		{
+			moves = this.moves.toArray(new Move[this.moves.size()]);
+		}
+		return new PositionCursor(this.positionAt(0), moves);
+	}
+
 	public Game copy()
 	{
 		final Game game = new Game();
@@ -0,0 +1,389 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory store of many games, in which the first moves of all games are kept in a shared trie of packed moves, so common openings are only stored once.
+ * Every game points at the trie node of its last shared move and keeps its remaining moves, its tags and its result to itself.
+ * A move only becomes a trie node once a second game plays it after the same moves, because a node costs several times as much as a move kept by a single game.
+ * Annotations are not kept. This class is not synchronized.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GameCorpus
+{
+	/**
+	 * Past the first few moves, games rarely share a move with enough other games to make up for the size of its node.
+	 */
+	public static final int DEFAULT_TRIE_DEPTH = 10;
+	private static final short[] NO_MOVES = new short[0];
+	/**
+	 * The maximum number of plies of a game which are stored in the trie.
+	 */
+	public final int trieDepth;
+	private final HashMap<String, String> strings = new HashMap<>();
+	// The root is node 0.
+	private int[] parents = new int[1024];
+	private short[] moves = new short[1024];
+	private int nodes = 1;
+	// An open addressing table of the nodes reached by a packed move from another node and of the complements of games whose remaining moves start with a packed move which is not a node yet, where 0 is empty.
+	// Its keys are not stored but taken from the parent and move of a node or the leaf and first remaining move of a game.
+	private int[] children = new int[1024];
+	private int childCount = 0;
+	private int[] leaves = new int[1024];
+	private short[][] tails = new short[1024][];
+	private String[][] tags = new String[1024][];
+	private byte[] statuses = new byte[1024];
+	private int games = 0;
+
+	public GameCorpus()
+	{
+		this(DEFAULT_TRIE_DEPTH);
+	}
+
+	public GameCorpus(int trieDepth)
+	{
+		if(trieDepth < 0)
+		{
+			throw new IllegalArgumentException("The trie depth can't be negative");
+		}
+		this.trieDepth = trieDepth;
+		this.parents[0] = -1;
+	}
+
+	private static int hash(long key)
+	{
+		key ^= (key >>> 33);
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= (key >>> 33);
+		return (int) key;
+	}
+
+	private static long key(int node, short move)
+	{
+		return ((long) node << 16) | (move & 0xFFFF);
+	}
+
+	private long key(int child)
+	{
+		if(child > 0)
+		{
+			return GameCorpus.key(this.parents[child], this.moves[child]);
+		}
+		return GameCorpus.key(this.leaves[~child], this.tails[~child][0]);
+	}
+
+	/**
+	 * @return The slot of the given key in the child table or the empty slot it would be put in.
+	 */
+	private int slot(long key)
+	{
+		final int mask = this.children.length - 1;
+		int slot = GameCorpus.hash(key) & mask;
+		while(this.children[slot] != 0 && this.key(this.children[slot]) != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Creates the node reached by playing the given packed move from the given node, which has to be in the given slot of the child table.
+	 */
+	private int createChild(int slot, int parent, short move)
+	{
+		if(this.nodes == this.parents.length)
+		{
+			this.parents = Arrays.copyOf(this.parents, this.nodes * 2);
+			this.moves = Arrays.copyOf(this.moves, this.nodes * 2);
+		}
+		final int node = this.nodes++;
+		this.parents[node] = parent;
+		this.moves[node] = move;
+		this.children[slot] = node;
+		return node;
+	}
+
+	/**
+	 * Puts the given game into the child table under its leaf and the first of its remaining moves, so the next game playing that move can share it.
+	 */
+	private void offer(int game, int depth)
+	{
+		final short[] tail = this.tails[game];
+		if(tail.length != 0 && depth < this.trieDepth)
+		{
+			this.children[this.slot(GameCorpus.key(this.leaves[game], tail[0]))] = ~game;
+			if(++this.childCount * 4 > this.children.length * 3)
+			{
+				this.rehash();
+			}
+		}
+	}
+
+	private void rehash()
+	{
+		final int[] children = this.children;
+		this.children = new int[children.length * 2];
+		final int mask = this.children.length - 1;
+		for(int child : children)
+		{
+			if(child != 0)
+			{
+				int slot = GameCorpus.hash(this.key(child)) & mask;
+				while(this.children[slot] != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				this.children[slot] = child;
+			}
+		}
+	}
+
+	private String string(String string)
+	{
+		final String shared = this.strings.get(string);
+		if(shared != null)
+		{
+			return shared;
+		}
+		this.strings.put(string, string);
+		return string;
+	}
+
+	public GameCorpus add(Game game)
+	{
+		final ArrayList<String> tags = new ArrayList<>();
+		for(Map.Entry<String, String> tag : game.getExportableTags(CGNVersion.latest).entrySet())
+		{
+			final String key = tag.getKey();
+			final String value = tag.getValue();
+			if(key.equalsIgnoreCase("PlyCount") || key.equalsIgnoreCase("SetUp") || key.equalsIgnoreCase("Result") || value.equals("-") || value.equals("?") || value.equals("????.??.??") || value.equals("http://compactchess.cc") || (key.equalsIgnoreCase("Termination") && (value.equalsIgnoreCase("Normal") || value.equalsIgnoreCase("Unterminated"))))
+			{
+				continue;
+			}
+			tags.add(this.string(key));
+			tags.add(this.string(value));
+		}
+		final short[] moves;
+		synchronized(game.moves)
+		{
+			moves = new short[game.moves.size()];
+			for(int i = 0; i < moves.length; i++)
+			{
+				moves[i] = GameCorpus.pack(game.moves.get(i));
+			}
+		}
+		if(this.games == this.leaves.length)
+		{
+			this.leaves = Arrays.copyOf(this.leaves, this.games * 2);
+			this.tails = Arrays.copyOf(this.tails, this.games * 2);
+			this.tags = Arrays.copyOf(this.tags, this.games * 2);
+			this.statuses = Arrays.copyOf(this.statuses, this.games * 2);
+		}
+		int node = 0;
+		int depth = 0;
+		while(depth < moves.length && depth < this.trieDepth)
+		{
+			final int slot = this.slot(GameCorpus.key(node, moves[depth]));
+			int child = this.children[slot];
+			if(child == 0)
+			{
+				break;
+			}
+			if(child < 0)
+			{
+				// Another game has played this move from here, so it becomes a node and is taken out of that game's remaining moves.
+				final int other = ~child;
+				child = this.createChild(slot, node, moves[depth]);
+				final short[] tail = this.tails[other];
+				this.leaves[other] = child;
+				this.tails[other] = (tail.length == 1 ? NO_MOVES : Arrays.copyOfRange(tail, 1, tail.length));
+				this.offer(other, depth + 1);
+			}
+			node = child;
+			depth++;
+		}
+		this.leaves[this.games] = node;
+		this.tails[this.games] = (depth == moves.length ? NO_MOVES : Arrays.copyOfRange(moves, depth, moves.length));
+		this.tags[this.games] = tags.toArray(new String[tags.size()]);
+		this.statuses[this.games] = (byte) game.status.ordinal();
+		this.offer(this.games, depth);
+		this.games++;
+		return this;
+	}
+
+	private static short pack(Move move)
+	{
+		return (short) CGNMoveIndex.pack(move.fromSquare, move.toSquare, move.promoteTo);
+	}
+
+	public GameCorpus addAll(Iterable<Game> games)
+	{
+		for(Game game : games)
+		{
+			this.add(game);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the games of the given PGN stream, one at a time, without validating their moves.
+	 */
+	public GameCorpus addPGN(InputStream is) throws IOException, ChessException
+	{
+		final PGNReader reader = new PGNReader(is).setTrusted(true);
+		Game game;
+		while((game = reader.readGame()) != null)
+		{
+			this.add(game);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the games of the given CGN stream, one at a time, without validating their moves.
+	 */
+	public GameCorpus addCGN(InputStream is, CGNVersion version) throws IOException, ChessException
+	{
+		final CGNReader reader = new CGNReader(is, false, version).setTrusted(true);
+		Game game;
+		while((game = reader.readGame()) != null)
+		{
+			this.add(game);
+		}
+		return this;
+	}
+
+	public int size()
+	{
+		return this.games;
+	}
+
+	/**
+	 * @return The number of moves stored in the trie.
+	 */
+	public int getNodeCount()
+	{
+		return this.nodes - 1;
+	}
+
+	/**
+	 * Estimates the heap memory used to store the moves of all games, which are the trie, its child table and the moves of every game which are not in the trie, assuming 16 byte array headers and 4 byte references.
+	 * Tags and results are not included.
+	 */
+	public long getMoveBytes()
+	{
+		long bytes = 16 + 4L * this.parents.length + 16 + 2L * this.moves.length + 16 + 4L * this.children.length + 16 + 4L * this.leaves.length + 16 + 4L * this.tails.length;
+		for(int i = 0; i < this.games; i++)
+		{
+			if(this.tails[i] != NO_MOVES)
+			{
+				bytes += 16 + 2L * this.tails[i].length;
+			}
+		}
+		return bytes;
+	}
+
+	private void checkIndex(int game)
+	{
+		if(game < 0 || game >= this.games)
+		{
+			throw new IndexOutOfBoundsException("Game " + game + " of " + this.games);
+		}
+	}
+
+	public int getPlyCount(int game)
+	{
+		this.checkIndex(game);
+		int plies = this.tails[game].length;
+		for(int node = this.leaves[game]; node != 0; node = this.parents[node])
+		{
+			plies++;
+		}
+		return plies;
+	}
+
+	public String getTag(int game, String key)
+	{
+		this.checkIndex(game);
+		final String[] tags = this.tags[game];
+		for(int i = 0; i < tags.length; i += 2)
+		{
+			if(tags[i].equalsIgnoreCase(key))
+			{
+				return tags[i + 1];
+			}
+		}
+		return null;
+	}
+
+	public GameStatus getStatus(int game)
+	{
+		this.checkIndex(game);
+		return GameStatus.values()[this.statuses[game]];
+	}
+
+	/**
+	 * Rebuilds the given game by replaying its moves without validating them.
+	 */
+	public Game getGame(int game) throws ChessException
+	{
+		this.checkIndex(game);
+		final short[] tail = this.tails[game];
+		final short[] moves = new short[this.getPlyCount(game)];
+		int i = moves.length - tail.length;
+		System.arraycopy(tail, 0, moves, i, tail.length);
+		for(int node = this.leaves[game]; node != 0; node = this.parents[node])
+		{
+			moves[--i] = this.moves[node];
+		}
+		final Game result = new Game();
+		final String[] tags = this.tags[game];
+		for(int j = 0; j < tags.length; j += 2)
+		{
+			Game.processTag(result, tags[j], tags[j + 1]);
+		}
+		final TimeControl _timeControl = result.timeControl;
+		result.status = GameStatus.BUILDING;
+		result.timeControl = TimeControl.UNLIMITED;
+		result.start();
+		result.plyStart = 0;
+		final TrustedReplay replay = new TrustedReplay(result);
+		for(short move : moves)
+		{
+			replay.move(result.squares[(move >>> 9) & 0b111111], result.squares[(move >>> 3) & 0b111111], ((move & 0b111) == 0 ? null : PieceType.fromOrdinal((byte) (move & 0b111))));
+		}
+		replay.finish();
+		final GameStatus status = this.getStatus(game);
+		if(status != GameStatus.ONGOING && status != GameStatus.BUILDING)
+		{
+			result.status = status;
+		}
+		if(result.endReason == EndReason.UNTERMINATED && result.status != GameStatus.BUILDING && result.status != GameStatus.ONGOING)
+		{
+			result.endReason = (result.status == GameStatus.DRAW ? EndReason.DRAW_AGREEMENT : EndReason.RESIGNATION);
+		}
+		result.timeControl = _timeControl;
+		return result;
+	}
+
+	public ArrayList<Game> getGames(int from, int to) throws ChessException
+	{
+		if(from < 0 || to > this.games || from > to)
+		{
+			throw new IndexOutOfBoundsException("Games " + from + " to " + to + " of " + this.games);
+		}
+		final ArrayList<Game> games = new ArrayList<>(to - from);
+		for(int i = from; i < to; i++)
+		{
+			games.add(this.getGame(i));
+		}
+		return games;
+	}
+}
@@ -0,0 +1,211 @@
+package sh.hell.compactchess.game;
+
+/**
+ * Recognizes games which have been seen before by a canonical 128-bit hash of their starting position and their moves, so the same game is recognized no matter its annotations or, unless they're made part of the hash, its tags.
+ * The hashes are kept in a set outside of the heap, which takes about 21 bytes per game, so 100 million games take about 2 GB of memory but no heap.
+ * The set is mapped from a deleted temporary file, so it isn't limited by -XX:MaxDirectMemorySize, but it needs as much free space in the temporary directory as it's large.
+ * When it grows, the old set and the new one of twice the size are mapped at the same time, so memory and disk space peak at about 3 times the old set, which is why expectedGames should rather be too large than too small.
+ * Mappings are only released when they're garbage collected, so call {@link #close()} once the deduplicator isn't needed anymore and drop it.
+ * <p>
+ * As a {@link GamePipeline.Filter} it only lets through the first occurrence of every game, so unique games can be written while they're being imported:
+ * <pre>new GamePipeline(GamePipeline.Source.pgn(in, Language.ENGLISH, false, true)).filter(new GameDeduplicator(100_000_000)).run(GamePipeline.Sink.cgn(out, CGNVersion.latest));</pre>
+ * Two different games have the same hash with a probability of about 2<sup>-128</sup>, so it's never checked.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GameDeduplicator extends GamePipeline.Filter
+{
+	private static final long C1 = 0x87C37B91114253D5L;
+	private static final long C2 = 0x4CF5AD432745937FL;
+	private final OffHeapHashSet set;
+	private String[] keyTags = new String[0];
+	private long duplicates = 0;
+
+	public GameDeduplicator()
+	{
+		this(1 << 20);
+	}
+
+	/**
+	 * @param expectedGames The number of unique games the set is sized for. It grows beyond that, but growing needs the old and the new set mapped at the same time.
+	 */
+	public GameDeduplicator(long expectedGames)
+	{
+		this.set = new OffHeapHashSet(expectedGames);
+	}
+
+	/**
+	 * @param keyTags Tags which are part of the hash, like White, Black and Date, so games with the same moves but e.g. different players are kept apart. A missing tag is hashed like an empty one.
+	 */
+	public GameDeduplicator setKeyTags(String... keyTags)
+	{
+		this.keyTags = keyTags.clone();
+		return this;
+	}
+
+	/**
+	 * @return The canonical hash of the given game, the higher 64 bits first.
+	 */
+	public static long[] hash(Game game, String... keyTags)
+	{
+		final Game start = (game.start == null ? game : game.start);
+		final long[] hash = new long[]{0x436F6D7061637443L, 0x68657373486173L};
+		GameDeduplicator.mix(hash, start.getHash());
+		GameDeduplicator.mix(hash, ((long) start.variant.ordinal() << 32) | start.plyCount);
+		int length = 2;
+		synchronized(game.moves)
+		{
+			// Every move takes 15 bits, so 4 of them fit into a word.
+			long word = 0;
+			int packed = 0;
+			for(Move move : game.moves)
+			{
+				word = (word << 16) | CGNMoveIndex.pack(move.fromSquare, move.toSquare, move.promoteTo);
+				if(++packed == 4)
+				{
+					GameDeduplicator.mix(hash, word);
+					length++;
+					word = 0;
+					packed = 0;
+				}
+			}
+			if(packed > 0)
+			{
+				GameDeduplicator.mix(hash, word);
+				length++;
+			}
+			GameDeduplicator.mix(hash, game.moves.size());
+		}
+		for(String tag : keyTags)
+		{
+			final String value = game.tags.get(tag);
+			length += GameDeduplicator.mix(hash, tag);
+			length += GameDeduplicator.mix(hash, (value == null ? "" : value));
+		}
+		hash[0] ^= length;
+		hash[1] ^= length;
+		hash[0] += hash[1];
+		hash[1] += hash[0];
+		hash[0] = GameDeduplicator.finish(hash[0]);
+		hash[1] = GameDeduplicator.finish(hash[1]);
+		hash[0] += hash[1];
+		hash[1] += hash[0];
+		return hash;
+	}
+
+	private static void mix(long[] hash, long word)
+	{
+		hash[0] ^= Long.rotateLeft(word * C1, 31) * C2;
+		hash[0] = Long.rotateLeft(hash[0], 27) + hash[1];
+		hash[0] = hash[0] * 5 + 0x52DCE729;
+		hash[1] ^= Long.rotateLeft(word * C2, 33) * C1;
+		hash[1] = Long.rotateLeft(hash[1], 31) + hash[0];
+		hash[1] = hash[1] * 5 + 0x38495AB5;
+	}
+
+	/**
+	 * Mixes the characters of the given string, 4 at a time, followed by its length, so consecutive strings can't run into each other.
+	 *
+	 * @return The number of words mixed.
+	 */
+	private static int mix(long[] hash, String string)
+	{
+		int words = 1;
+		for(int i = 0; i < string.length(); i += 4)
+		{
+			long word = 0;
+			for(int j = i; j < i + 4 && j < string.length(); j++)
+			{
+				word = (word << 16) | string.charAt(j);
+			}
+			GameDeduplicator.mix(hash, word);
+			words++;
+		}
+		GameDeduplicator.mix(hash, string.length());
+		return words;
+	}
+
+	private static long finish(long hash)
+	{
+		hash ^= (hash >>> 33);
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= (hash >>> 33);
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+
+	/**
+	 * @return True if the given game hasn't been seen before, in which case it is remembered.
+	 */
+	public boolean add(Game game)
+	{
+		final long[] hash = GameDeduplicator.hash(game, this.keyTags);
+		synchronized(this)
+		{
+			if(this.set.add(hash[0], hash[1]))
+			{
+				return true;
+			}
+			this.duplicates++;
+			return false;
+		}
+	}
+
+	/**
+	 * Same as {@link #add(Game)}.
+	 */
+	@Override
+	public boolean accept(Game game)
+	{
+		return this.add(game);
+	}
+
+	/**
+	 * Every thread gets its own filter adding to this deduplicator, so the pipeline closing its workers doesn't close the set, which stays usable after the pipeline has finished.
+	 */
+	@Override
+	public GamePipeline.Stage worker()
+	{
+		return new GamePipeline.Filter()
+		{
+			@Override
+			public boolean accept(Game game)
+			{
+				return GameDeduplicator.this.add(game);
+			}
+		};
+	}
+
+	/**
+	 * Drops the set of hashes, so its mappings can be released. The counts stay readable, but no more games can be added.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		this.set.close();
+	}
+
+	/**
+	 * @return The number of unique games seen so far.
+	 */
+	public synchronized long getUnique()
+	{
+		return this.set.size();
+	}
+
+	/**
+	 * @return The number of games which were dropped because they had been seen before.
+	 */
+	public synchronized long getDuplicates()
+	{
+		return this.duplicates;
+	}
+
+	/**
+	 * @return The number of bytes the set of hashes currently takes outside of the heap.
+	 */
+	public synchronized long getMemory()
+	{
+		return this.set.getMemory();
+	}
+}
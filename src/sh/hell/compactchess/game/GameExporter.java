@@ -0,0 +1,173 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Exports collections of games to PGN or CGN by rendering chunks of games on a worker pool and writing them to a single stream in their original order.
+ * At most a bounded amount of rendered chunks is buffered, so a slow stream holds back the workers instead of filling the memory.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GameExporter
+{
+	public static final int DEFAULT_CHUNK_SIZE = 64;
+	private AlgebraicNotationVariation variation = AlgebraicNotationVariation.SAN;
+	private Language language = Language.ENGLISH;
+	private CGNVersion cgnVersion = null;
+	private boolean noTags = false;
+	private boolean noAnnotations = false;
+	private boolean noAnnotationTags = false;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int maxPending = 2 * Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+
+	/**
+	 * Exports to PGN using the given notation. This is the default, using SAN in English.
+	 */
+	public GameExporter setPGN(AlgebraicNotationVariation variation, Language language)
+	{
+		this.variation = variation;
+		this.language = language;
+		this.cgnVersion = null;
+		return this;
+	}
+
+	/**
+	 * Exports to CGN of the given version. With {@link CGNVersion#V3}, every chunk becomes a block.
+	 */
+	public GameExporter setCGN(CGNVersion version)
+	{
+		this.cgnVersion = version;
+		return this;
+	}
+
+	public GameExporter setOmissions(boolean noTags, boolean noAnnotations, boolean noAnnotationTags)
+	{
+		this.noTags = noTags;
+		this.noAnnotations = noAnnotations;
+		this.noAnnotationTags = noAnnotationTags;
+		return this;
+	}
+
+	/**
+	 * @param chunkSize The amount of games which are rendered by a single task.
+	 */
+	public GameExporter setChunkSize(int chunkSize)
+	{
+		if(chunkSize < 1)
+		{
+			throw new IllegalArgumentException("The chunk size has to be at least 1");
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * @param maxPending The amount of rendered chunks which may wait to be written, after which no more chunks are handed to the workers.
+	 */
+	public GameExporter setMaxPending(int maxPending)
+	{
+		if(maxPending < 1)
+		{
+			throw new IllegalArgumentException("At least 1 chunk has to be allowed to be pending");
+		}
+		this.maxPending = maxPending;
+		return this;
+	}
+
+	/**
+	 * @param executor The executor to render games on or null to use a new {@link ForkJoinPool} for every export.
+	 */
+	public GameExporter setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Renders the given games the way {@link #export(Iterable, OutputStream)} would, on the calling thread.
+	 */
+	byte[] render(Iterable<Game> games) throws IOException, ChessException
+	{
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		if(this.cgnVersion == null)
+		{
+			new PGNWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), this.variation, this.language, this.noTags, this.noAnnotations, this.noAnnotationTags).write(games).flush();
+		}
+		else
+		{
+			final CGNWriter writer = new CGNWriter(os, this.cgnVersion, this.noTags, this.noAnnotations, this.noAnnotationTags);
+			writer.setBlockSize(this.chunkSize).write(games).flush();
+		}
+		return os.toByteArray();
+	}
+
+	/**
+	 * Writes the given games to the given stream in their order and flushes it, but doesn't close it.
+	 */
+	public void export(Iterable<Game> games, OutputStream os) throws IOException, ChessException
+	{
+		final ExecutorService executor = (this.executor == null ? new ForkJoinPool() : this.executor);
+		final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+		try
+		{
+			ArrayList<Game> chunk = new ArrayList<>(this.chunkSize);
+			for(Game game : games)
+			{
+				chunk.add(game);
+				if(chunk.size() == this.chunkSize)
+				{
+					pending.add(this.submit(executor, chunk));
+					chunk = new ArrayList<>(this.chunkSize);
+					while(!pending.isEmpty() && (pending.size() > this.maxPending || pending.peek().isDone()))
+					{
+						os.write(ParallelCGNParser.get(pending.poll()));
+					}
+				}
+			}
+			if(!chunk.isEmpty())
+			{
+				pending.add(this.submit(executor, chunk));
+			}
+			while(!pending.isEmpty())
+			{
+				os.write(ParallelCGNParser.get(pending.poll()));
+			}
+			os.flush();
+		}
+		finally
+		{
+			for(Future<byte[]> future : pending)
+			{
+				future.cancel(false);
+			}
+			if(this.executor == null)
+			{
+				executor.shutdown();
+			}
+		}
+	}
+
+	private Future<byte[]> submit(ExecutorService executor, final ArrayList<Game> chunk)
+	{
+		return executor.submit(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws IOException, ChessException
+			{
+				return GameExporter.this.render(chunk);
+			}
+		});
+	}
+}
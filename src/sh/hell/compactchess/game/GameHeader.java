@@ -0,0 +1,92 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+
+/**
+ * The tags and result of a game, read without replaying its moves.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GameHeader
+{
+	public final TreeMap<String, String> tags = new TreeMap<>(new PGNTagComparator());
+	public GameStatus status = GameStatus.ONGOING;
+	/**
+	 * The number of plies in the game or -1 if it is unknown, which is the case for PGN.
+	 */
+	public int plyCount = -1;
+
+	GameHeader()
+	{
+	}
+
+	GameHeader(Game game)
+	{
+		this.tags.putAll(game.tags);
+		this.status = game.status;
+		this.plyCount = game.moves.size();
+	}
+
+	static GameHeader fromPGN(List<String> lines) throws ChessException
+	{
+		final GameHeader header = new GameHeader();
+		for(String line : lines)
+		{
+			final Matcher matcher = Game.pgnTagPattern.matcher(line);
+			if(matcher.matches())
+			{
+				header.tags.put(matcher.group(1), matcher.group(2));
+			}
+		}
+		final String result = header.tags.get("Result");
+		if(result != null)
+		{
+			// Like the PGN parser, which ignores the Result tag, an unknown result doesn't make the game invalid.
+			header.status = Game.resultStatus(result, GameStatus.ONGOING);
+		}
+		return header;
+	}
+
+	public String getTag(String key)
+	{
+		return this.tags.get(key);
+	}
+
+	public Variant getVariant()
+	{
+		final String variant = this.tags.get("Variant");
+		if(variant == null)
+		{
+			return Variant.STANDARD;
+		}
+		return Variant.fromName(variant);
+	}
+
+	/**
+	 * @return The Elo of the given player or -1 if it is unknown.
+	 */
+	public int getElo(Color color)
+	{
+		final String elo = this.tags.get(color == Color.WHITE ? "WhiteElo" : "BlackElo");
+		if(elo != null)
+		{
+			try
+			{
+				return Integer.parseInt(elo.trim());
+			}
+			catch(NumberFormatException ignored)
+			{
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "{GameHeader " + tags + " " + status + "}";
+	}
+}
@@ -0,0 +1,306 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads all PGN and CGN files in a directory tree, several files at a time on a bounded pool, and hands their games to a single {@link Consumer} on the calling thread.
+ * Files are recognized by their extension, .pgn or .cgn, and read one game at a time through a {@link FileChannel}, so a file never has to fit into memory.
+ * A file which can't be read or contains an invalid game is reported and skipped from that game on, without affecting the other files.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GameIngester
+{
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int queueSize = 1024;
+	private Language language = Language.ENGLISH;
+	private CGNVersion cgnVersion = CGNVersion.latest;
+	private boolean dontCalculate = false;
+	private boolean trusted = false;
+	private int files;
+	private int failedFiles;
+	private long games;
+
+	/**
+	 * @param threads The number of files which are read at the same time.
+	 */
+	public GameIngester setThreads(int threads)
+	{
+		if(threads < 1)
+		{
+			throw new IllegalArgumentException("At least 1 thread is needed");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * @param queueSize The number of games which may wait for the consumer, after which the readers wait for it.
+	 */
+	public GameIngester setQueueSize(int queueSize)
+	{
+		if(queueSize < 1)
+		{
+			throw new IllegalArgumentException("At least 1 game has to be allowed to wait");
+		}
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	public GameIngester setLanguage(Language language)
+	{
+		this.language = language;
+		return this;
+	}
+
+	/**
+	 * @param cgnVersion The version CGN files are read as.
+	 */
+	public GameIngester setCGNVersion(CGNVersion cgnVersion)
+	{
+		this.cgnVersion = cgnVersion;
+		return this;
+	}
+
+	public GameIngester setDontCalculate(boolean dontCalculate)
+	{
+		this.dontCalculate = dontCalculate;
+		return this;
+	}
+
+	/**
+	 * @param trusted Set to true to replay moves without validating them.
+	 * @see Game#fromPGN(String, Language, boolean, boolean)
+	 */
+	public GameIngester setTrusted(boolean trusted)
+	{
+		this.trusted = trusted;
+		return this;
+	}
+
+	/**
+	 * @return The PGN and CGN files in the given directory tree in lexicographic order.
+	 */
+	public static ArrayList<Path> findFiles(Path directory) throws IOException
+	{
+		final ArrayList<Path> files = new ArrayList<>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+			{
+				if(attributes.isRegularFile() && GameIngester.isSupported(file))
+				{
+					files.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(files);
+		return files;
+	}
+
+	static boolean isSupported(Path file)
+	{
+		final String name = file.getFileName().toString().toLowerCase();
+		return name.endsWith(".pgn") || name.endsWith(".cgn");
+	}
+
+	/**
+	 * Reads all PGN and CGN files in the given directory tree.
+	 */
+	public GameIngester ingest(Path directory, Consumer consumer) throws IOException, ChessException
+	{
+		return this.ingest(GameIngester.findFiles(directory), consumer);
+	}
+
+	/**
+	 * Reads the given files, each as PGN or CGN depending on its extension.
+	 * The games of a file are passed to the consumer in their order, but games of different files are interleaved.
+	 * Exceptions thrown by the consumer stop the whole run.
+	 */
+	public GameIngester ingest(ArrayList<Path> files, Consumer consumer) throws IOException, ChessException
+	{
+		this.files = files.size();
+		this.failedFiles = 0;
+		this.games = 0;
+		final ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(this.queueSize);
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, Math.max(files.size(), 1)));
+		final ArrayList<Future<Void>> futures = new ArrayList<>(files.size());
+		try
+		{
+			for(final Path file : files)
+			{
+				futures.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws InterruptedException
+					{
+						GameIngester.this.read(file, queue);
+						return null;
+					}
+				}));
+			}
+			int done = 0;
+			while(done < files.size())
+			{
+				final Event event;
+				try
+				{
+					event = queue.take();
+				}
+				catch(InterruptedException e)
+				{
+					throw new IOException("Interrupted while waiting for games");
+				}
+				if(event.game != null)
+				{
+					this.games++;
+					consumer.game(event.file, event.game);
+				}
+				else
+				{
+					done++;
+					if(event.error != null)
+					{
+						this.failedFiles++;
+					}
+					consumer.fileDone(event.file, event.games, event.error, done, files.size());
+				}
+			}
+		}
+		finally
+		{
+			for(Future<Void> future : futures)
+			{
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+		return this;
+	}
+
+	private void read(Path file, ArrayBlockingQueue<Event> queue) throws InterruptedException
+	{
+		int games = 0;
+		Throwable error = null;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			final InputStream is = Channels.newInputStream(channel);
+			if(file.getFileName().toString().toLowerCase().endsWith(".pgn"))
+			{
+				final PGNReader reader = new PGNReader(is, this.language, this.dontCalculate).setTrusted(this.trusted);
+				Game game;
+				while((game = reader.readGame()) != null)
+				{
+					queue.put(new Event(file, game));
+					games++;
+				}
+			}
+			else
+			{
+				final CGNReader reader = new CGNReader(is, this.dontCalculate, this.cgnVersion).setTrusted(this.trusted);
+				Game game;
+				while((game = reader.readGame()) != null)
+				{
+					queue.put(new Event(file, game));
+					games++;
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
+		{
+			error = e;
+		}
+		queue.put(new Event(file, games, error));
+	}
+
+	/**
+	 * @return The number of files of the last run.
+	 */
+	public int getFiles()
+	{
+		return this.files;
+	}
+
+	/**
+	 * @return The number of files of the last run which couldn't be read completely.
+	 */
+	public int getFailedFiles()
+	{
+		return this.failedFiles;
+	}
+
+	/**
+	 * @return The number of games of the last run.
+	 */
+	public long getGames()
+	{
+		return this.games;
+	}
+
+	/**
+	 * Receives the games and the progress of {@link GameIngester#ingest(Path, Consumer)}, always on the thread which called it.
+	 */
+	public static abstract class Consumer
+	{
+		public abstract void game(Path file, Game game) throws IOException, ChessException;
+
+		/**
+		 * Called once a file has been read completely or has failed.
+		 *
+		 * @param games The number of games read from the file, which have all been passed to {@link #game(Path, Game)}.
+		 * @param error Why the file couldn't be read completely or null.
+		 * @param filesDone The number of files done so far, including this one.
+		 * @param files The number of files of this run.
+		 */
+		public void fileDone(Path file, int games, Throwable error, int filesDone, int files) throws IOException, ChessException
+		{
+		}
+	}
+
+	private static final class Event
+	{
+		final Path file;
+		final Game game;
+		final int games;
+		final Throwable error;
+
+		Event(Path file, Game game)
+		{
+			this.file = file;
+			this.game = game;
+			this.games = 0;
+			this.error = null;
+		}
+
+		Event(Path file, int games, Throwable error)
+		{
+			this.file = file;
+			this.game = null;
+			this.games = games;
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,581 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Passes games from a {@link Source} through any number of {@link Stage}s into a {@link Sink}, every stage on its own threads.
+ * The stages are connected by bounded buffers, so a slow stage, like engine analysis, makes the stages before it wait instead of piling up games in memory.
+ * The sink runs on the thread calling {@link #run(Sink)}. If a stage has more than one thread, games may leave it in a different order than they entered it.
+ * <p>
+ * A pipeline can only be run once.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GamePipeline
+{
+	private static final Object END = new Object();
+	private final Source source;
+	private final ArrayList<Stage> stages = new ArrayList<>();
+	private final ArrayList<Integer> parallelisms = new ArrayList<>();
+	private int bufferSize = 256;
+	private boolean ran = false;
+
+	public GamePipeline(Source source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * @param bufferSize The number of games which may wait in front of every stage and the sink, after which the stage before it waits.
+	 */
+	public GamePipeline setBufferSize(int bufferSize)
+	{
+		if(bufferSize < 1)
+		{
+			throw new IllegalArgumentException("At least 1 game has to be allowed to wait");
+		}
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	/**
+	 * Adds a stage which runs on a single thread.
+	 */
+	public GamePipeline then(Stage stage)
+	{
+		return this.then(stage, 1);
+	}
+
+	/**
+	 * Adds a stage.
+	 *
+	 * @param parallelism The number of threads of this stage, each getting its own {@link Stage#worker()}.
+	 */
+	public GamePipeline then(Stage stage, int parallelism)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("At least 1 thread is needed");
+		}
+		this.stages.add(stage);
+		this.parallelisms.add(parallelism);
+		return this;
+	}
+
+	/**
+	 * Adds a stage which only lets the games through that the filter accepts.
+	 */
+	public GamePipeline filter(Filter filter)
+	{
+		return this.then(filter, 1);
+	}
+
+	/**
+	 * Runs the pipeline until the source is exhausted and every game has been written to the sink, which is closed afterwards.
+	 * If the source, a stage or the sink fails, all threads are stopped and the first exception is thrown.
+	 */
+	public void run(Sink sink) throws IOException, ChessException
+	{
+		if(this.ran)
+		{
+			throw new IllegalStateException("This pipeline has already been run");
+		}
+		this.ran = true;
+		int threads = 1;
+		for(int parallelism : this.parallelisms)
+		{
+			threads += parallelism;
+		}
+		final ArrayList<ArrayBlockingQueue<Object>> queues = new ArrayList<>(this.stages.size() + 1);
+		for(int i = 0; i <= this.stages.size(); i++)
+		{
+			queues.add(new ArrayBlockingQueue<>(this.bufferSize));
+		}
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			executor.submit(new Task(failure)
+			{
+				@Override
+				void run() throws Exception
+				{
+					final ArrayBlockingQueue<Object> out = queues.get(0);
+					try
+					{
+						Game game;
+						while((game = GamePipeline.this.source.next()) != null)
+						{
+							out.put(game);
+						}
+					}
+					finally
+					{
+						GamePipeline.this.source.close();
+					}
+					out.put(END);
+				}
+			});
+			for(int i = 0; i < this.stages.size(); i++)
+			{
+				final ArrayBlockingQueue<Object> in = queues.get(i);
+				final ArrayBlockingQueue<Object> out = queues.get(i + 1);
+				final AtomicInteger running = new AtomicInteger(this.parallelisms.get(i));
+				for(int j = this.parallelisms.get(i); j > 0; j--)
+				{
+					final Stage stage = this.stages.get(i).worker();
+					executor.submit(new Task(failure)
+					{
+						@Override
+						void run() throws Exception
+						{
+							try
+							{
+								Object item;
+								while((item = in.take()) != END)
+								{
+									final Game game = stage.process((Game) item);
+									if(game != null)
+									{
+										out.put(game);
+									}
+								}
+							}
+							finally
+							{
+								stage.close();
+							}
+							// Every worker of this stage has to see the end, but the next stage only once.
+							if(running.decrementAndGet() == 0)
+							{
+								out.put(END);
+							}
+							else
+							{
+								in.put(END);
+							}
+						}
+					});
+				}
+			}
+			final ArrayBlockingQueue<Object> in = queues.get(this.stages.size());
+			try
+			{
+				while(true)
+				{
+					final Object item;
+					try
+					{
+						item = in.poll(100, TimeUnit.MILLISECONDS);
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new IOException(e);
+					}
+					if(failure.get() != null)
+					{
+						break;
+					}
+					if(item == END)
+					{
+						break;
+					}
+					if(item != null)
+					{
+						sink.write((Game) item);
+					}
+				}
+			}
+			finally
+			{
+				sink.close();
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		final Throwable cause = failure.get();
+		if(cause instanceof ChessException)
+		{
+			throw (ChessException) cause;
+		}
+		if(cause instanceof IOException)
+		{
+			throw (IOException) cause;
+		}
+		if(cause instanceof RuntimeException)
+		{
+			throw (RuntimeException) cause;
+		}
+		if(cause != null)
+		{
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Writes a game as a single line of JSON with its tags, as they would be exported to PGN, and its moves in UCI notation.
+	 */
+	static void writeJSON(Game game, Appendable out) throws IOException
+	{
+		out.append("{\"tags\":{");
+		boolean first = true;
+		for(Map.Entry<String, String> tag : game.getExportableTags(null).entrySet())
+		{
+			if(first)
+			{
+				first = false;
+			}
+			else
+			{
+				out.append(',');
+			}
+			GamePipeline.writeJSONString(tag.getKey(), out);
+			out.append(':');
+			GamePipeline.writeJSONString(tag.getValue(), out);
+		}
+		out.append("},\"moves\":[");
+		synchronized(game.moves)
+		{
+			for(int i = 0; i < game.moves.size(); i++)
+			{
+				if(i > 0)
+				{
+					out.append(',');
+				}
+				out.append('"').append(game.moves.get(i).toUCI()).append('"');
+			}
+		}
+		out.append("]}\n");
+	}
+
+	private static void writeJSONString(String string, Appendable out) throws IOException
+	{
+		out.append('"');
+		for(int i = 0; i < string.length(); i++)
+		{
+			final char c = string.charAt(i);
+			if(c == '"' || c == '\\')
+			{
+				out.append('\\').append(c);
+			}
+			else if(c < 0x20)
+			{
+				out.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Produces the games of a pipeline, on a thread of its own.
+	 */
+	public static abstract class Source implements Closeable
+	{
+		/**
+		 * Reads the games of a PGN stream one at a time.
+		 */
+		public static Source pgn(InputStream is, Language language, boolean dontCalculate, boolean trusted)
+		{
+			final PGNReader reader = new PGNReader(is, language, dontCalculate).setTrusted(trusted);
+			return new Source()
+			{
+				@Override
+				public Game next() throws IOException, ChessException
+				{
+					return reader.readGame();
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					reader.close();
+				}
+			};
+		}
+
+		/**
+		 * Reads the games of a CGN stream one at a time.
+		 */
+		public static Source cgn(InputStream is, CGNVersion version, boolean dontCalculate, boolean trusted)
+		{
+			final CGNReader reader = new CGNReader(is, dontCalculate, version).setTrusted(trusted);
+			return new Source()
+			{
+				@Override
+				public Game next() throws IOException, ChessException
+				{
+					return reader.readGame();
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					reader.close();
+				}
+			};
+		}
+
+		public static Source of(Iterable<Game> games)
+		{
+			final Iterator<Game> iterator = games.iterator();
+			return new Source()
+			{
+				@Override
+				public Game next()
+				{
+					return (iterator.hasNext() ? iterator.next() : null);
+				}
+			};
+		}
+
+		/**
+		 * @return The next game or null if there are no more games.
+		 */
+		public abstract Game next() throws IOException, ChessException;
+
+		@Override
+		public void close() throws IOException
+		{
+		}
+	}
+
+	/**
+	 * Transforms the games passing through a pipeline.
+	 */
+	public static abstract class Stage
+	{
+		/**
+		 * @return The game to pass on, which doesn't need to be the given one, or null to drop it.
+		 */
+		public abstract Game process(Game game) throws IOException, ChessException, InterruptedException;
+
+		/**
+		 * Called once for every thread of this stage before the pipeline starts.
+		 * Stages which are not thread-safe or need resources per thread, like an engine, return a new instance; all others can return themselves, which they do by default.
+		 */
+		public Stage worker() throws IOException, ChessException
+		{
+			return this;
+		}
+
+		/**
+		 * Called once on every {@link #worker()} after its thread has finished, even if it failed.
+		 */
+		public void close() throws IOException
+		{
+		}
+	}
+
+	/**
+	 * A stage which drops the games it doesn't accept.
+	 */
+	public static abstract class Filter extends Stage
+	{
+		public abstract boolean accept(Game game) throws IOException, ChessException;
+
+		@Override
+		public Game process(Game game) throws IOException, ChessException
+		{
+			return (this.accept(game) ? game : null);
+		}
+	}
+
+	/**
+	 * A stage which passes all games on as they are and counts them, their plies and their results. It can be read while the pipeline is running.
+	 */
+	public static class Stats extends Stage
+	{
+		private final AtomicLong games = new AtomicLong();
+		private final AtomicLong plies = new AtomicLong();
+		private final AtomicLong[] statuses = new AtomicLong[GameStatus.values().length];
+
+		public Stats()
+		{
+			for(int i = 0; i < this.statuses.length; i++)
+			{
+				this.statuses[i] = new AtomicLong();
+			}
+		}
+
+		@Override
+		public Game process(Game game)
+		{
+			this.games.incrementAndGet();
+			this.plies.addAndGet(game.moves.size());
+			this.statuses[game.status.ordinal()].incrementAndGet();
+			return game;
+		}
+
+		public long getGames()
+		{
+			return this.games.get();
+		}
+
+		public long getPlies()
+		{
+			return this.plies.get();
+		}
+
+		/**
+		 * @return The number of games with the given status.
+		 */
+		public long getGames(GameStatus status)
+		{
+			return this.statuses[status.ordinal()].get();
+		}
+	}
+
+	/**
+	 * Consumes the games at the end of a pipeline, on the thread which runs it.
+	 */
+	public static abstract class Sink implements Closeable
+	{
+		public static Sink cgn(OutputStream os, CGNVersion version)
+		{
+			final CGNWriter writer = new CGNWriter(os, version);
+			return new Sink()
+			{
+				@Override
+				public void write(Game game) throws IOException, ChessException
+				{
+					writer.write(game);
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					writer.close();
+				}
+			};
+		}
+
+		public static Sink pgn(OutputStream os)
+		{
+			return Sink.pgn(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8)));
+		}
+
+		public static Sink pgn(Writer writer)
+		{
+			final PGNWriter pgnWriter = new PGNWriter(writer);
+			return new Sink()
+			{
+				@Override
+				public void write(Game game) throws IOException, ChessException
+				{
+					pgnWriter.write(game);
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					pgnWriter.close();
+				}
+			};
+		}
+
+		/**
+		 * Writes every game as a line of JSON with its tags and its moves in UCI notation.
+		 */
+		public static Sink ndjson(OutputStream os)
+		{
+			return Sink.ndjson(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8)));
+		}
+
+		public static Sink ndjson(final Writer writer)
+		{
+			return new Sink()
+			{
+				@Override
+				public void write(Game game) throws IOException
+				{
+					GamePipeline.writeJSON(game, writer);
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					writer.close();
+				}
+			};
+		}
+
+		/**
+		 * Adds every game to the given list.
+		 */
+		public static Sink to(final ArrayList<Game> games)
+		{
+			return new Sink()
+			{
+				@Override
+				public void write(Game game)
+				{
+					games.add(game);
+				}
+			};
+		}
+
+		public abstract void write(Game game) throws IOException, ChessException;
+
+		@Override
+		public void close() throws IOException
+		{
+		}
+	}
+
+	private static abstract class Task implements Callable<Void>
+	{
+		private final AtomicReference<Throwable> failure;
+
+		Task(AtomicReference<Throwable> failure)
+		{
+			this.failure = failure;
+		}
+
+		abstract void run() throws Exception;
+
+		@Override
+		public Void call()
+		{
+			try
+			{
+				this.run();
+			}
+			catch(InterruptedException e)
+			{
+				// Interrupted because the pipeline is shutting down.
+			}
+			catch(Throwable e)
+			{
+				this.failure.compareAndSet(null, e);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Checks every move of every game in a PGN or CGN stream, chunks of games at a time on a worker pool, and reports every game in its original order, including the first illegal move of the invalid ones.
+ * Games are replayed without validation and then checked ply by ply on a single copy of the position, asking {@link Move#getIllegalReason()} only about moves which fail the quick checks or which need its special cases, like castling and promotions.
+ * The quick checks test whether the piece can reach the target square with offsets and rays, and whether the mover's king is attacked by looking outward from it, so they don't allocate anything.
+ * An invalid game doesn't stop the validation of the following ones.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class GameValidator
+{
+	public static final int DEFAULT_CHUNK_SIZE = 64;
+	private Language language = Language.ENGLISH;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int maxPending = 2 * Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+	private long games;
+	private long invalidGames;
+	private long plies;
+
+	public GameValidator setLanguage(Language language)
+	{
+		this.language = language;
+		return this;
+	}
+
+	/**
+	 * @param chunkSize The amount of games which are validated by a single task.
+	 */
+	public GameValidator setChunkSize(int chunkSize)
+	{
+		if(chunkSize < 1)
+		{
+			throw new IllegalArgumentException("The chunk size has to be at least 1");
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * @param maxPending The amount of validated chunks which may wait to be reported, after which no more chunks are handed to the workers.
+	 */
+	public GameValidator setMaxPending(int maxPending)
+	{
+		if(maxPending < 1)
+		{
+			throw new IllegalArgumentException("At least 1 chunk has to be allowed to be pending");
+		}
+		this.maxPending = maxPending;
+		return this;
+	}
+
+	/**
+	 * @param executor The executor to validate games on or null to use a new {@link ForkJoinPool} for every validation.
+	 */
+	public GameValidator setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Checks the moves of the given game, which may have been replayed without validation.
+	 */
+	public static Report validate(Game game) throws ChessException
+	{
+		return GameValidator.validate(0, new GameHeader(game), game);
+	}
+
+	/**
+	 * Replays the given game without validation and checks its moves. A move which can't be replayed at all is reported like an illegal one.
+	 */
+	public static Report validate(LazyGame lazyGame) throws IOException
+	{
+		return GameValidator.validate(0, lazyGame);
+	}
+
+	private static Report validate(long index, LazyGame lazyGame) throws IOException
+	{
+		final Game partial = new Game();
+		final Game game;
+		try
+		{
+			game = lazyGame.replayTrusted(partial);
+		}
+		catch(ChessException | RuntimeException e)
+		{
+			// Only PGN is replayed into the given game; for CGN, it's unknown how far the replay got.
+			final int plies = partial.moves.size();
+			return new Report(index, lazyGame.header, plies, (partial.status == GameStatus.BUILDING ? -1 : plies + 1), null, GameValidator.reason(e));
+		}
+		try
+		{
+			return GameValidator.validate(index, lazyGame.header, game);
+		}
+		catch(ChessException | RuntimeException e)
+		{
+			return new Report(index, lazyGame.header, 0, -1, null, GameValidator.reason(e));
+		}
+	}
+
+	/**
+	 * @return The message of a {@link ChessException} or, as a malformed game can also make the replay fail unexpectedly, the type and message of any other exception.
+	 */
+	private static String reason(Exception e)
+	{
+		return (e instanceof ChessException ? e.getMessage() : e.toString());
+	}
+
+	private static Report validate(long index, GameHeader header, Game game) throws ChessException
+	{
+		final Move[] moves;
+		synchronized(game.moves)
+		{
+			moves = game.moves.toArray(new Move[game.moves.size()]);
+		}
+		if(moves.length == 0)
+		{
+			return new Report(index, header, 0, 0, null, null);
+		}
+		final Game position = game.positionAt(0);
+		for(int i = 0; i < moves.length; i++)
+		{
+			final Move move = moves[i];
+			String reason = GameValidator.getIllegalReason(position, move);
+			if(reason == null)
+			{
+				move.commitBoard(position);
+				// The side which has just moved may not be in check.
+				if(position.isCheck(position.toMove.opposite()))
+				{
+					reason = move.getIllegalReason();
+					if(reason == null)
+					{
+						reason = "You can't play a move which would leave you in check";
+					}
+				}
+			}
+			if(reason != null)
+			{
+				return new Report(index, header, i, i + 1, move.toUCI(), reason);
+			}
+		}
+		return new Report(index, header, moves.length, 0, null, null);
+	}
+
+	/**
+	 * Checks the given move in the given position, except whether it leaves the king in check.
+	 */
+	private static String getIllegalReason(Game game, Move move) throws ChessException
+	{
+		final Square fromSquare = game.square(move.fromSquare);
+		if(fromSquare.pieceColor != game.toMove || move.castlingType != CastlingType.NONE || move.promoteTo != null || game.variant == Variant.ANTICHESS || game.variant == Variant.RACING_KINGS)
+		{
+			return move.getIllegalReason();
+		}
+		final Square toSquare = game.square(move.toSquare);
+		if(!game.controls(fromSquare, toSquare))
+		{
+			final String reason = move.getIllegalReason();
+			if(reason != null)
+			{
+				return reason;
+			}
+			return "Your " + fromSquare.pieceType.name().toLowerCase() + " on " + fromSquare.getAlgebraicNotation() + " can't move to " + toSquare.getAlgebraicNotation();
+		}
+		return null;
+	}
+
+	/**
+	 * Validates the games of the given PGN stream, which isn't closed.
+	 */
+	public GameValidator validatePGN(InputStream is, Consumer consumer) throws IOException, ChessException
+	{
+		final PGNReader reader = new PGNReader(is, this.language, true).setTrusted(true);
+		return this.validate(new Source()
+		{
+			@Override
+			LazyGame next() throws IOException, ChessException
+			{
+				return reader.readLazyGame();
+			}
+		}, consumer);
+	}
+
+	/**
+	 * Validates the games of the given CGN stream, which isn't closed.
+	 */
+	public GameValidator validateCGN(InputStream is, CGNVersion version, Consumer consumer) throws IOException, ChessException
+	{
+		final CGNReader reader = new CGNReader(is, true, version).setTrusted(true);
+		return this.validate(new Source()
+		{
+			@Override
+			LazyGame next() throws IOException, ChessException
+			{
+				return reader.readLazyGame();
+			}
+		}, consumer);
+	}
+
+	/**
+	 * Reads the games on the calling thread, validates them on the executor and passes the reports to the consumer on the calling thread in the order of the games.
+	 * A game whose tags can't be read is reported as invalid as well; only I/O errors stop the validation.
+	 */
+	private GameValidator validate(Source source, Consumer consumer) throws IOException, ChessException
+	{
+		this.games = 0;
+		this.invalidGames = 0;
+		this.plies = 0;
+		final ExecutorService executor = (this.executor == null ? new ForkJoinPool() : this.executor);
+		final ArrayDeque<Future<Report[]>> pending = new ArrayDeque<>();
+		try
+		{
+			long index = 0;
+			// Either a LazyGame or the ChessException thrown while reading its tags.
+			ArrayList<Object> chunk = new ArrayList<>(this.chunkSize);
+			while(true)
+			{
+				try
+				{
+					final LazyGame lazyGame = source.next();
+					if(lazyGame == null)
+					{
+						break;
+					}
+					chunk.add(lazyGame);
+				}
+				catch(ChessException e)
+				{
+					chunk.add(e);
+				}
+				if(chunk.size() == this.chunkSize)
+				{
+					pending.add(GameValidator.submit(executor, chunk, index));
+					index += chunk.size();
+					chunk = new ArrayList<>(this.chunkSize);
+					while(!pending.isEmpty() && (pending.size() > this.maxPending || pending.peek().isDone()))
+					{
+						this.report(ParallelCGNParser.get(pending.poll()), consumer);
+					}
+				}
+			}
+			if(!chunk.isEmpty())
+			{
+				pending.add(GameValidator.submit(executor, chunk, index));
+			}
+			while(!pending.isEmpty())
+			{
+				this.report(ParallelCGNParser.get(pending.poll()), consumer);
+			}
+		}
+		finally
+		{
+			for(Future<Report[]> future : pending)
+			{
+				future.cancel(false);
+			}
+			if(this.executor == null)
+			{
+				executor.shutdown();
+			}
+		}
+		return this;
+	}
+
+	private static Future<Report[]> submit(ExecutorService executor, final ArrayList<Object> chunk, final long first)
+	{
+		return executor.submit(new Callable<Report[]>()
+		{
+			@Override
+			public Report[] call() throws IOException
+			{
+				final Report[] reports = new Report[chunk.size()];
+				for(int i = 0; i < reports.length; i++)
+				{
+					final Object item = chunk.get(i);
+					if(item instanceof LazyGame)
+					{
+						reports[i] = GameValidator.validate(first + i + 1, (LazyGame) item);
+					}
+					else
+					{
+						reports[i] = new Report(first + i + 1, null, 0, -1, null, GameValidator.reason((ChessException) item));
+					}
+				}
+				return reports;
+			}
+		});
+	}
+
+	private void report(Report[] reports, Consumer consumer) throws IOException, ChessException
+	{
+		for(Report report : reports)
+		{
+			this.games++;
+			this.plies += report.plies;
+			if(!report.isLegal())
+			{
+				this.invalidGames++;
+			}
+			consumer.report(report);
+		}
+	}
+
+	/**
+	 * @return The number of games of the last validation.
+	 */
+	public long getGames()
+	{
+		return this.games;
+	}
+
+	/**
+	 * @return The number of games of the last validation with an illegal move.
+	 */
+	public long getInvalidGames()
+	{
+		return this.invalidGames;
+	}
+
+	/**
+	 * @return The number of legal plies checked in the last validation.
+	 */
+	public long getPlies()
+	{
+		return this.plies;
+	}
+
+	/**
+	 * Receives the reports of a validation, always on the thread which started it.
+	 */
+	public static abstract class Consumer
+	{
+		public abstract void report(Report report) throws IOException, ChessException;
+	}
+
+	/**
+	 * The result of validating a single game.
+	 */
+	public static final class Report
+	{
+		/**
+		 * The position of the game in its stream, starting at 1, or 0 for a game validated on its own.
+		 */
+		public final long game;
+		/**
+		 * The tags of the game or null if they couldn't be read.
+		 */
+		public final GameHeader header;
+		/**
+		 * The number of plies before the first illegal move, or of the whole game if it's legal.
+		 */
+		public final int plies;
+		/**
+		 * The ply of the first illegal move, starting at 1, 0 if all moves are legal, or -1 if the game couldn't be replayed far enough to tell.
+		 */
+		public final int illegalPly;
+		/**
+		 * The first illegal move in UCI notation or null if it couldn't be replayed.
+		 */
+		public final String move;
+		/**
+		 * Why the first illegal move is illegal or null.
+		 */
+		public final String reason;
+
+		Report(long game, GameHeader header, int plies, int illegalPly, String move, String reason)
+		{
+			this.game = game;
+			this.header = header;
+			this.plies = plies;
+			this.illegalPly = illegalPly;
+			this.move = move;
+			this.reason = reason;
+		}
+
+		public boolean isLegal()
+		{
+			return this.reason == null;
+		}
+
+		@Override
+		public String toString()
+		{
+			if(this.reason == null)
+			{
+				return "OK";
+			}
+			final StringBuilder sb = new StringBuilder();
+			if(this.illegalPly > 0)
+			{
+				sb.append("Ply ").append(this.illegalPly);
+				if(this.move != null)
+				{
+					sb.append(" (").append(this.move).append(")");
+				}
+				sb.append(": ");
+			}
+			return sb.append(this.reason).toString();
+		}
+	}
+
+	private static abstract class Source
+	{
+		abstract LazyGame next() throws IOException, ChessException;
+	}
+}
@@ -0,0 +1,205 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A game of which only the header has been read. Its encoded movetext is kept and only replayed when something position-dependent is accessed, so loading a collection to list its games costs about as much as reading its headers.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class LazyGame
+{
+	public final GameHeader header;
+	private final boolean dontCalculate;
+	private final boolean trusted;
+	private final CGNVersion version;
+	private final int offset;
+	private final int dictionaryStrings;
+	private final Language language;
+	private byte[] cgn;
+	private CGNReader.LazyBlock block;
+	private List<String> pgn;
+	private volatile Game game;
+
+	LazyGame(GameHeader header, byte[] cgn, CGNVersion version, boolean dontCalculate, boolean trusted)
+	{
+		this.header = header;
+		this.cgn = cgn;
+		this.offset = 0;
+		this.dictionaryStrings = 0;
+		this.version = version;
+		this.language = null;
+		this.dontCalculate = dontCalculate;
+		this.trusted = trusted;
+	}
+
+	/**
+	 * @param offset The offset of the game within the {@link CGNVersion#V3} block containing it.
+	 * @param dictionaryStrings The number of strings in the tag dictionary of the block before the game.
+	 */
+	LazyGame(GameHeader header, CGNReader.LazyBlock block, int offset, int dictionaryStrings, boolean dontCalculate, boolean trusted)
+	{
+		this.header = header;
+		this.block = block;
+		this.offset = offset;
+		this.dictionaryStrings = dictionaryStrings;
+		this.version = CGNVersion.V3;
+		this.language = null;
+		this.dontCalculate = dontCalculate;
+		this.trusted = trusted;
+	}
+
+	LazyGame(GameHeader header, List<String> pgn, Language language, boolean dontCalculate, boolean trusted)
+	{
+		this.header = header;
+		this.pgn = pgn;
+		this.language = language;
+		this.offset = 0;
+		this.dictionaryStrings = 0;
+		this.version = null;
+		this.dontCalculate = dontCalculate;
+		this.trusted = trusted;
+	}
+
+	LazyGame(Game game)
+	{
+		this.header = new GameHeader(game);
+		this.game = game;
+		this.offset = 0;
+		this.dictionaryStrings = 0;
+		this.version = null;
+		this.language = null;
+		this.dontCalculate = false;
+		this.trusted = false;
+	}
+
+	public String getTag(String key)
+	{
+		return this.header.getTag(key);
+	}
+
+	public GameStatus getStatus()
+	{
+		return this.header.status;
+	}
+
+	/**
+	 * @return The number of plies in the game. For PGN, this has to replay the game.
+	 */
+	public int getPlyCount() throws IOException, ChessException
+	{
+		if(this.header.plyCount == -1)
+		{
+			return this.getGame().moves.size();
+		}
+		return this.header.plyCount;
+	}
+
+	public boolean isLoaded()
+	{
+		return this.game != null;
+	}
+
+	/**
+	 * Replays the game the first time it is called, after which the encoded movetext is dropped.
+	 * The bytes of a {@link CGNVersion#V3} block are dropped once all of its games have been loaded.
+	 */
+	public Game getGame() throws IOException, ChessException
+	{
+		Game game = this.game;
+		if(game == null)
+		{
+			synchronized(this)
+			{
+				game = this.game;
+				if(game == null)
+				{
+					if(this.pgn != null)
+					{
+						game = Game.fromPGN(this.pgn, this.language, this.dontCalculate, this.trusted);
+					}
+					else
+					{
+						game = this.readCGN(this.dontCalculate, this.trusted);
+					}
+					this.game = game;
+					this.cgn = null;
+					this.pgn = null;
+					if(this.block != null)
+					{
+						this.block.loaded();
+						this.block = null;
+					}
+				}
+			}
+		}
+		return game;
+	}
+
+	/**
+	 * Replays the game without validating its moves and without keeping it, as for {@link GameValidator}.
+	 *
+	 * @param game A new game which a PGN game is replayed into, so it's left with the moves before one which can't be replayed. CGN games are replayed into a game of their own.
+	 */
+	Game replayTrusted(Game game) throws IOException, ChessException
+	{
+		synchronized(this)
+		{
+			if(this.game != null)
+			{
+				return this.game;
+			}
+			if(this.pgn != null)
+			{
+				return Game.fromPGN(game, this.pgn, this.language, true, true);
+			}
+			return this.readCGN(true, true);
+		}
+	}
+
+	/**
+	 * Decodes the game from its own bytes or, with {@link CGNVersion#V3}, straight from its offset in the block.
+	 */
+	private Game readCGN(boolean dontCalculate, boolean trusted) throws IOException, ChessException
+	{
+		final CGNReader reader;
+		if(this.block != null)
+		{
+			reader = new CGNReader(this.block, this.offset, this.dictionaryStrings, dontCalculate);
+		}
+		else
+		{
+			reader = new CGNReader(this.cgn, dontCalculate, this.version);
+		}
+		final Game game = reader.setTrusted(trusted).readGame();
+		if(game == null)
+		{
+			throw new ChessException("The encoded game is missing");
+		}
+		return game;
+	}
+
+	public ArrayList<Move> getMoves() throws IOException, ChessException
+	{
+		return this.getGame().moves;
+	}
+
+	public String getFEN() throws IOException, ChessException
+	{
+		return this.getGame().getFEN();
+	}
+
+	public String toPGN() throws IOException, ChessException
+	{
+		return this.getGame().toPGN();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "{LazyGame " + this.header + (this.game == null ? "" : " loaded") + "}";
+	}
+}
@@ -0,0 +1,243 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A memory-mapped PGN file with an index of the byte offset and length of every game, so games can be parsed by number without reading the whole file into a String.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class MappedPGNFile implements Closeable
+{
+	static final int SEGMENT_SIZE = 1 << 30;
+	public final Language language;
+	public final boolean dontCalculate;
+	private final RandomAccessFile file;
+	private final MappedByteBuffer[] segments;
+	private final long size;
+	private long[] offsets = new long[1024];
+	private int[] lengths = new int[1024];
+	private int games = 0;
+
+	public MappedPGNFile(File file) throws IOException
+	{
+		this(file, Language.ENGLISH, false);
+	}
+
+	public MappedPGNFile(File file, Language language, boolean dontCalculate) throws IOException
+	{
+		this.language = language;
+		this.dontCalculate = dontCalculate;
+		this.file = new RandomAccessFile(file, "r");
+		final FileChannel channel = this.file.getChannel();
+		this.size = channel.size();
+		this.segments = new MappedByteBuffer[(int) ((this.size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+		for(int i = 0; i < this.segments.length; i++)
+		{
+			final long position = (long) i * SEGMENT_SIZE;
+			this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, this.size - position));
+		}
+		this.index();
+	}
+
+	private void index()
+	{
+		final PGNGameSplitter splitter = new PGNGameSplitter();
+		long start = 0;
+		boolean content = false;
+		long position = 0;
+		if(this.size >= 3 && this.get(0) == (byte) 0xEF && this.get(1) == (byte) 0xBB && this.get(2) == (byte) 0xBF)
+		{
+			start = position = 3;
+		}
+		for(MappedByteBuffer segment : this.segments)
+		{
+			final int limit = segment.limit();
+			for(int i = (int) (position % SEGMENT_SIZE); i < limit; i++, position++)
+			{
+				final int b = segment.get(i) & 0xFF;
+				if(splitter.next(b))
+				{
+					if(content)
+					{
+						this.add(start, position);
+					}
+					start = position;
+					content = false;
+				}
+				if(!content && b != ' ' && b != '\t' && b != '\r' && b != '\n')
+				{
+					content = true;
+				}
+			}
+		}
+		if(content)
+		{
+			this.add(start, position);
+		}
+	}
+
+	private void add(long start, long end)
+	{
+		if(end - start > Integer.MAX_VALUE)
+		{
+			throw new RuntimeException("Game at offset " + start + " is too large.");
+		}
+		if(this.games == this.offsets.length)
+		{
+			this.offsets = Arrays.copyOf(this.offsets, this.games * 2);
+			this.lengths = Arrays.copyOf(this.lengths, this.games * 2);
+		}
+		this.offsets[this.games] = start;
+		this.lengths[this.games] = (int) (end - start);
+		this.games++;
+	}
+
+	private byte get(long position)
+	{
+		return this.segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+	}
+
+	public int size()
+	{
+		return this.games;
+	}
+
+	public long getOffset(int game)
+	{
+		if(game < 0 || game >= this.games)
+		{
+			throw new IndexOutOfBoundsException("Game " + game + " of " + this.games);
+		}
+		return this.offsets[game];
+	}
+
+	public int getLength(int game)
+	{
+		if(game < 0 || game >= this.games)
+		{
+			throw new IndexOutOfBoundsException("Game " + game + " of " + this.games);
+		}
+		return this.lengths[game];
+	}
+
+	public byte[] getBytes(int game)
+	{
+		final long offset = this.getOffset(game);
+		final byte[] bytes = new byte[this.lengths[game]];
+		int copied = 0;
+		while(copied < bytes.length)
+		{
+			final long position = offset + copied;
+			final ByteBuffer segment = this.segments[(int) (position / SEGMENT_SIZE)].duplicate();
+			segment.position((int) (position % SEGMENT_SIZE));
+			final int length = Math.min(bytes.length - copied, segment.remaining());
+			segment.get(bytes, copied, length);
+			copied += length;
+		}
+		return bytes;
+	}
+
+	public String getPGN(int game)
+	{
+		return new String(this.getBytes(game), StandardCharsets.UTF_8);
+	}
+
+	public Game getGame(int game) throws ChessException
+	{
+		final String pgn = this.getPGN(game);
+		return Game.fromPGN(ParallelPGNParser.lines(pgn, 0, pgn.length()), this.language, this.dontCalculate);
+	}
+
+	/**
+	 * Decodes only the tag section of the given game.
+	 */
+	public GameHeader getHeader(int game) throws ChessException
+	{
+		final long offset = this.getOffset(game);
+		final long end = offset + this.lengths[game];
+		final ArrayList<String> lines = new ArrayList<>();
+		long lineStart = offset;
+		for(long position = offset; position < end; position++)
+		{
+			final byte b = this.get(position);
+			if(position == lineStart && b != '[')
+			{
+				if(b == '\n' || b == '\r' || b == ' ' || b == '\t')
+				{
+					lineStart++;
+					continue;
+				}
+				break;
+			}
+			if(b == '\n' || position == end - 1)
+			{
+				long lineEnd = (b == '\n' ? position : end);
+				if(lineEnd > lineStart && this.get(lineEnd - 1) == '\r')
+				{
+					lineEnd--;
+				}
+				final byte[] bytes = new byte[(int) (lineEnd - lineStart)];
+				for(int i = 0; i < bytes.length; i++)
+				{
+					bytes[i] = this.get(lineStart + i);
+				}
+				lines.add(new String(bytes, StandardCharsets.UTF_8));
+				lineStart = position + 1;
+			}
+		}
+		return GameHeader.fromPGN(lines);
+	}
+
+	public ArrayList<Game> getGames(int from, int to) throws ChessException
+	{
+		if(from < 0 || to > this.games || from > to)
+		{
+			throw new IndexOutOfBoundsException("Games " + from + " to " + to + " of " + this.games);
+		}
+		final ArrayList<Game> games = new ArrayList<>(to - from);
+		for(int i = from; i < to; i++)
+		{
+			games.add(this.getGame(i));
+		}
+		return games;
+	}
+
+	public ArrayList<Game> getGames(int from, int to, ForkJoinPool pool, boolean keepOrder) throws ChessException
+	{
+		if(from < 0 || to > this.games || from > to)
+		{
+			throw new IndexOutOfBoundsException("Games " + from + " to " + to + " of " + this.games);
+		}
+		return ParallelPGNParser.parse(new ParallelPGNParser.Source()
+		{
+			@Override
+			public Game parse(int i) throws ChessException
+			{
+				return MappedPGNFile.this.getGame(i);
+			}
+		}, from, to, pool, keepOrder);
+	}
+
+	public ArrayList<Game> getGames(ForkJoinPool pool, boolean keepOrder) throws ChessException
+	{
+		return this.getGames(0, this.games, pool, keepOrder);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.file.close();
+	}
+}
@@ -9,6 +9,10 @@ import java.util.ArrayList;
 @SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
 public class Move
 {
+	/**
+	 * When set, algebraic notation is looked up in and stored to this cache. Set to null to disable caching.
+	 */
+	public static volatile AlgebraicNotationCache algebraicNotationCache = null;
 	public final Square fromSquare;
 	public final Square toSquare;
 	public final PieceType promoteTo;
@@ -17,7 +21,9 @@ public class Move
 	public final ArrayList<String> annotations = new ArrayList<>();
 	public final ArrayList<String> annotationTags = new ArrayList<>();
 	private final WeakReference<Game> game;
-	private final Game _game;
+	private final String _fen;
+	private final Variant _variant;
+	private volatile Game _game;
 	private boolean annotate = true;
 
 	public Move(Game game, Square fromSquare, Square toSquare, PieceType promoteTo, boolean validate) throws ChessException
@@ -34,61 +40,87 @@ public class Move
 		{
 			throw new InvalidMoveException("Can't move to the same square");
 		}
+		this.castlingType = Move.castlingType(game, fromSquare, toSquare);
+		if(validate && this.castlingType == CastlingType.NONE && !game.getSquaresControlledBy(fromSquare).contains(toSquare))
+		{
+			throw new InvalidMoveException("Your " + fromSquare.pieceType.name().toLowerCase() + " on " + fromSquare.getAlgebraicNotation() + " can't move to " + toSquare.getAlgebraicNotation());
+		}
+		this.game = new WeakReference<>(game);
+		this._game = game.copy();
+		this._game.tags.clear();
+		this._fen = null;
+		this._variant = game.variant;
+		this.fromSquare = fromSquare;
+		this.toSquare = toSquare;
+		this.promoteTo = promoteTo;
+		this.isEnPassant = fromSquare.pieceType == PieceType.PAWN && toSquare.equals(game.enPassantSquare);
+	}
+
+	/**
+	 * Creates a move without validating it or copying the game.
+	 * The copy of the game before this move is only created from the given positional FEN once it's needed.
+	 */
+	Move(Game game, Square fromSquare, Square toSquare, PieceType promoteTo, String positionalFEN)
+	{
+		this(game, fromSquare, toSquare, promoteTo, Move.castlingType(game, fromSquare, toSquare), fromSquare.pieceType == PieceType.PAWN && toSquare.equals(game.enPassantSquare), positionalFEN);
+	}
+
+	/**
+	 * Creates a move of which it's already known how it castles and whether it captures en passant, so the board doesn't have to be in the position before it.
+	 */
+	Move(Game game, Square fromSquare, Square toSquare, PieceType promoteTo, CastlingType castlingType, boolean isEnPassant, String positionalFEN)
+	{
+		this.castlingType = castlingType;
+		this.game = new WeakReference<>(game);
+		this._game = null;
+		this._fen = positionalFEN;
+		this._variant = game.variant;
+		this.fromSquare = fromSquare;
+		this.toSquare = toSquare;
+		this.promoteTo = promoteTo;
+		this.isEnPassant = isEnPassant;
+	}
+
+	private static CastlingType castlingType(Game game, Square fromSquare, Square toSquare)
+	{
 		if(fromSquare.pieceType == PieceType.KING && (fromSquare.pieceColor == Color.WHITE ? (fromSquare.rank == 0 && (game.whiteCanCastle || game.whiteCanCastleQueenside)) : (fromSquare.rank == 7 && (game.blackCanCastle || game.blackCanCastleQueenside))))
 		{
 			if(game.variant == Variant.CHESS960)
 			{
 				if(toSquare.pieceType == PieceType.ROOK && toSquare.pieceColor == fromSquare.pieceColor)
 				{
-					if(toSquare.file > fromSquare.file)
-					{
-						this.castlingType = CastlingType.KINGSIDE;
-					}
-					else
-					{
-						this.castlingType = CastlingType.QUEENSIDE;
-					}
-				}
-				else
-				{
-					this.castlingType = CastlingType.NONE;
+					return toSquare.file > fromSquare.file ? CastlingType.KINGSIDE : CastlingType.QUEENSIDE;
 				}
 			}
 			else if(fromSquare.file == 4)
 			{
 				if(toSquare.file == 6)
 				{
-					this.castlingType = CastlingType.KINGSIDE;
-				}
-				else if(toSquare.file == 2)
-				{
-					this.castlingType = CastlingType.QUEENSIDE;
+					return CastlingType.KINGSIDE;
 				}
-				else
+				if(toSquare.file == 2)
 				{
-					this.castlingType = CastlingType.NONE;
+					return CastlingType.QUEENSIDE;
 				}
 			}
-			else
-			{
-				this.castlingType = CastlingType.NONE;
-			}
 		}
-		else
-		{
-			this.castlingType = CastlingType.NONE;
-		}
-		if(validate && this.castlingType == CastlingType.NONE && !game.getSquaresControlledBy(fromSquare).contains(toSquare))
+		return CastlingType.NONE;
+	}
+
+	/**
+	 * @return The copy of the game from before this move.
+	 */
+	Game snapshot() throws ChessException
+	{
+		if(this._game == null)
 		{
-			throw new InvalidMoveException("Your " + fromSquare.pieceType.name().toLowerCase() + " on " + fromSquare.getAlgebraicNotation() + " can't move to " + toSquare.getAlgebraicNotation());
+			final Game game = new Game();
+			game.loadFEN(this._fen);
+			game.variant = this._variant;
+			game.status = GameStatus.ONGOING;
+			this._game = game;
 		}
-		this.game = new WeakReference<>(game);
-		this._game = game.copy();
-		this._game.tags.clear();
-		this.fromSquare = fromSquare;
-		this.toSquare = toSquare;
-		this.promoteTo = promoteTo;
-		this.isEnPassant = fromSquare.pieceType == PieceType.PAWN && toSquare.equals(game.enPassantSquare);
+		return this._game;
 	}
 
 	public Move annotate(String annotation)
@@ -166,13 +198,13 @@ public class Move
 				{
 					if(this.toSquare.file != 5)
 					{
-						new Move(game, game.square(this.toSquare), game.square((byte) 5, fromSquare.rank), null, false).handle(game, false, true);
+						new Move(game, game.square(this.toSquare), game.square((byte) 5, fromSquare.rank), null, null).handle(game, false, true);
 					}
 					toSquare = game.square((byte) 6, fromSquare.rank);
 				}
 				else
 				{
-					new Move(game, game.square((byte) 7, fromSquare.rank), game.square((byte) 5, fromSquare.rank), null, false).handle(game, false, true);
+					new Move(game, game.square((byte) 7, fromSquare.rank), game.square((byte) 5, fromSquare.rank), null, null).handle(game, false, true);
 				}
 			}
 			else
@@ -181,13 +213,13 @@ public class Move
 				{
 					if(this.toSquare.file != 3)
 					{
-						new Move(game, game.square(this.toSquare), game.square((byte) 3, fromSquare.rank), null, false).handle(game, false, true);
+						new Move(game, game.square(this.toSquare), game.square((byte) 3, fromSquare.rank), null, null).handle(game, false, true);
 					}
 					toSquare = game.square((byte) 2, fromSquare.rank);
 				}
 				else
 				{
-					new Move(game, game.square((byte) 0, fromSquare.rank), game.square((byte) 3, fromSquare.rank), null, false).handle(game, false, true);
+					new Move(game, game.square((byte) 0, fromSquare.rank), game.square((byte) 3, fromSquare.rank), null, null).handle(game, false, true);
 				}
 			}
 		}
@@ -279,6 +311,113 @@ public class Move
 	}
 
 	public Game commitTo(Game game, boolean dontCalculate) throws ChessException
+	{
+		this.apply(game, dontCalculate);
+		if(dontCalculate)
+		{
+			game.recalculateStatus();
+		}
+		else
+		{
+			game.determineCastlingAbilities();
+			boolean isCheck = game.isCheck();
+			if(isCheck)
+			{
+				if(game.toMove == Color.WHITE)
+				{
+					game.whitechecks++;
+				}
+				else
+				{
+					game.blackchecks++;
+				}
+			}
+			String fen = game.getPositionalFEN(true);
+			synchronized(game.repetitionPostitions)
+			{
+				if(game.repetitionPostitions.containsKey(fen))
+				{
+					int repetitions = game.repetitionPostitions.get(fen) + 1;
+					game.repetitionPostitions.put(fen, repetitions);
+					if(repetitions >= 5)
+					{
+						game.endReason = EndReason.FIVEFOLD_REPETITION;
+						game.recalculateStatus();
+					}
+					else if(repetitions >= 3)
+					{
+						game.claimableDraw = EndReason.THREEFOLD_REPETITION;
+						game.recalculateEndReason(isCheck);
+					}
+				}
+				else
+				{
+					game.repetitionPostitions.put(fen, 1);
+					game.recalculateEndReason(isCheck);
+				}
+			}
+		}
+		return game;
+	}
+
+	/**
+	 * Commits this move without looking for checkmate, stalemate or insufficient material, which {@link TrustedReplay#finish()} does once the last move has been committed.
+	 * Castling abilities, repetitions, the draw ply timer and, in Three-check, checks are still kept track of.
+	 *
+	 * @return The positional FEN after this move.
+	 */
+	String commitTrusted(Game game) throws ChessException
+	{
+		this.apply(game, false);
+		game.determineCastlingAbilities();
+		if(game.variant == Variant.THREE_CHECK && game.isCheck())
+		{
+			if(game.toMove == Color.WHITE)
+			{
+				game.whitechecks++;
+			}
+			else
+			{
+				game.blackchecks++;
+			}
+		}
+		final String fen = game.getPositionalFEN(true);
+		synchronized(game.repetitionPostitions)
+		{
+			final int repetitions = (game.repetitionPostitions.containsKey(fen) ? game.repetitionPostitions.get(fen) + 1 : 1);
+			game.repetitionPostitions.put(fen, repetitions);
+			if(repetitions >= 5)
+			{
+				game.endReason = EndReason.FIVEFOLD_REPETITION;
+				game.recalculateStatus();
+			}
+			else if(repetitions >= 3)
+			{
+				game.claimableDraw = EndReason.THREEFOLD_REPETITION;
+			}
+		}
+		if(game.drawPlyTimer > 150)
+		{
+			game.endReason = EndReason.SEVENTY_FIVE_MOVE_RULE;
+			game.recalculateStatus();
+		}
+		else if(game.drawPlyTimer > 100)
+		{
+			game.claimableDraw = EndReason.FIFTY_MOVE_RULE;
+		}
+		return fen;
+	}
+
+	/**
+	 * Commits this move, only keeping the board, the castling abilities, the en passant square and who's to move current, for callers which only look at the position.
+	 */
+	void commitBoard(Game game) throws ChessException
+	{
+		this.apply(game, false);
+		game.determineCastlingAbilities();
+	}
+
+	private void apply(Game game, boolean dontCalculate) throws ChessException
 	{
 		if(this.isEnPassant)
 		{
@@ -373,51 +512,6 @@ public class Move
 		}
 		game.plyCount++;
 		game.toMove = game.toMove.opposite();
-		if(dontCalculate)
-		{
-			game.recalculateStatus();
-		}
-		else
-		{
-			game.determineCastlingAbilities();
-			boolean isCheck = game.isCheck();
-			if(isCheck)
-			{
-				if(game.toMove == Color.WHITE)
-				{
-					game.whitechecks++;
-				}
-				else
-				{
-					game.blackchecks++;
-				}
-			}
-			String fen = game.getPositionalFEN(true);
-			synchronized(game.repetitionPostitions)
-			{
-				if(game.repetitionPostitions.containsKey(fen))
-				{
-					int repetitions = game.repetitionPostitions.get(fen) + 1;
-					game.repetitionPostitions.put(fen, repetitions);
-					if(repetitions >= 5)
-					{
-						game.endReason = EndReason.FIVEFOLD_REPETITION;
-						game.recalculateStatus();
-					}
-					else if(repetitions >= 3)
-					{
-						game.claimableDraw = EndReason.THREEFOLD_REPETITION;
-						game.recalculateEndReason(isCheck);
-					}
-				}
-				else
-				{
-					game.repetitionPostitions.put(fen, 1);
-					game.recalculateEndReason(isCheck);
-				}
-			}
-		}
-		return game;
 	}
 
 	public Game commit() throws ChessException
@@ -448,11 +542,11 @@ public class Move
 
 	public Game commitInCopy(boolean illegalIsLegal, boolean dontCalculate) throws ChessException
 	{
-		if(this._game == null)
+		if(this._game == null && this._fen == null)
 		{
 			throw new ChessException("Can't commit move to null");
 		}
-		Game game = this._game.copy();
+		Game game = this.snapshot().copy();
 		if(!illegalIsLegal && this.getIllegalReason() != null)
 		{
 			game.endReason = EndReason.RULES_INFRACTION;
@@ -469,16 +563,17 @@ public class Move
 
 	public String getIllegalReason() throws ChessException
 	{
-		final Square fromSquare = this._game.square(this.fromSquare);
-		if(fromSquare.pieceColor != this._game.toMove)
+		final Game _game = this.snapshot();
+		final Square fromSquare = _game.square(this.fromSquare);
+		if(fromSquare.pieceColor != _game.toMove)
 		{
 			return "You can only move your own pieces";
 		}
-		if(this._game.variant == Variant.ANTICHESS)
+		if(_game.variant == Variant.ANTICHESS)
 		{
-			if(!this._game.square(this.toSquare).hasPiece())
+			if(!_game.square(this.toSquare).hasPiece())
 			{
-				for(Square s : this._game.getSquaresControlledBy(this._game.toMove))
+				for(Square s : _game.getSquaresControlledBy(_game.toMove))
 				{
 					if(s.hasPiece())
 					{
@@ -489,7 +584,7 @@ public class Move
 		}
 		else
 		{
-			if(this._game.variant == Variant.RACING_KINGS && this.isCheck())
+			if(_game.variant == Variant.RACING_KINGS && this.isCheck())
 			{
 				return "You can't put your opponent in check";
 			}
@@ -499,38 +594,38 @@ public class Move
 			}
 			if(this.castlingType != CastlingType.NONE)
 			{
-				final byte rank = (byte) (this._game.toMove == Color.WHITE ? 0 : 7);
+				final byte rank = (byte) (_game.toMove == Color.WHITE ? 0 : 7);
 				final byte rookFile;
 				final ArrayList<Square> opponentControlledSquares;
 				final byte kingDestination;
 				final byte rookDestination;
 				if(this.castlingType == CastlingType.KINGSIDE)
 				{
-					if(this._game.toMove == Color.WHITE ? !this._game.whiteCanCastle : !this._game.blackCanCastle)
+					if(_game.toMove == Color.WHITE ? !_game.whiteCanCastle : !_game.blackCanCastle)
 					{
 						return "You can't castle kingside";
 					}
-					opponentControlledSquares = this._game.getSquaresControlledBy(this._game.toMove.opposite());
+					opponentControlledSquares = _game.getSquaresControlledBy(_game.toMove.opposite());
 					if(opponentControlledSquares.contains(fromSquare))
 					{
 						return "You can't castle while in check";
 					}
-					rookFile = (this._game.variant == Variant.CHESS960 ? toSquare.file : 7);
+					rookFile = (_game.variant == Variant.CHESS960 ? toSquare.file : 7);
 					kingDestination = 6;
 					rookDestination = 5;
 				}
 				else
 				{
-					if(this._game.toMove == Color.WHITE ? !this._game.whiteCanCastleQueenside : !this._game.blackCanCastleQueenside)
+					if(_game.toMove == Color.WHITE ? !_game.whiteCanCastleQueenside : !_game.blackCanCastleQueenside)
 					{
 						return "You can't castle queenside";
 					}
-					opponentControlledSquares = this._game.getSquaresControlledBy(this._game.toMove.opposite());
+					opponentControlledSquares = _game.getSquaresControlledBy(_game.toMove.opposite());
 					if(opponentControlledSquares.contains(fromSquare))
 					{
 						return "You can't castle while in check";
 					}
-					rookFile = (this._game.variant == Variant.CHESS960 ? toSquare.file : 0);
+					rookFile = (_game.variant == Variant.CHESS960 ? toSquare.file : 0);
 					kingDestination = 2;
 					rookDestination = 3;
 				}
@@ -554,7 +649,7 @@ public class Move
 						}
 						if(file != rookFile)
 						{
-							final Square s = this._game.square(file, rank);
+							final Square s = _game.square(file, rank);
 							if(s.hasPiece())
 							{
 								return "You can't castle because " + s.getAlgebraicNotation() + " is occupied";
@@ -573,8 +668,8 @@ public class Move
 					{
 						for(byte file = (byte) (rookFile + 1); file <= rookDestination; file++)
 						{
-							Square s = this._game.square(file, rank);
-							if(s.hasPiece() && (s.pieceType != PieceType.KING || s.pieceColor != this._game.toMove))
+							Square s = _game.square(file, rank);
+							if(s.hasPiece() && (s.pieceType != PieceType.KING || s.pieceColor != _game.toMove))
 							{
 								return "You can't castle because " + s.getAlgebraicNotation() + " is occupied";
 							}
@@ -584,8 +679,8 @@ public class Move
 					{
 						for(byte file = (byte) (rookFile - 1); file >= rookDestination; file--)
 						{
-							Square s = this._game.square(file, rank);
-							if(s.hasPiece() && (s.pieceType != PieceType.KING || s.pieceColor != this._game.toMove))
+							Square s = _game.square(file, rank);
+							if(s.hasPiece() && (s.pieceType != PieceType.KING || s.pieceColor != _game.toMove))
 							{
 								return "You can't castle because " + s.getAlgebraicNotation() + " is occupied";
 							}
@@ -615,9 +710,9 @@ public class Move
 			{
 				return "Only pawns can be promoted";
 			}
-			if(!this._game.variant.getPossiblePromotions().contains(promoteTo))
+			if(!_game.variant.getPossiblePromotions().contains(promoteTo))
 			{
-				return "You can't promote to " + promoteTo.name().toLowerCase() + " in the " + this._game.variant.name + " variant";
+				return "You can't promote to " + promoteTo.name().toLowerCase() + " in the " + _game.variant.name + " variant";
 			}
 		}
 		return null;
@@ -670,6 +765,26 @@ public class Move
 
 	public String toAlgebraicNotation(AlgebraicNotationVariation variation, Language language) throws ChessException
 	{
+		final AlgebraicNotationCache cache = Move.algebraicNotationCache;
+		if(cache == null)
+		{
+			return this.computeAlgebraicNotation(variation, language);
+		}
+		final Game _game = this.snapshot();
+		final long positionHash = _game.getHash();
+		final int moveKey = AlgebraicNotationCache.moveKey(this, _game.variant, variation, language);
+		String an = cache.get(positionHash, moveKey);
+		if(an == null)
+		{
+			an = this.computeAlgebraicNotation(variation, language);
+			cache.put(positionHash, moveKey, an);
+		}
+		return an;
+	}
+
+	private String computeAlgebraicNotation(AlgebraicNotationVariation variation, Language language) throws ChessException
+	{
+		final Game _game = this.snapshot();
 		StringBuilder an = new StringBuilder();
 		switch(this.castlingType)
 		{
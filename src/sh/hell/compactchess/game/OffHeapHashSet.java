@@ -0,0 +1,171 @@
+package sh.hell.compactchess.game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A set of 128-bit values stored outside of the heap, so hundreds of millions of them neither need a huge heap nor slow down garbage collection.
+ * The values live in segments of {@link #SEGMENT_SLOTS} slots of 16 bytes each, searched by linear probing. The all-zero value marks an empty slot, so it's stored as 1 instead.
+ * The segments are mapped from a deleted temporary file rather than allocated as direct buffers, so they don't count against -XX:MaxDirectMemorySize, which is as large as the heap by default, and the operating system can page them out.
+ * This class is not synchronized.
+ */
+final class OffHeapHashSet
+{
+	static final int SEGMENT_SLOTS = 1 << 22;
+	private static final int SLOT_SIZE = 16;
+	private ByteBuffer[] segments;
+	private long capacity;
+	private long size = 0;
+
+	/**
+	 * @param expected The number of values which can be added before the set has to grow, which takes 21 bytes each.
+	 */
+	OffHeapHashSet(long expected)
+	{
+		this.allocate(Math.max(expected, 1) * 4 / 3 + 1);
+	}
+
+	private void allocate(long slots)
+	{
+		final int segmentSlots = (int) Math.min(slots, SEGMENT_SLOTS);
+		final long segments = (slots + segmentSlots - 1) / segmentSlots;
+		if(segments > Integer.MAX_VALUE || segments * segmentSlots >= (1L << 32))
+		{
+			throw new IllegalArgumentException("Too many slots: " + slots);
+		}
+		this.segments = OffHeapHashSet.map((int) segments, segmentSlots * SLOT_SIZE);
+		this.capacity = segments * segmentSlots;
+		this.size = 0;
+	}
+
+	/**
+	 * Maps the given number of zeroed segments from a new temporary file, which is deleted right away, so only the mappings keep it alive.
+	 */
+	private static ByteBuffer[] map(int count, int segmentSize)
+	{
+		try
+		{
+			final File file = File.createTempFile("compactchess", ".set");
+			try(RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+			{
+				raf.setLength((long) count * segmentSize);
+				final FileChannel channel = raf.getChannel();
+				final ByteBuffer[] segments = new ByteBuffer[count];
+				for(int i = 0; i < count; i++)
+				{
+					segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize).order(ByteOrder.nativeOrder());
+				}
+				return segments;
+			}
+			finally
+			{
+				if(!file.delete())
+				{
+					file.deleteOnExit();
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return True if the value wasn't in the set yet.
+	 */
+	boolean add(long high, long low)
+	{
+		if(this.segments == null)
+		{
+			throw new IllegalStateException("The set has been closed");
+		}
+		if(high == 0 && low == 0)
+		{
+			low = 1;
+		}
+		if(this.size >= this.capacity * 3 / 4)
+		{
+			this.grow();
+		}
+		if(this.insert(high, low))
+		{
+			this.size++;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean insert(long high, long low)
+	{
+		final int segmentSlots = this.segments[0].capacity() / SLOT_SIZE;
+		// Maps the upper 32 bits of the hash onto [0, capacity) without needing a power of two.
+		long slot = ((high >>> 32) * this.capacity) >>> 32;
+		while(true)
+		{
+			final ByteBuffer segment = this.segments[(int) (slot / segmentSlots)];
+			final int offset = (int) (slot % segmentSlots) * SLOT_SIZE;
+			final long slotHigh = segment.getLong(offset);
+			final long slotLow = segment.getLong(offset + 8);
+			if(slotHigh == 0 && slotLow == 0)
+			{
+				segment.putLong(offset, high);
+				segment.putLong(offset + 8, low);
+				return true;
+			}
+			if(slotHigh == high && slotLow == low)
+			{
+				return false;
+			}
+			if(++slot == this.capacity)
+			{
+				slot = 0;
+			}
+		}
+	}
+
+	private void grow()
+	{
+		final ByteBuffer[] old = this.segments;
+		final long size = this.size;
+		this.allocate(this.capacity * 2);
+		for(ByteBuffer segment : old)
+		{
+			for(int offset = 0; offset < segment.capacity(); offset += SLOT_SIZE)
+			{
+				final long high = segment.getLong(offset);
+				final long low = segment.getLong(offset + 8);
+				if(high != 0 || low != 0)
+				{
+					this.insert(high, low);
+				}
+			}
+		}
+		this.size = size;
+	}
+
+	long size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * @return The number of bytes mapped outside of the heap.
+	 */
+	long getMemory()
+	{
+		return (this.segments == null ? 0 : this.capacity * SLOT_SIZE);
+	}
+
+	/**
+	 * Drops the segments, which are unmapped once they're garbage collected. The size stays readable, but nothing can be added anymore.
+	 */
+	void close()
+	{
+		this.segments = null;
+	}
+}
@@ -0,0 +1,222 @@
+package sh.hell.compactchess.game;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded least-recently-used cache of the positions reached by the first plies of games, keyed by the moves leading to them as they were read.
+ * Set {@link Game#openingCache} to have {@link Game#fromPGN(String)}, {@link Game#fromCGN(java.io.InputStream)} and their readers skip to the deepest cached position of every game and only replay the moves after it.
+ * Every cached ply is an entry, so a capacity of a few hundred thousand covers the first 20 plies of the common lines of a large collection.
+ * Plies cached by a trusted replay aren't used for games whose moves are validated.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class OpeningCache
+{
+	public static final int DEFAULT_MAX_DEPTH = 20;
+	public final int capacity;
+	/**
+	 * The maximum number of plies of a game which are cached.
+	 */
+	public final int maxDepth;
+	private final LinkedHashMap<Key, Position> entries;
+	private final AtomicLong ids = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public OpeningCache(final int capacity)
+	{
+		this(capacity, DEFAULT_MAX_DEPTH);
+	}
+
+	public OpeningCache(final int capacity, final int maxDepth)
+	{
+		if(capacity < 1)
+		{
+			throw new RuntimeException("Capacity has to be at least 1.");
+		}
+		if(maxDepth < 1)
+		{
+			throw new RuntimeException("Max depth has to be at least 1.");
+		}
+		this.capacity = capacity;
+		this.maxDepth = maxDepth;
+		this.entries = new LinkedHashMap<Key, Position>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Position> eldest)
+			{
+				return this.size() > OpeningCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return The root position of the given started game. Roots aren't counted as hits or misses.
+	 */
+	Position root(Game game, Language language)
+	{
+		final Key key = new Key(-1, (language == null ? -1 : language.ordinal()), game.variant.name() + " " + game.getFEN(false) + " " + game.whitechecks + " " + game.blackchecks);
+		synchronized(this.entries)
+		{
+			Position root = this.entries.get(key);
+			if(root == null)
+			{
+				root = new Position(this.ids.incrementAndGet(), game, null, true);
+				this.entries.put(key, root);
+			}
+			return root;
+		}
+	}
+
+	/**
+	 * @param token The move as it was encoded in CGN or -1 if it's given in algebraic notation.
+	 * @param an The move in algebraic notation or null.
+	 * @param validated Set to true to only accept positions reached by validated moves.
+	 */
+	Position get(Position parent, int token, String an, boolean validated)
+	{
+		Position position;
+		synchronized(this.entries)
+		{
+			position = this.entries.get(new Key(parent.id, token, an));
+		}
+		if(position != null && validated && !position.validated)
+		{
+			position = null;
+		}
+		if(position == null)
+		{
+			misses.incrementAndGet();
+		}
+		else
+		{
+			hits.incrementAndGet();
+		}
+		return position;
+	}
+
+	/**
+	 * @return The position reached by the given move, now that it has been committed to the given game.
+	 */
+	Position put(Position parent, int token, String an, Game game, Move move, boolean validated)
+	{
+		final Position position = new Position(this.ids.incrementAndGet(), game, move, validated);
+		synchronized(this.entries)
+		{
+			this.entries.put(new Key(parent.id, token, an), position);
+		}
+		return position;
+	}
+
+	public int size()
+	{
+		synchronized(this.entries)
+		{
+			return this.entries.size();
+		}
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return The share of cache lookups which were hits. Every game looks up its plies until the first miss, so this is roughly the share of the first {@link #maxDepth} plies which didn't have to be replayed.
+	 */
+	public double getHitRate()
+	{
+		final long hits = this.hits.get();
+		final long lookups = hits + this.misses.get();
+		if(lookups == 0)
+		{
+			return 0;
+		}
+		return (double) hits / lookups;
+	}
+
+	public OpeningCache clear()
+	{
+		synchronized(this.entries)
+		{
+			this.entries.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+		return this;
+	}
+
+	/**
+	 * The state of a game after a move, with everything needed to create that move without the board and to restore the game to the state after it.
+	 */
+	static final class Position
+	{
+		final long id;
+		final int depth;
+		final boolean validated;
+		final byte fromSquare;
+		final byte toSquare;
+		final PieceType promoteTo;
+		final CastlingType castlingType;
+		final boolean isEnPassant;
+		final String positionalFEN;
+		final PositionSnapshot state;
+
+		Position(long id, Game game, Move move, boolean validated)
+		{
+			this.id = id;
+			this.depth = game.moves.size();
+			this.validated = validated;
+			if(move == null)
+			{
+				this.fromSquare = 0;
+				this.toSquare = 0;
+				this.promoteTo = null;
+				this.castlingType = CastlingType.NONE;
+				this.isEnPassant = false;
+			}
+			else
+			{
+				this.fromSquare = move.fromSquare.index();
+				this.toSquare = move.toSquare.index();
+				this.promoteTo = move.promoteTo;
+				this.castlingType = move.castlingType;
+				this.isEnPassant = move.isEnPassant;
+			}
+			this.positionalFEN = game.getPositionalFEN(true);
+			this.state = new PositionSnapshot(game);
+		}
+	}
+
+	private static final class Key
+	{
+		final long parent;
+		final int token;
+		final String an;
+
+		Key(long parent, int token, String an)
+		{
+			this.parent = parent;
+			this.token = token;
+			this.an = an;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ((int) (parent ^ (parent >>> 32)) * 31 + token) * 31 + (an == null ? 0 : an.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object o2)
+		{
+			return o2 instanceof Key && this.parent == ((Key) o2).parent && this.token == ((Key) o2).token && (this.an == null ? ((Key) o2).an == null : this.an.equals(((Key) o2).an));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+/**
+ * Replays the moves of a game through an {@link OpeningCache}.
+ * As long as the moves are cached, they're created from the cache without touching the board. Once a move isn't, the game is restored to the deepest cached position and the remaining moves are replayed as usual, while the ones up to {@link OpeningCache#maxDepth} are added to the cache.
+ */
+final class OpeningReplay
+{
+	private final OpeningCache cache;
+	private final Game game;
+	private final boolean trusted;
+	private TrustedReplay replay = null;
+	private OpeningCache.Position position;
+	private boolean following = true;
+	private boolean skipped = false;
+	private boolean moved = false;
+	private int token;
+	private String an;
+
+	/**
+	 * @param language The language moves are given in or null if they're given as they were encoded in CGN.
+	 * @param trusted Set to true to replay moves without validating them.
+	 */
+	OpeningReplay(OpeningCache cache, Game game, Language language, boolean trusted)
+	{
+		this.cache = cache;
+		this.game = game;
+		this.trusted = trusted;
+		this.position = cache.root(game, language);
+	}
+
+	/**
+	 * Creates the given move from the cache.
+	 *
+	 * @param token The move as it was encoded in CGN.
+	 * @return The move or null if it's not cached, in which case the game has been restored so it can be decoded and passed to {@link #move(Square, Square, PieceType)}.
+	 */
+	Move next(int token) throws ChessException
+	{
+		return this.next(token, null);
+	}
+
+	private Move next(int token, String an) throws ChessException
+	{
+		if(this.following)
+		{
+			if(this.position.depth < this.cache.maxDepth)
+			{
+				final OpeningCache.Position next = this.cache.get(this.position, token, an, !this.trusted);
+				if(next != null)
+				{
+					final Move move = new Move(this.game, this.game.squares[next.fromSquare], this.game.squares[next.toSquare], next.promoteTo, next.castlingType, next.isEnPassant, this.position.positionalFEN);
+					synchronized(this.game.moves)
+					{
+						this.game.moves.add(move);
+					}
+					this.game.plyCount++;
+					this.game.toMove = this.game.toMove.opposite();
+					this.position = next;
+					this.skipped = true;
+					return move;
+				}
+			}
+			this.restore();
+		}
+		this.token = token;
+		this.an = an;
+		return null;
+	}
+
+	private void restore() throws ChessException
+	{
+		this.following = false;
+		if(this.skipped)
+		{
+			this.position.state.restore(this.game);
+		}
+		if(this.trusted)
+		{
+			this.replay = new TrustedReplay(this.game);
+		}
+	}
+
+	Move move(String move, Language language) throws ChessException
+	{
+		final Move cached = this.next(-1, move);
+		if(cached != null)
+		{
+			return cached;
+		}
+		if(this.replay != null)
+		{
+			return this.record(this.replay.move(move, language));
+		}
+		final Move result = this.game.move(move, language);
+		result.commit(false, false);
+		return this.record(result);
+	}
+
+	/**
+	 * Replays a move which {@link #next(int)} didn't find in the cache.
+	 */
+	Move move(Square fromSquare, Square toSquare, PieceType promoteTo) throws ChessException
+	{
+		if(this.replay != null)
+		{
+			return this.record(this.replay.move(fromSquare, toSquare, promoteTo));
+		}
+		final Move move = new Move(this.game, fromSquare, toSquare, promoteTo, true);
+		move.commit(false, false);
+		return this.record(move);
+	}
+
+	private Move record(Move move)
+	{
+		this.moved = true;
+		if(this.position != null)
+		{
+			if(this.position.depth < this.cache.maxDepth && this.game.status == GameStatus.ONGOING && this.game.endReason == EndReason.UNTERMINATED && this.game.moves.size() == this.position.depth + 1)
+			{
+				this.position = this.cache.put(this.position, this.token, this.an, this.game, move, !this.trusted);
+			}
+			else
+			{
+				this.position = null;
+			}
+		}
+		return move;
+	}
+
+	void finish() throws ChessException
+	{
+		if(this.following)
+		{
+			this.restore();
+		}
+		if(this.replay != null)
+		{
+			this.replay.finish();
+		}
+		if(this.skipped && !this.moved)
+		{
+			this.game.recalculateEndReason(this.game.isCheck());
+		}
+	}
+}
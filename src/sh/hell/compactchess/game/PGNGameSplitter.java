@@ -0,0 +1,76 @@
+package sh.hell.compactchess.game;
+
+/**
+ * Finds game boundaries in PGN text one character at a time.
+ * A game ends at a blank line following its movetext or when a tag section starts after its movetext.
+ */
+final class PGNGameSplitter
+{
+	private boolean lineStart = true;
+	private boolean tagLine = false;
+	private boolean lineComment = false;
+	private boolean movetext = false;
+	private boolean ended = false;
+	private boolean comment = false;
+
+	/**
+	 * @return true if the given character is the first character of a new game, not counting the first game.
+	 */
+	boolean next(int c)
+	{
+		if(c == '\n')
+		{
+			if(lineStart && movetext && !comment)
+			{
+				ended = true;
+			}
+			lineStart = true;
+			tagLine = false;
+			lineComment = false;
+			return false;
+		}
+		if(c == ' ' || c == '\t' || c == '\r' || c == 0xFEFF)
+		{
+			return false;
+		}
+		boolean newGame = false;
+		if(lineStart)
+		{
+			lineStart = false;
+			if(ended || (c == '[' && movetext && !comment))
+			{
+				newGame = true;
+				ended = false;
+				movetext = false;
+				comment = false;
+			}
+			if(c == '[' && !comment)
+			{
+				tagLine = true;
+				return newGame;
+			}
+		}
+		if(tagLine || lineComment)
+		{
+			return newGame;
+		}
+		if(comment)
+		{
+			if(c == '}')
+			{
+				comment = false;
+			}
+			return newGame;
+		}
+		movetext = true;
+		if(c == '{')
+		{
+			comment = true;
+		}
+		else if(c == ';')
+		{
+			lineComment = true;
+		}
+		return newGame;
+	}
+}
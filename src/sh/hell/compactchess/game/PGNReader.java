@@ -0,0 +1,224 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads games one at a time, so only a single game has to be held in memory.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class PGNReader implements Iterator<Game>, Iterable<Game>, Closeable
+{
+	public final Language language;
+	public final boolean dontCalculate;
+	private final BufferedReader reader;
+	private final PGNGameSplitter splitter = new PGNGameSplitter();
+	private boolean trusted = false;
+	private String pendingLine = null;
+	private Game next = null;
+
+	public PGNReader(InputStream is)
+	{
+		this(new InputStreamReader(is, StandardCharsets.UTF_8), Language.ENGLISH, false);
+	}
+
+	public PGNReader(InputStream is, Language language, boolean dontCalculate)
+	{
+		this(new InputStreamReader(is, StandardCharsets.UTF_8), language, dontCalculate);
+	}
+
+	public PGNReader(Reader reader)
+	{
+		this(reader, Language.ENGLISH, false);
+	}
+
+	public PGNReader(Reader reader, Language language, boolean dontCalculate)
+	{
+		this.reader = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+		this.language = language;
+		this.dontCalculate = dontCalculate;
+	}
+
+	/**
+	 * @param trusted Set to true to replay moves without validating them.
+	 * @see Game#fromPGN(String, Language, boolean, boolean)
+	 */
+	public PGNReader setTrusted(boolean trusted)
+	{
+		this.trusted = trusted;
+		return this;
+	}
+
+	/**
+	 * @return The next game or null if the end of the input has been reached.
+	 */
+	public Game readGame() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final Game game = this.next;
+			this.next = null;
+			return game;
+		}
+		final List<String> lines = this.readGameLines();
+		if(lines == null)
+		{
+			return null;
+		}
+		return Game.fromPGN(lines, this.language, this.dontCalculate, this.trusted);
+	}
+
+	/**
+	 * Reads the tag section of the next game and skips its movetext.
+	 *
+	 * @return The header of the next game or null if the end of the input has been reached.
+	 */
+	public GameHeader readHeader() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final GameHeader header = new GameHeader(this.next);
+			this.next = null;
+			return header;
+		}
+		final List<String> lines = this.readGameLines(true);
+		if(lines == null)
+		{
+			return null;
+		}
+		return GameHeader.fromPGN(lines);
+	}
+
+	/**
+	 * Reads the next game, but only parses its tags until something position-dependent is accessed.
+	 *
+	 * @return The next game or null if the end of the input has been reached.
+	 */
+	public LazyGame readLazyGame() throws IOException, ChessException
+	{
+		if(this.next != null)
+		{
+			final LazyGame game = new LazyGame(this.next);
+			this.next = null;
+			return game;
+		}
+		final List<String> lines = this.readGameLines();
+		if(lines == null)
+		{
+			return null;
+		}
+		return new LazyGame(GameHeader.fromPGN(lines), lines, this.language, this.dontCalculate, this.trusted);
+	}
+
+	List<String> readGameLines() throws IOException
+	{
+		return this.readGameLines(false);
+	}
+
+	/**
+	 * @param tagsOnly Set to true to only keep the lines of the tag section.
+	 */
+	List<String> readGameLines(boolean tagsOnly) throws IOException
+	{
+		final ArrayList<String> lines = new ArrayList<>();
+		boolean content = false;
+		boolean movetext = false;
+		if(this.pendingLine != null)
+		{
+			lines.add(this.pendingLine);
+			movetext = !this.pendingLine.startsWith("[");
+			this.pendingLine = null;
+			content = true;
+		}
+		String line;
+		while((line = this.reader.readLine()) != null)
+		{
+			boolean newGame = false;
+			for(int i = 0; i < line.length(); i++)
+			{
+				if(this.splitter.next(line.charAt(i)))
+				{
+					newGame = true;
+				}
+			}
+			this.splitter.next('\n');
+			if(newGame && content)
+			{
+				this.pendingLine = line;
+				return lines;
+			}
+			final boolean blank = line.trim().equals("");
+			if(!tagsOnly || (!movetext && line.startsWith("[")))
+			{
+				lines.add(line);
+			}
+			else if(!blank)
+			{
+				movetext = true;
+			}
+			if(!content && !blank)
+			{
+				content = true;
+			}
+		}
+		return content ? lines : null;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if(this.next == null)
+		{
+			try
+			{
+				this.next = this.readGame();
+			}
+			catch(IOException | ChessException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Game next()
+	{
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		final Game game = this.next;
+		this.next = null;
+		return game;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<Game> iterator()
+	{
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.reader.close();
+	}
+}
@@ -0,0 +1,79 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+/**
+ * Writes games as PGN straight to a stream, one after the other, without building them as Strings first and reusing the map the tags are collected in.
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class PGNWriter implements Flushable, Closeable
+{
+	public final AlgebraicNotationVariation variation;
+	public final Language language;
+	public final boolean noTags;
+	public final boolean noAnnotations;
+	public final boolean noAnnotationTags;
+	private final Writer writer;
+	private final TreeMap<String, String> tags = new TreeMap<>(new PGNTagComparator());
+
+	public PGNWriter(OutputStream os)
+	{
+		this(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+	}
+
+	public PGNWriter(Writer writer)
+	{
+		this(writer, AlgebraicNotationVariation.SAN, Language.ENGLISH, false, false, false);
+	}
+
+	public PGNWriter(Writer writer, AlgebraicNotationVariation variation, Language language, boolean noTags, boolean noAnnotations, boolean noAnnotationTags)
+	{
+		this.writer = (writer instanceof BufferedWriter ? writer : new BufferedWriter(writer));
+		this.variation = variation;
+		this.language = language;
+		this.noTags = noTags;
+		this.noAnnotations = noAnnotations;
+		this.noAnnotationTags = noAnnotationTags;
+	}
+
+	/**
+	 * Writes the given game followed by an empty line.
+	 */
+	public PGNWriter write(Game game) throws IOException, ChessException
+	{
+		game.writePGN(this.writer, this.tags, this.noTags, this.noAnnotations, this.noAnnotationTags, this.variation, this.language);
+		this.writer.write('\n');
+		return this;
+	}
+
+	public PGNWriter write(Iterable<Game> games) throws IOException, ChessException
+	{
+		for(Game game : games)
+		{
+			this.write(game);
+		}
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		this.writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.writer.close();
+	}
+}
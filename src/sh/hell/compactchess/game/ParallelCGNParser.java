@@ -0,0 +1,103 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+final class ParallelCGNParser
+{
+	private ParallelCGNParser()
+	{
+	}
+
+	static ArrayList<Game> decode(byte[] block, boolean dontCalculate, boolean trusted) throws IOException, ChessException
+	{
+		final ArrayList<Game> games = new ArrayList<>();
+		final CGNReader reader = new CGNReader(block, dontCalculate, CGNVersion.V3).setTrusted(trusted);
+		Game game;
+		while((game = reader.readGame()) != null)
+		{
+			games.add(game);
+		}
+		return games;
+	}
+
+	/**
+	 * Waits for the given future and rethrows what its task has thrown.
+	 */
+	static <T> T get(Future<T> future) throws IOException, ChessException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch(ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if(cause instanceof ChessException)
+			{
+				throw (ChessException) cause;
+			}
+			if(cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Reads the V3 CGN blocks on the calling thread and decodes them on the given executor.
+	 *
+	 * @return The games in the order they appear in the stream.
+	 */
+	static ArrayList<Game> parse(InputStream is, final boolean dontCalculate, final boolean trusted, ExecutorService executor) throws IOException, ChessException
+	{
+		final CGNReader reader = new CGNReader(is, dontCalculate, CGNVersion.V3);
+		final ArrayList<Future<ArrayList<Game>>> blocks = new ArrayList<>();
+		try
+		{
+			byte[] block;
+			while((block = reader.readBlock()) != null)
+			{
+				final byte[] bytes = block;
+				blocks.add(executor.submit(new Callable<ArrayList<Game>>()
+				{
+					@Override
+					public ArrayList<Game> call() throws IOException, ChessException
+					{
+						return ParallelCGNParser.decode(bytes, dontCalculate, trusted);
+					}
+				}));
+			}
+			final ArrayList<Game> games = new ArrayList<>();
+			for(Future<ArrayList<Game>> future : blocks)
+			{
+				games.addAll(ParallelCGNParser.get(future));
+			}
+			return games;
+		}
+		finally
+		{
+			for(Future<ArrayList<Game>> future : blocks)
+			{
+				future.cancel(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+final class ParallelPGNParser
+{
+	private ParallelPGNParser()
+	{
+	}
+
+	/**
+	 * @return The start offsets of all games in the given PGN followed by its length.
+	 */
+	static int[] findGames(CharSequence pgn)
+	{
+		final PGNGameSplitter splitter = new PGNGameSplitter();
+		int[] offsets = new int[64];
+		int games = 1;
+		final int length = pgn.length();
+		for(int i = 0; i < length; i++)
+		{
+			if(splitter.next(pgn.charAt(i)))
+			{
+				if(games == offsets.length)
+				{
+					offsets = Arrays.copyOf(offsets, games * 2);
+				}
+				offsets[games++] = i;
+			}
+		}
+		offsets = Arrays.copyOf(offsets, games + 1);
+		offsets[games] = length;
+		return offsets;
+	}
+
+	static List<String> lines(CharSequence pgn, int start, int end)
+	{
+		final ArrayList<String> lines = new ArrayList<>();
+		int lineStart = start;
+		for(int i = start; i <= end; i++)
+		{
+			if(i == end || pgn.charAt(i) == '\n')
+			{
+				int lineEnd = i;
+				if(lineEnd > lineStart && pgn.charAt(lineEnd - 1) == '\r')
+				{
+					lineEnd--;
+				}
+				lines.add(pgn.subSequence(lineStart, lineEnd).toString());
+				lineStart = i + 1;
+			}
+		}
+		return lines;
+	}
+
+	static boolean hasContent(CharSequence pgn, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			if(!Character.isWhitespace(pgn.charAt(i)) && pgn.charAt(i) != 0xFEFF)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static ArrayList<Game> parse(final CharSequence pgn, final Language language, final boolean dontCalculate, final ForkJoinPool pool, final boolean keepOrder) throws ChessException
+	{
+		final int[] offsets = ParallelPGNParser.findGames(pgn);
+		return ParallelPGNParser.parse(new Source()
+		{
+			@Override
+			public Game parse(int i) throws ChessException
+			{
+				if(ParallelPGNParser.hasContent(pgn, offsets[i], offsets[i + 1]))
+				{
+					return Game.fromPGN(ParallelPGNParser.lines(pgn, offsets[i], offsets[i + 1]), language, dontCalculate);
+				}
+				return null;
+			}
+		}, 0, offsets.length - 1, pool, keepOrder);
+	}
+
+	static ArrayList<Game> parse(final Source source, final int from, final int to, final ForkJoinPool pool, final boolean keepOrder) throws ChessException
+	{
+		final int gamesPerTask = Math.max(1, (to - from) / (pool.getParallelism() * 8));
+		final List<Game> unordered = (keepOrder ? null : Collections.synchronizedList(new ArrayList<Game>(to - from)));
+		try
+		{
+			final ArrayList<Game> result = pool.invoke(new Task(source, from, to, gamesPerTask, unordered));
+			if(unordered != null)
+			{
+				synchronized(unordered)
+				{
+					return new ArrayList<>(unordered);
+				}
+			}
+			return result;
+		}
+		catch(RuntimeException e)
+		{
+			for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+			{
+				if(cause instanceof ChessException)
+				{
+					throw (ChessException) cause;
+				}
+			}
+			throw e;
+		}
+	}
+
+	interface Source
+	{
+		/**
+		 * @return The game with the given index or null if it has no content.
+		 */
+		Game parse(int i) throws ChessException;
+	}
+
+	private static final class Task extends RecursiveTask<ArrayList<Game>>
+	{
+		private static final long serialVersionUID = 1L;
+		private final Source source;
+		private final int from;
+		private final int to;
+		private final int gamesPerTask;
+		private final List<Game> unordered;
+
+		Task(Source source, int from, int to, int gamesPerTask, List<Game> unordered)
+		{
+			this.source = source;
+			this.from = from;
+			this.to = to;
+			this.gamesPerTask = gamesPerTask;
+			this.unordered = unordered;
+		}
+
+		@Override
+		protected ArrayList<Game> compute()
+		{
+			if(to - from > gamesPerTask)
+			{
+				final int middle = (from + to) >>> 1;
+				final Task left = new Task(source, from, middle, gamesPerTask, unordered);
+				left.fork();
+				final ArrayList<Game> games = new Task(source, middle, to, gamesPerTask, unordered).compute();
+				final ArrayList<Game> leftGames = left.join();
+				if(unordered != null)
+				{
+					return null;
+				}
+				leftGames.addAll(games);
+				return leftGames;
+			}
+			final ArrayList<Game> games = new ArrayList<>(to - from);
+			try
+			{
+				for(int i = from; i < to; i++)
+				{
+					final Game game = source.parse(i);
+					if(game != null)
+					{
+						games.add(game);
+					}
+				}
+			}
+			catch(ChessException e)
+			{
+				throw new RuntimeException(e);
+			}
+			if(unordered != null)
+			{
+				unordered.addAll(games);
+				return null;
+			}
+			return games;
+		}
+	}
+}
@@ -9,6 +9,7 @@ public enum PieceType
 	QUEEN(9, "♕", "♛"),
 	KING(0, "♔", "♚");
 
+	private static final PieceType[] values = PieceType.values();
 	public final byte materialValue;
 	public final String whiteSymbol;
 	public final String blackSymbol;
@@ -22,14 +23,11 @@ public enum PieceType
 
 	public static PieceType fromOrdinal(final byte ordinal)
 	{
-		for(PieceType pieceType : PieceType.values())
+		if(ordinal < 0 || ordinal >= values.length)
 		{
-			if(pieceType.ordinal() == ordinal)
-			{
-				return pieceType;
-			}
+			return null;
 		}
-		return null;
+		return values[ordinal];
 	}
 
 	public String getChar(Language language)
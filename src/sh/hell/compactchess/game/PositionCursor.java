@@ -0,0 +1,176 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the positions of a game, from the starting position to the one after the last move, by replaying its moves in place on a single copy of the game.
+ * The cursor itself is what {@link #next()} returns, so nothing is allocated per ply apart from what's asked for, like {@link #getFEN()}.
+ *
+ * @see Game#positions()
+ */
+@SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused"})
+public class PositionCursor implements Iterator<PositionCursor>, Iterable<PositionCursor>
+{
+	/**
+	 * Returned by the annotation getters if the move just played has no such annotation.
+	 */
+	public static final long NONE = Long.MIN_VALUE;
+	private final Game game;
+	private final Move[] moves;
+	private final long[] annotations = new long[3];
+	private int ply = -1;
+	private boolean annotationsParsed = false;
+
+	PositionCursor(Game game, Move[] moves)
+	{
+		this.game = game;
+		this.moves = moves;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return this.ply < this.moves.length;
+	}
+
+	/**
+	 * Plays the next move, or moves to the starting position the first time.
+	 *
+	 * @return This cursor.
+	 */
+	@Override
+	public PositionCursor next()
+	{
+		if(!this.hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		if(this.ply >= 0)
+		{
+			try
+			{
+				this.moves[this.ply].commitTrusted(this.game);
+			}
+			catch(ChessException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		this.ply++;
+		this.annotationsParsed = false;
+		return this;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<PositionCursor> iterator()
+	{
+		return this;
+	}
+
+	/**
+	 * @return The number of plies played to reach the current position, starting at 0 for the starting position.
+	 */
+	public int getPly()
+	{
+		return this.ply;
+	}
+
+	/**
+	 * @return The move which has just been played or null at the starting position.
+	 */
+	public Move getMove()
+	{
+		return (this.ply < 1 ? null : this.moves[this.ply - 1]);
+	}
+
+	public Color getToMove()
+	{
+		return this.game.toMove;
+	}
+
+	public String getFEN()
+	{
+		return this.game.getFEN();
+	}
+
+	public String getPositionalFEN()
+	{
+		return this.game.getPositionalFEN();
+	}
+
+	/**
+	 * @see Game#getHash()
+	 */
+	public long getHash()
+	{
+		return this.game.getHash();
+	}
+
+	/**
+	 * @return The game in the current position. It's changed by {@link #next()}, so copy it to keep it.
+	 */
+	public Game getGame()
+	{
+		return this.game;
+	}
+
+	private long annotation(int index)
+	{
+		if(!this.annotationsParsed)
+		{
+			this.annotations[0] = NONE;
+			this.annotations[1] = NONE;
+			this.annotations[2] = NONE;
+			final Move move = this.getMove();
+			if(move != null && move.hasAnnotation(false))
+			{
+				CGNAnnotations.parse(move.getAnnotation(false), this.annotations);
+			}
+			this.annotationsParsed = true;
+		}
+		return this.annotations[index];
+	}
+
+	/**
+	 * @return The clock of the player who has just moved in milliseconds, as annotated with [%clk], or {@link #NONE}.
+	 */
+	public long getClock()
+	{
+		return this.annotation(0);
+	}
+
+	/**
+	 * @return The time the move which has just been played took in milliseconds, as annotated with [%emt], or {@link #NONE}.
+	 */
+	public long getElapsed()
+	{
+		return this.annotation(1);
+	}
+
+	/**
+	 * @return The evaluation in centipawns, as annotated with [%eval], or {@link #NONE} if there is none or it's a mate.
+	 */
+	public long getEval()
+	{
+		final long eval = this.annotation(2);
+		return (eval == NONE || (eval & 1) != 0 ? NONE : eval >> 1);
+	}
+
+	/**
+	 * @return The number of moves until mate, as annotated with [%eval #n], or {@link #NONE}. It's negative if black mates.
+	 */
+	public long getMate()
+	{
+		final long eval = this.annotation(2);
+		return (eval == NONE || (eval & 1) == 0 ? NONE : eval >> 1);
+	}
+}
@@ -0,0 +1,105 @@
+package sh.hell.compactchess.game;
+
+import java.util.Map;
+
+/**
+ * A compact copy of everything needed to continue playing from a position: the board as one byte per square, the side to move, castling abilities, en passant, the counters and the repetitions.
+ * Restoring it doesn't parse a FEN and doesn't mark the game as not exportable.
+ */
+final class PositionSnapshot
+{
+	private final byte[] board = new byte[64];
+	private final Color toMove;
+	private final byte enPassantSquare;
+	private final short plyCount;
+	private final short drawPlyTimer;
+	private final boolean whiteCanCastle;
+	private final boolean whiteCanCastleQueenside;
+	private final boolean blackCanCastle;
+	private final boolean blackCanCastleQueenside;
+	private final byte whitechecks;
+	private final byte blackchecks;
+	private final EndReason claimableDraw;
+	private final String[] repetitionPositions;
+	private final int[] repetitions;
+
+	PositionSnapshot(Game game)
+	{
+		synchronized(game.pieces)
+		{
+			for(Square square : game.pieces)
+			{
+				// 0 is an empty square, otherwise the lower 3 bits are the piece type ordinal + 1 and the 4th bit is set for black.
+				this.board[square.index()] = (byte) ((square.pieceColor == Color.BLACK ? 0b1000 : 0) | (square.pieceType.ordinal() + 1));
+			}
+		}
+		this.toMove = game.toMove;
+		this.enPassantSquare = (game.enPassantSquare == null ? -1 : game.enPassantSquare.index());
+		this.plyCount = game.plyCount;
+		this.drawPlyTimer = game.drawPlyTimer;
+		this.whiteCanCastle = game.whiteCanCastle;
+		this.whiteCanCastleQueenside = game.whiteCanCastleQueenside;
+		this.blackCanCastle = game.blackCanCastle;
+		this.blackCanCastleQueenside = game.blackCanCastleQueenside;
+		this.whitechecks = game.whitechecks;
+		this.blackchecks = game.blackchecks;
+		this.claimableDraw = game.claimableDraw;
+		synchronized(game.repetitionPostitions)
+		{
+			this.repetitionPositions = new String[game.repetitionPostitions.size()];
+			this.repetitions = new int[this.repetitionPositions.length];
+			int i = 0;
+			for(Map.Entry<String, Integer> entry : game.repetitionPostitions.entrySet())
+			{
+				this.repetitionPositions[i] = entry.getKey();
+				this.repetitions[i++] = entry.getValue();
+			}
+		}
+	}
+
+	/**
+	 * Sets up the board, the side to move, castling abilities, en passant, the counters and the repetitions of the given game to the ones of this snapshot.
+	 */
+	void restore(Game game)
+	{
+		synchronized(game.pieces)
+		{
+			game.pieces.clear();
+			game.squares = new Square[64];
+			for(byte i = 0; i < 64; i++)
+			{
+				final byte piece = this.board[i];
+				final Square square;
+				if(piece == 0)
+				{
+					square = new Square((byte) (i % 8), (byte) (i / 8));
+				}
+				else
+				{
+					square = new Square((byte) (i % 8), (byte) (i / 8), ((piece & 0b1000) == 0 ? Color.WHITE : Color.BLACK), PieceType.fromOrdinal((byte) ((piece & 0b111) - 1)));
+					game.pieces.add(square);
+				}
+				game.squares[i] = square;
+			}
+		}
+		game.toMove = this.toMove;
+		game.enPassantSquare = (this.enPassantSquare == -1 ? null : game.squares[this.enPassantSquare]);
+		game.plyCount = this.plyCount;
+		game.drawPlyTimer = this.drawPlyTimer;
+		game.whiteCanCastle = this.whiteCanCastle;
+		game.whiteCanCastleQueenside = this.whiteCanCastleQueenside;
+		game.blackCanCastle = this.blackCanCastle;
+		game.blackCanCastleQueenside = this.blackCanCastleQueenside;
+		game.whitechecks = this.whitechecks;
+		game.blackchecks = this.blackchecks;
+		game.claimableDraw = this.claimableDraw;
+		synchronized(game.repetitionPostitions)
+		{
+			game.repetitionPostitions.clear();
+			for(int i = 0; i < this.repetitionPositions.length; i++)
+			{
+				game.repetitionPostitions.put(this.repetitionPositions[i], this.repetitions[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package sh.hell.compactchess.game;
+
+import sh.hell.compactchess.exceptions.ChessException;
+
+/**
+ * Replays moves which are known to be legal, e.g. because they're read from an archive we've written ourselves.
+ * Moves are neither validated nor is the game copied for every move, and checkmate, stalemate and insufficient material are only looked for after the last move.
+ */
+final class TrustedReplay
+{
+	private final Game game;
+	private String fen;
+	private boolean moved = false;
+
+	TrustedReplay(Game game)
+	{
+		this.game = game;
+		this.fen = game.getPositionalFEN(true);
+	}
+
+	Move move(Square fromSquare, Square toSquare, PieceType promoteTo) throws ChessException
+	{
+		return this.commit(new Move(this.game, fromSquare, toSquare, promoteTo, this.fen));
+	}
+
+	Move move(String move, Language language) throws ChessException
+	{
+		return this.commit(this.game.move(move, language, this.fen));
+	}
+
+	private Move commit(Move move) throws ChessException
+	{
+		this.fen = move.commitTrusted(this.game);
+		this.moved = true;
+		return move;
+	}
+
+	void finish() throws ChessException
+	{
+		if(this.moved)
+		{
+			this.game.recalculateEndReason(this.game.isCheck());
+		}
+	}
+}
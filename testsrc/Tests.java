@@ -1,29 +1,66 @@
 import org.junit.Test;
+import sh.hell.compactchess.Batch;
 import sh.hell.compactchess.engine.Engine;
 import sh.hell.compactchess.exceptions.ChessException;
+import sh.hell.compactchess.game.AlgebraicNotationCache;
 import sh.hell.compactchess.game.AlgebraicNotationVariation;
+import sh.hell.compactchess.game.CGNIndex;
+import sh.hell.compactchess.game.CGNMoveEncoding;
+import sh.hell.compactchess.game.CGNReader;
 import sh.hell.compactchess.game.CGNVersion;
+import sh.hell.compactchess.game.CGNWriter;
 import sh.hell.compactchess.game.CastlingType;
 import sh.hell.compactchess.game.Color;
+import sh.hell.compactchess.game.CompressedCGNFile;
+import sh.hell.compactchess.game.CompressedCGNReader;
+import sh.hell.compactchess.game.CompressedCGNWriter;
 import sh.hell.compactchess.game.EndReason;
 import sh.hell.compactchess.game.Game;
+import sh.hell.compactchess.game.GameCorpus;
+import sh.hell.compactchess.game.GameDeduplicator;
+import sh.hell.compactchess.game.GameExporter;
+import sh.hell.compactchess.game.GameHeader;
+import sh.hell.compactchess.game.GameIngester;
+import sh.hell.compactchess.game.GamePipeline;
+import sh.hell.compactchess.game.GameValidator;
 import sh.hell.compactchess.game.GameStatus;
 import sh.hell.compactchess.game.Language;
+import sh.hell.compactchess.game.LazyGame;
+import sh.hell.compactchess.game.MappedPGNFile;
 import sh.hell.compactchess.game.Move;
+import sh.hell.compactchess.game.OpeningCache;
+import sh.hell.compactchess.game.PGNReader;
+import sh.hell.compactchess.game.PGNWriter;
 import sh.hell.compactchess.game.PieceType;
+import sh.hell.compactchess.game.PositionCursor;
 import sh.hell.compactchess.game.Square;
 import sh.hell.compactchess.game.TimeControl;
 import sh.hell.compactchess.game.Variant;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertNotEquals;
@@ -382,6 +419,188 @@ public class Tests
 		visualize(game);
 	}
 
+	@Test(timeout = 5000L)
+	public void algebraicNotationCache() throws ChessException
+	{
+		System.out.println("Algebraic Notation Cache\n");
+		final Game game = Game.fromPGN("1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Qe2 b5 7. Bb3 O-O 8. c3 d5 9. exd5 Nxd5 10. Nxe5 Nf4 11. Qe4 Nxe5 12. Qxa8 Qd3 *").get(0);
+		final String pgn = game.toPGN();
+		final AlgebraicNotationCache cache = new AlgebraicNotationCache(64);
+		Move.algebraicNotationCache = cache;
+		try
+		{
+			assertEquals(pgn, game.toPGN());
+			assertEquals(0, cache.getHits());
+			assertEquals(24, cache.size());
+			assertEquals(pgn, game.toPGN());
+			assertEquals(24, cache.getHits());
+			assertEquals("Qxa8", game.moves.get(22).toAlgebraicNotation());
+			assertEquals("Qxa8", game.moves.get(22).toAlgebraicNotation());
+			assertEquals("Dxa8", game.moves.get(22).toAlgebraicNotation(AlgebraicNotationVariation.SAN, Language.GERMAN));
+			assertTrue(cache.getHitRate() > 0);
+		}
+		finally
+		{
+			Move.algebraicNotationCache = null;
+		}
+	}
+
+	@Test(timeout = 10000L)
+	public void openingCache() throws ChessException, IOException
+	{
+		System.out.println("Opening Cache\n");
+		final String pgn = "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5 7. Bb3 d6 1/2-1/2\n\n" +
+				"1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Qe2 b5 7. Bb3 O-O 8. c3 d5 9. exd5 Nxd5 10. Nxe5 Nf4 11. Qe4 Nxe5 12. Qxa8 Qd3 *\n\n" +
+				"1. e4 e5 2. Qh5 Nc6 3. Bc4 Nf6 4. Qxf7# 1-0\n\n" +
+				"1. e4 e5 2. Qh5 Nc6 3. Bc4 Nf6 4. Qxf7# 1-0\n\n" +
+				"1. e4 d5 2. e5 f5 3. exf6 { en passant } exf6 4. Nf3 Bd6 5. Be2 Ne7 6. O-O O-O 7. Nc3 *\n\n" +
+				"1. e4 d5 2. e5 f5 3. exf6 { en passant } exf6 4. Nf3 Bd6 5. Be2 Ne7 6. O-O O-O 7. d4 1-0\n\n" +
+				"1. Nf3 Nf6 2. Ng1 Ng8 3. Nf3 Nf6 4. Ng1 Ng8 5. Nf3 *\n\n" +
+				"1. Nf3 Nf6 2. Ng1 Ng8 3. Nf3 Nf6 4. Ng1 Ng8 5. e4 *\n";
+		final ArrayList<Game> expected = Game.fromPGN(pgn);
+		final ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+		new CGNWriter(indexed, CGNVersion.V3).setMoveEncoding(CGNMoveEncoding.INDEX).write(expected).close();
+		final byte[] cgn = indexed.toByteArray();
+		final ByteArrayOutputStream coordinates = new ByteArrayOutputStream();
+		new CGNWriter(coordinates, CGNVersion.V2).write(expected).flush();
+		final byte[] cgnV2 = coordinates.toByteArray();
+		final OpeningCache cache = new OpeningCache(1000, 10);
+		Game.openingCache = cache;
+		try
+		{
+			for(int pass = 0; pass < 2; pass++)
+			{
+				assertSameGames(expected, Game.fromPGN(pgn));
+				assertSameGames(expected, Game.fromPGN(pgn, Language.ENGLISH, false, true));
+				assertSameGames(expected, Game.fromCGN(new ByteArrayInputStream(cgn), false, CGNVersion.V3));
+				assertSameGames(expected, Game.fromCGN(new ByteArrayInputStream(cgn), false, CGNVersion.V3, true));
+				assertSameGames(expected, Game.fromCGN(new ByteArrayInputStream(cgnV2), false, CGNVersion.V2));
+			}
+			assertTrue(cache.getHits() > 0);
+			assertTrue(cache.getHitRate() > 0.5);
+			assertTrue(cache.size() <= 1000);
+			final OpeningCache small = new OpeningCache(8, 10);
+			Game.openingCache = small;
+			assertSameGames(expected, Game.fromPGN(pgn));
+			assertEquals(8, small.size());
+		}
+		finally
+		{
+			Game.openingCache = null;
+		}
+	}
+
+	private static void assertSameGames(ArrayList<Game> expected, ArrayList<Game> actual) throws ChessException
+	{
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++)
+		{
+			final Game a = expected.get(i);
+			final Game b = actual.get(i);
+			assertEquals(a.toPGN(true, false, false), b.toPGN(true, false, false));
+			assertEquals(a.getFEN(), b.getFEN());
+			assertEquals(a.status, b.status);
+			assertEquals(a.endReason, b.endReason);
+			assertEquals(a.claimableDraw, b.claimableDraw);
+			assertEquals(a.canDrawBeClaimed(), b.canDrawBeClaimed());
+			assertEquals(a.moves, b.moves);
+			assertEquals(a.moves.get(a.moves.size() - 1).toAlgebraicNotation(), b.moves.get(b.moves.size() - 1).toAlgebraicNotation());
+		}
+	}
+
+	@Test(timeout = 20000L)
+	public void positionAt() throws ChessException
+	{
+		System.out.println("Position At\n");
+		final Game game = new Game().setTag("Event", "Scrubbing").start();
+		final ArrayList<String> fens = new ArrayList<>();
+		fens.add(game.getFEN());
+		final Random random = new Random(1337);
+		while(game.status == GameStatus.ONGOING && game.moves.size() < 200)
+		{
+			final ArrayList<Move> moves = game.getPossibleMoves();
+			moves.get(random.nextInt(moves.size())).commit();
+			fens.add(game.getFEN());
+		}
+		final int plies = game.moves.size();
+		assertTrue(plies > 2 * Game.CHECKPOINT_INTERVAL);
+		for(int ply : new int[]{plies, 0, 17, 16, 15, plies - 1, 1, 33, plies / 2, 32, plies})
+		{
+			final Game position = game.positionAt(ply);
+			assertEquals(fens.get(ply), position.getFEN());
+			assertEquals(ply, position.moves.size());
+			assertEquals("Scrubbing", position.tags.get("Event"));
+		}
+		assertEquals(game.status, game.positionAt(plies).status);
+		for(int ply = plies; ply >= 0; ply--)
+		{
+			assertEquals(fens.get(ply), game.positionAt(ply).getFEN());
+		}
+		try
+		{
+			game.positionAt(plies + 1);
+			fail();
+		}
+		catch(IndexOutOfBoundsException ignored)
+		{
+		}
+	}
+
+	@Test(timeout = 5000L)
+	public void positions() throws ChessException
+	{
+		System.out.println("Positions\n");
+		final Game game = Game.fromPGN("1. e4 { [%clk 0:03:00] [%eval 0.25] } e5 { [%clk 0:02:58.5] [%emt 0:00:01.5] } 2. Qh5 { [%eval #-3] } Nc6 3. Bc4 Nf6 4. Qxf7# 1-0").get(0);
+		final ArrayList<String> fens = new ArrayList<>();
+		final ArrayList<Long> hashes = new ArrayList<>();
+		final PositionCursor cursor = game.positions();
+		int plies = 0;
+		for(PositionCursor position : cursor)
+		{
+			assertSame(cursor, position);
+			assertEquals(plies++, position.getPly());
+			fens.add(position.getFEN());
+			hashes.add(position.getHash());
+			assertEquals(position.getPly() % 2 == 0 ? Color.WHITE : Color.BLACK, position.getToMove());
+			if(position.getPly() == 0)
+			{
+				assertNull(position.getMove());
+				assertEquals(PositionCursor.NONE, position.getClock());
+			}
+			else
+			{
+				assertSame(game.moves.get(position.getPly() - 1), position.getMove());
+			}
+			if(position.getPly() == 1)
+			{
+				assertEquals(180000, position.getClock());
+				assertEquals(25, position.getEval());
+				assertEquals(PositionCursor.NONE, position.getMate());
+				assertEquals(PositionCursor.NONE, position.getElapsed());
+			}
+			else if(position.getPly() == 2)
+			{
+				assertEquals(178500, position.getClock());
+				assertEquals(1500, position.getElapsed());
+				assertEquals(PositionCursor.NONE, position.getEval());
+			}
+			else if(position.getPly() == 3)
+			{
+				assertEquals(-3, position.getMate());
+				assertEquals(PositionCursor.NONE, position.getEval());
+			}
+		}
+		assertEquals(game.moves.size() + 1, plies);
+		for(int ply = 0; ply < plies; ply++)
+		{
+			final Game position = game.positionAt(ply);
+			assertEquals(position.getFEN(), fens.get(ply));
+			assertEquals(position.getHash(), (long) hashes.get(ply));
+		}
+		assertEquals(game.getFEN(), fens.get(plies - 1));
+		assertFalse(cursor.hasNext());
+	}
+
 	@Test(timeout = 1000L)
 	public void fen() throws ChessException
 	{
@@ -433,6 +652,149 @@ public class Tests
 		assertEquals("e4", game.moves.get(0).toAlgebraicNotation());
 	}
 
+	@Test(timeout = 5000L)
+	public void pgnReader() throws ChessException, IOException
+	{
+		System.out.println("PGN Reader\n");
+		final String pgn = "[Event \"A\"]\n\n1. e4 { Comment\n\nspanning lines } e5 1-0\n[Event \"B\"]\n[Black \"X\"]\n\n1. d4 d5 2. c4 *\n\n\n1. f3 e5 2. g4 Qh4# 0-1\n";
+		final ArrayList<Game> games = Game.fromPGN(pgn);
+		assertEquals(3, games.size());
+		final PGNReader reader = new PGNReader(new ByteArrayInputStream(pgn.getBytes(Charset.forName("UTF-8"))));
+		int i = 0;
+		for(Game game : reader)
+		{
+			visualize(game);
+			assertEquals(games.get(i).toUCI(), game.toUCI());
+			assertEquals(games.get(i).tags.get("Event"), game.tags.get("Event"));
+			assertEquals(games.get(i++).status, game.status);
+		}
+		reader.close();
+		assertEquals(3, i);
+		assertEquals("A", games.get(0).tags.get("Event"));
+		assertEquals("Comment spanning lines", games.get(0).moves.get(0).getAnnotation());
+		assertEquals(GameStatus.WHITE_WINS, games.get(0).status);
+		assertEquals("X", games.get(1).tags.get("Black"));
+		assertEquals(3, games.get(1).moves.size());
+		assertEquals(EndReason.CHECKMATE, games.get(2).endReason);
+	}
+
+	@Test(timeout = 20000L)
+	public void parallelPGN() throws ChessException
+	{
+		System.out.println("Parallel PGN\n");
+		final StringBuilder pgn = new StringBuilder();
+		for(int i = 0; i < 40; i++)
+		{
+			pgn.append("[Round \"").append(i).append("\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 1/2-1/2\n");
+		}
+		final ArrayList<Game> games = Game.fromPGNParallel(pgn.toString());
+		assertEquals(40, games.size());
+		for(int i = 0; i < 40; i++)
+		{
+			assertEquals(String.valueOf(i), games.get(i).tags.get("Round"));
+			assertEquals(6, games.get(i).moves.size());
+			assertEquals(GameStatus.DRAW, games.get(i).status);
+		}
+		assertEquals(40, Game.fromPGNParallel(pgn.toString(), Language.ENGLISH, false, false).size());
+		try
+		{
+			Game.fromPGNParallel(pgn.append("\n1. e4 e5 2. Ke3 *\n").toString());
+			fail();
+		}
+		catch(ChessException ignored)
+		{
+		}
+	}
+
+	@Test(timeout = 20000L)
+	public void mappedPGN() throws ChessException, IOException
+	{
+		System.out.println("Mapped PGN\n");
+		final File file = File.createTempFile("compactchess", ".pgn");
+		file.deleteOnExit();
+		final FileOutputStream os = new FileOutputStream(file);
+		for(int i = 0; i < 20; i++)
+		{
+			os.write(("[Round \"" + i + "\"]\n[White \"Dvořák\"]\n\n1. d4 Nf6 2. c4 e6 3. Nc3 Bb4 0-1\n\n").getBytes(Charset.forName("UTF-8")));
+		}
+		os.close();
+		final MappedPGNFile pgn = new MappedPGNFile(file);
+		assertEquals(20, pgn.size());
+		final Game game = pgn.getGame(13);
+		assertEquals("13", game.tags.get("Round"));
+		assertEquals("Dvořák", game.tags.get("White"));
+		assertEquals("d2d4 g8f6 c2c4 e7e6 b1c3 f8b4", game.toUCI());
+		final ForkJoinPool pool = new ForkJoinPool();
+		final ArrayList<Game> games = pgn.getGames(pool, true);
+		pool.shutdown();
+		assertEquals(20, games.size());
+		for(int i = 0; i < 20; i++)
+		{
+			assertEquals(String.valueOf(i), games.get(i).tags.get("Round"));
+			assertEquals(GameStatus.BLACK_WINS, games.get(i).status);
+		}
+		assertEquals(3, pgn.getGames(4, 7).size());
+		try
+		{
+			pgn.getGames(7, 4);
+			fail("A reversed range was accepted");
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			assertEquals("Games 7 to 4 of 20", e.getMessage());
+		}
+		pgn.close();
+	}
+
+	@Test(timeout = 1000L)
+	public void headers() throws ChessException, IOException
+	{
+		System.out.println("Headers\n");
+		final String pgn = "[Event \"First\"]\n[WhiteElo \"2400\"]\n[Result \"1-0\"]\n\n1. e4 { [Event \"Not a tag\"] } e5 1-0\n\n[Event \"Second\"]\n[Result \"1/2-1/2\"]\n\n1. d4 d5 1/2-1/2\n";
+		final ArrayList<GameHeader> headers = Game.headersFromPGN(pgn);
+		assertEquals(2, headers.size());
+		assertEquals("First", headers.get(0).getTag("Event"));
+		assertEquals(2400, headers.get(0).getElo(Color.WHITE));
+		assertEquals(-1, headers.get(0).getElo(Color.BLACK));
+		assertEquals(GameStatus.WHITE_WINS, headers.get(0).status);
+		assertEquals("Second", headers.get(1).getTag("Event"));
+		assertEquals(GameStatus.DRAW, headers.get(1).status);
+		for(CGNVersion version : CGNVersion.values())
+		{
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			for(Game game : Game.fromPGN(pgn))
+			{
+				game.moves.get(0).annotate("Annotation!");
+				game.toCGN(os, version);
+			}
+			final ArrayList<GameHeader> cgnHeaders = Game.headersFromCGN(new ByteArrayInputStream(os.toByteArray()), version);
+			assertEquals(2, cgnHeaders.size());
+			assertEquals("First", cgnHeaders.get(0).getTag("Event"));
+			assertEquals(2400, cgnHeaders.get(0).getElo(Color.WHITE));
+			assertEquals(GameStatus.WHITE_WINS, cgnHeaders.get(0).status);
+			assertEquals(2, cgnHeaders.get(0).plyCount);
+			assertEquals("Second", cgnHeaders.get(1).getTag("Event"));
+			assertEquals(GameStatus.DRAW, cgnHeaders.get(1).status);
+		}
+		// The PGN parser ignores the Result tag, so scanning headers must not fail on one it doesn't know either.
+		final String oddResult = "[Event \"Odd\"]\n[Result \"foo\"]\n\n1. e4 *\n\n[Event \"Fine\"]\n\n1. d4 *\n";
+		final ArrayList<Game> games = Game.fromPGN(oddResult);
+		final PGNReader headerReader = new PGNReader(new ByteArrayInputStream(oddResult.getBytes(StandardCharsets.UTF_8)));
+		final PGNReader lazyReader = new PGNReader(new ByteArrayInputStream(oddResult.getBytes(StandardCharsets.UTF_8)));
+		for(Game game : games)
+		{
+			final GameHeader header = headerReader.readHeader();
+			final LazyGame lazyGame = lazyReader.readLazyGame();
+			assertEquals(game.tags.get("Event"), header.getTag("Event"));
+			assertEquals(game.tags.get("Event"), lazyGame.getTag("Event"));
+			assertEquals(game.status, header.status);
+			assertEquals(game.status, lazyGame.getStatus());
+			assertEquals(game.toUCI(), lazyGame.getGame().toUCI());
+		}
+		assertNull(headerReader.readHeader());
+		assertNull(lazyReader.readLazyGame());
+	}
+
 	@Test(timeout = 1000L)
 	public void cgn() throws ChessException, IOException
 	{
@@ -469,6 +831,919 @@ public class Tests
 		assertEquals("Annotation!", game_.moves.get(0).getAnnotation());
 	}
 
+	@Test(timeout = 1000L)
+	public void cgnReader() throws ChessException, IOException
+	{
+		System.out.println("CGN Reader\n");
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final ArrayList<Game> games = Game.fromPGN("[Event \"Ünïcödé\"]\n\n1. e4 { A rather long annotation to span several buffer refills } e5 2. Nf3 Nc6 1-0\n\n[FEN \"3k4/8/8/8/8/8/7p/R3K3 b Q -\"]\n\n1... h1=Q 2. O-O-O+ *\n");
+		for(Game game : games)
+		{
+			game.toCGN(os);
+		}
+		// Hands out a single byte per read and never reports any available bytes, like a pipe might.
+		final InputStream is = new FilterInputStream(new ByteArrayInputStream(os.toByteArray()))
+		{
+			@Override
+			public int available()
+			{
+				return 0;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				return super.read(b, off, Math.min(1, len));
+			}
+		};
+		final CGNReader reader = new CGNReader(is, false, CGNVersion.latest, 16);
+		int i = 0;
+		for(Game game : reader)
+		{
+			assertEquals(games.get(i).toUCI(), game.toUCI());
+			assertEquals(games.get(i).status, game.status);
+			assertEquals(games.get(i).tags.get("Event"), game.tags.get("Event"));
+			i++;
+		}
+		assertEquals(2, i);
+		assertEquals(os.size(), reader.getPosition());
+		assertEquals("A rather long annotation to span several buffer refills", Game.fromCGN(new ByteArrayInputStream(os.toByteArray())).get(0).moves.get(0).getAnnotation());
+	}
+
+	@Test(timeout = 5000L)
+	public void cgnBlocks() throws ChessException, IOException
+	{
+		System.out.println("CGN Blocks\n");
+		final ArrayList<Game> games = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+		{
+			games.add(Game.fromPGN("[Round \"" + i + "\"]\n\n1. e4 { Ünïcödé } e5 2. Nf3 Nc6 3. Bb5 a6 1/2-1/2\n").get(0));
+		}
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new CGNWriter(os, CGNVersion.V3).setBlockSize(4).write(games).flush();
+		final byte[] cgn = os.toByteArray();
+		final CGNReader blockReader = new CGNReader(new ByteArrayInputStream(cgn), false, CGNVersion.V3);
+		int blocks = 0;
+		while(blockReader.readBlock() != null)
+		{
+			blocks++;
+		}
+		assertEquals(3, blocks);
+		final ArrayList<Game> sequential = Game.fromCGN(new ByteArrayInputStream(cgn), false, CGNVersion.V3);
+		final ArrayList<Game> parallel = Game.fromCGNParallel(new ByteArrayInputStream(cgn), false, true);
+		assertEquals(10, sequential.size());
+		assertEquals(10, parallel.size());
+		for(int i = 0; i < 10; i++)
+		{
+			for(Game game : new Game[]{sequential.get(i), parallel.get(i)})
+			{
+				assertEquals(String.valueOf(i), game.tags.get("Round"));
+				assertEquals(games.get(i).toUCI(), game.toUCI());
+				assertEquals(GameStatus.DRAW, game.status);
+				assertEquals("Ünïcödé", game.moves.get(0).getAnnotation());
+			}
+		}
+		assertEquals(10, Game.headersFromCGN(new ByteArrayInputStream(cgn), CGNVersion.V3).size());
+		cgn[cgn.length - 3] ^= 0x01;
+		try
+		{
+			Game.fromCGN(new ByteArrayInputStream(cgn), false, CGNVersion.V3);
+			fail("A corrupted block was decoded");
+		}
+		catch(ChessException ignored)
+		{
+		}
+	}
+
+	@Test(timeout = 5000L)
+	public void cgnMoveIndex() throws ChessException, IOException
+	{
+		System.out.println("CGN Move Index\n");
+		final ArrayList<Game> games = Game.fromPGN("[Event \"Castling and en passant\"]\n\n1. e4 Nf6 2. e5 d5 3. exd6 e6 4. Nf3 Be7 5. Bc4 O-O 6. O-O Nc6 7. dxe7 Nxe7 8. Re1 Ng6 *\n\n" +
+				"[FEN \"3k4/6P1/8/8/8/8/7p/R3K3 b Q -\"]\n\n1... h1=N 2. O-O-O+ Ke7 3. g8=R 1-0\n\n" +
+				"[Variant \"Chess960\"]\n[FEN \"3rk3/8/8/8/8/8/8/4KR2 w Kq -\"]\n\n1. O-O O-O-O 1/2-1/2\n");
+		final ByteArrayOutputStream coordinates = new ByteArrayOutputStream();
+		new CGNWriter(coordinates, CGNVersion.V3).write(games).flush();
+		final ByteArrayOutputStream index = new ByteArrayOutputStream();
+		new CGNWriter(index, CGNVersion.V3).setMoveEncoding(CGNMoveEncoding.INDEX).write(games).flush();
+		int plies = 0;
+		for(Game game : games)
+		{
+			plies += game.moves.size();
+		}
+		assertEquals(coordinates.size() - plies, index.size());
+		final ArrayList<Game> decoded = Game.fromCGN(new ByteArrayInputStream(index.toByteArray()), false, CGNVersion.V3);
+		final ArrayList<Game> trusted = Game.fromCGN(new ByteArrayInputStream(index.toByteArray()), false, CGNVersion.V3, true);
+		final ArrayList<GameHeader> headers = Game.headersFromCGN(new ByteArrayInputStream(index.toByteArray()), CGNVersion.V3);
+		for(int i = 0; i < games.size(); i++)
+		{
+			assertEquals(games.get(i).toUCI(), decoded.get(i).toUCI());
+			assertEquals(games.get(i).getFEN(), decoded.get(i).getFEN());
+			assertEquals(games.get(i).status, decoded.get(i).status);
+			assertEquals(games.get(i).getFEN(), trusted.get(i).getFEN());
+			assertEquals(games.get(i).moves.size(), headers.get(i).plyCount);
+		}
+		// The moves which are indexed mustn't depend on castling abilities, which are out of date in games that were loaded without calculation.
+		final String kingWalkPGN = "1. e4 e5 2. Ke2 Ke7 3. Ke1 Ke8 4. Nf3 Nf6 5. Bc4 Bc5 6. Rf1 Rf8 7. Rh1 Rh8 8. Nc3 Nc6 *\n";
+		for(boolean writerDontCalculate : new boolean[]{false, true})
+		{
+			final ArrayList<Game> kingWalk = Game.fromPGN(kingWalkPGN, Language.ENGLISH, writerDontCalculate);
+			final ByteArrayOutputStream kingWalkIndex = new ByteArrayOutputStream();
+			new CGNWriter(kingWalkIndex, CGNVersion.V3).setMoveEncoding(CGNMoveEncoding.INDEX).write(kingWalk).flush();
+			for(boolean readerDontCalculate : new boolean[]{false, true})
+			{
+				assertEquals(kingWalk.get(0).toUCI(), Game.fromCGN(new ByteArrayInputStream(kingWalkIndex.toByteArray()), readerDontCalculate, CGNVersion.V3).get(0).toUCI());
+			}
+		}
+		try
+		{
+			new CGNWriter(index, CGNVersion.V2).setMoveEncoding(CGNMoveEncoding.INDEX);
+			fail("Move index encoding was accepted for V2");
+		}
+		catch(IllegalArgumentException ignored)
+		{
+		}
+	}
+
+	@Test(timeout = 5000L)
+	public void cgnTagDictionary() throws ChessException, IOException
+	{
+		System.out.println("CGN Tag Dictionary\n");
+		final ArrayList<Game> games = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+		{
+			games.add(Game.fromPGN("[Event \"Rated Blitz game\"]\n[Round \"" + i + "\"]\n[White \"Dvořák\"]\n[Black \"Smetana\"]\n[Opening \"" + (i % 2 == 0 ? "Ruy Lopez" : "Italian Game") + "\"]\n\n1. e4 e5 2. Nf3 Nc6 1-0\n").get(0));
+		}
+		final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		new CGNWriter(plain, CGNVersion.V3).setBlockSize(4).write(games).flush();
+		final ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+		new CGNWriter(dictionary, CGNVersion.V3).setBlockSize(4).setTagDictionary(true).write(games).flush();
+		assertTrue(dictionary.size() < plain.size());
+		final ArrayList<Game> decoded = Game.fromCGN(new ByteArrayInputStream(dictionary.toByteArray()), false, CGNVersion.V3);
+		final ArrayList<GameHeader> headers = Game.headersFromCGN(new ByteArrayInputStream(dictionary.toByteArray()), CGNVersion.V3);
+		assertEquals(10, decoded.size());
+		for(int i = 0; i < 10; i++)
+		{
+			assertEquals(games.get(i).tags, decoded.get(i).tags);
+			assertEquals(games.get(i).toUCI(), decoded.get(i).toUCI());
+			assertEquals(games.get(i).tags.get("Opening"), headers.get(i).getTag("Opening"));
+			assertSame("Dvořák".intern(), decoded.get(i).tags.get("White"));
+		}
+		assertSame(decoded.get(1).tags.get("Opening"), decoded.get(3).tags.get("Opening"));
+		// Lazy games are decoded straight from their offset in the block, so they need the strings of the games before them.
+		final CGNReader lazyReader = new CGNReader(new ByteArrayInputStream(dictionary.toByteArray()), false, CGNVersion.V3);
+		final ArrayList<LazyGame> lazyGames = new ArrayList<>();
+		LazyGame lazyGame;
+		while((lazyGame = lazyReader.readLazyGame()) != null)
+		{
+			lazyGames.add(lazyGame);
+		}
+		assertEquals(10, lazyGames.size());
+		for(int i = 9; i >= 0; i--)
+		{
+			assertEquals(games.get(i).tags, lazyGames.get(i).getGame().tags);
+			assertEquals(games.get(i).toUCI(), lazyGames.get(i).getGame().toUCI());
+		}
+		try
+		{
+			new CGNWriter(plain, CGNVersion.V2).setTagDictionary(true);
+			fail("A tag dictionary was accepted for V2");
+		}
+		catch(IllegalArgumentException ignored)
+		{
+		}
+	}
+
+	@Test(timeout = 5000L)
+	public void cgnAnnotationRecords() throws ChessException, IOException
+	{
+		System.out.println("CGN Annotation Records\n");
+		final Game game = Game.fromPGN("[TimeControl \"180+2\"]\n\n1. e4 { [%eval 0.17] [%clk 0:03:00] } 1... e5 { [%eval -0.05] [%clk 0:03:00] } 2. Nf3 { Book [%clk 0:02:58.5] [%emt 0:00:03.5] } 2... Nc6 { [%eval #-3] [%clk 0:02:59] } 3. Bb5 { [%clk 00:02:55] } 3... a6 { [%clk 10:02:55] still book } 1-0\n").get(0);
+		final ByteArrayOutputStream v2 = new ByteArrayOutputStream();
+		game.toCGN(v2, CGNVersion.V2);
+		final ByteArrayOutputStream v3 = new ByteArrayOutputStream();
+		game.toCGN(v3, CGNVersion.V3);
+		assertTrue(v3.size() < v2.size());
+		final Game decoded = Game.fromCGN(new ByteArrayInputStream(v3.toByteArray()), false, CGNVersion.V3).get(0);
+		for(int i = 0; i < game.moves.size(); i++)
+		{
+			assertEquals(game.moves.get(i).getAnnotation(), decoded.moves.get(i).getAnnotation());
+		}
+		assertEquals(6, Game.headersFromCGN(new ByteArrayInputStream(v3.toByteArray()), CGNVersion.V3).get(0).plyCount);
+	}
+
+	@Test(timeout = 10000L)
+	public void compressedCGN() throws ChessException, IOException
+	{
+		System.out.println("Compressed CGN\n");
+		final ArrayList<Game> games = new ArrayList<>();
+		for(int i = 0; i < 50; i++)
+		{
+			games.add(Game.fromPGN("[Event \"Rated Blitz game\"]\n[Round \"" + i + "\"]\n\n1. e4 { [%clk 0:03:00] } 1... e5 { [%clk 0:03:00] } 2. Nf3 { [%clk 0:02:58] } 2... Nc6 { [%clk 0:02:57] } 1/2-1/2\n").get(0));
+		}
+		final File file = File.createTempFile("compactchess", ".cgnz");
+		file.deleteOnExit();
+		final CompressedCGNWriter writer = new CompressedCGNWriter(new FileOutputStream(file));
+		writer.getWriter().setBlockSize(8).setTagDictionary(true);
+		writer.write(games).close();
+		final CompressedCGNReader reader = new CompressedCGNReader(new FileInputStream(file));
+		int i = 0;
+		for(Game game : reader)
+		{
+			assertEquals(String.valueOf(i), game.tags.get("Round"));
+			assertEquals(games.get(i).toUCI(), game.toUCI());
+			assertEquals(games.get(i).moves.get(3).getAnnotation(), game.moves.get(3).getAnnotation());
+			i++;
+		}
+		reader.close();
+		assertEquals(50, i);
+		final CompressedCGNFile compressed = new CompressedCGNFile(file);
+		assertEquals(50, compressed.size());
+		assertEquals(7, compressed.getFrameCount());
+		for(int game : new int[]{0, 7, 8, 37, 49})
+		{
+			assertEquals(String.valueOf(game), compressed.getGame(game).tags.get("Round"));
+		}
+		compressed.close();
+	}
+
+	@Test(timeout = 60000L)
+	public void compressedCGNBenchmark() throws ChessException, IOException
+	{
+		System.out.println("Compressed CGN Benchmark\n");
+		final ArrayList<Game> games = new ArrayList<>();
+		for(int i = 0; i < 500; i++)
+		{
+			games.add(Game.fromPGN("[Event \"Rated Blitz game\"]\n[Site \"https://lichess.org/" + Integer.toString(i * 7919, 36) + "\"]\n[White \"Player" + (i % 20) + "\"]\n[Black \"Player" + (i % 13) + "\"]\n[Opening \"Ruy Lopez: Morphy Defense\"]\n\n" +
+					"1. e4 { [%clk 0:03:00] } 1... e5 { [%clk 0:03:00] } 2. Nf3 { [%clk 0:02:58] } 2... Nc6 { [%clk 0:02:57] } 3. Bb5 { [%clk 0:02:55] } 3... a6 { [%clk 0:02:54] } 4. Ba4 { [%clk 0:02:52] } 4... Nf6 { [%clk 0:02:50] } 5. O-O { [%clk 0:02:49] } 5... Be7 { [%clk 0:02:" + (10 + i % 40) + "] } 1-0\n").get(0));
+		}
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		new CGNWriter(raw, CGNVersion.V3).write(games).flush();
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new CompressedCGNWriter(compressed).write(games).close();
+		long rawTime = Long.MAX_VALUE;
+		long compressedTime = Long.MAX_VALUE;
+		for(int run = 0; run < 3; run++)
+		{
+			long start = System.nanoTime();
+			assertEquals(500, Game.fromCGN(new ByteArrayInputStream(raw.toByteArray()), false, CGNVersion.V3, true).size());
+			rawTime = Math.min(rawTime, System.nanoTime() - start);
+			start = System.nanoTime();
+			final CompressedCGNReader reader = new CompressedCGNReader(new ByteArrayInputStream(compressed.toByteArray())).setTrusted(true);
+			int decoded = 0;
+			while(reader.readGame() != null)
+			{
+				decoded++;
+			}
+			reader.close();
+			assertEquals(500, decoded);
+			compressedTime = Math.min(compressedTime, System.nanoTime() - start);
+		}
+		System.out.println("Raw CGN:        " + raw.size() + " bytes, decoded in " + (rawTime / 1000000) + " ms");
+		System.out.println("Compressed CGN: " + compressed.size() + " bytes, decoded in " + (compressedTime / 1000000) + " ms");
+		System.out.println();
+		assertTrue(compressed.size() < raw.size());
+	}
+
+	@Test(timeout = 5000L)
+	public void lazyGame() throws ChessException, IOException
+	{
+		System.out.println("Lazy Game\n");
+		final String pgn = "[Event \"Ünïcödé\"]\n[Result \"1-0\"]\n\n1. e4 { A rather long annotation to span several buffer refills } e5 2. Nf3 Nc6 1-0\n\n" +
+				"[Event \"Promotion\"]\n[FEN \"3k4/8/8/8/8/8/7p/R3K3 b Q -\"]\n\n1... h1=Q 2. O-O-O+ *\n\n" +
+				"[Event \"Scholar's mate\"]\n[Result \"1-0\"]\n\n1. e4 e5 2. Bc4 Nc6 3. Qh5 Nf6 4. Qxf7# 1-0\n";
+		final ArrayList<Game> games = Game.fromPGN(pgn);
+		final ArrayList<LazyGame> lazyPGN = Game.lazyFromPGN(pgn);
+		assertEquals(3, lazyPGN.size());
+		assertEquals("Promotion", lazyPGN.get(1).getTag("Event"));
+		assertEquals(GameStatus.WHITE_WINS, lazyPGN.get(2).getStatus());
+		assertFalse(lazyPGN.get(2).isLoaded());
+		assertEquals(games.get(2).getFEN(), lazyPGN.get(2).getFEN());
+		assertTrue(lazyPGN.get(2).isLoaded());
+		assertEquals(EndReason.CHECKMATE, lazyPGN.get(2).getGame().endReason);
+		for(CGNVersion version : CGNVersion.values())
+		{
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			new CGNWriter(os, version).setBlockSize(2).write(games).flush();
+			final InputStream is = new FilterInputStream(new ByteArrayInputStream(os.toByteArray()))
+			{
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException
+				{
+					return super.read(b, off, Math.min(1, len));
+				}
+			};
+			final CGNReader reader = new CGNReader(is, false, version, 16);
+			final ArrayList<LazyGame> lazyCGN = new ArrayList<>();
+			LazyGame game;
+			while((game = reader.readLazyGame()) != null)
+			{
+				lazyCGN.add(game);
+			}
+			assertEquals(3, lazyCGN.size());
+			for(int i = 0; i < 3; i++)
+			{
+				assertEquals(games.get(i).tags.get("Event"), lazyCGN.get(i).getTag("Event"));
+				assertEquals(games.get(i).moves.size(), lazyCGN.get(i).getPlyCount());
+				assertFalse(lazyCGN.get(i).isLoaded());
+			}
+			for(int i = 2; i >= 0; i--)
+			{
+				assertEquals(games.get(i).toUCI(), lazyCGN.get(i).getGame().toUCI());
+				assertEquals(games.get(i).getFEN(), lazyCGN.get(i).getFEN());
+				assertEquals(games.get(i).status, lazyCGN.get(i).getGame().status);
+			}
+		}
+	}
+
+	@Test(timeout = 5000L)
+	public void gameCorpus() throws ChessException, IOException
+	{
+		System.out.println("Game Corpus\n");
+		final String pgn = "[Event \"Ruy Lopez\"]\n[White \"Dvořák\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 1-0\n\n" +
+				"[Event \"Ruy Lopez\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Bxc6 dxc6 1/2-1/2\n\n" +
+				"[Event \"Italian\"]\n[TimeControl \"180+2\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 *\n\n" +
+				"[Event \"Promotion\"]\n[FEN \"3k4/8/8/8/8/8/7p/R3K3 b Q -\"]\n\n1... h1=N 2. O-O-O+ Ke7 0-1\n\n" +
+				"[Event \"Scholar's mate\"]\n\n1. e4 e5 2. Bc4 Nc6 3. Qh5 Nf6 4. Qxf7# 1-0\n";
+		final ArrayList<Game> games = Game.fromPGN(pgn);
+		int plies = 0;
+		for(Game game : games)
+		{
+			plies += game.moves.size();
+		}
+		final ByteArrayOutputStream cgn = new ByteArrayOutputStream();
+		new CGNWriter(cgn).write(games).flush();
+		for(GameCorpus corpus : new GameCorpus[]{new GameCorpus().addAll(games), new GameCorpus(4).addPGN(new ByteArrayInputStream(pgn.getBytes(Charset.forName("UTF-8")))), new GameCorpus(0).addCGN(new ByteArrayInputStream(cgn.toByteArray()), CGNVersion.latest)})
+		{
+			assertEquals(games.size(), corpus.size());
+			// Only the moves which a second game plays after the same moves become nodes: 1. e4 e5 2. Nf3 Nc6 3. Bb5 a6
+			assertEquals(Math.min(6, corpus.trieDepth), corpus.getNodeCount());
+			for(int i = 0; i < games.size(); i++)
+			{
+				final Game game = corpus.getGame(i);
+				assertEquals(games.get(i).moves.size(), corpus.getPlyCount(i));
+				assertEquals(games.get(i).tags.get("Event"), corpus.getTag(i, "Event"));
+				assertEquals(games.get(i).toUCI(), game.toUCI());
+				assertEquals(games.get(i).getFEN(), game.getFEN());
+				assertEquals(games.get(i).status, game.status);
+				assertEquals(games.get(i).endReason, game.endReason);
+				assertEquals(games.get(i).timeControl, game.timeControl);
+			}
+		}
+		assertEquals("Dvořák", new GameCorpus().addAll(games).getGame(0).tags.get("White"));
+	}
+
+	@Test(timeout = 60000L)
+	public void gameCorpusMemory() throws ChessException
+	{
+		System.out.println("Game Corpus Memory\n");
+		final Random random = new Random(1337);
+		final GameCorpus corpus = new GameCorpus();
+		final ArrayList<Game> games = new ArrayList<>();
+		long flatBytes = 0;
+		for(int i = 0; i < 2000; i++)
+		{
+			// The first 16 plies mostly follow the first move in the list, so openings are shared like in real archives, and then up to 19 random plies follow.
+			// Moves after the last shared one take 2 bytes in either store, so longer games wouldn't change the difference.
+			final Game game = new Game().start();
+			final int plies = 16 + random.nextInt(20);
+			play:
+			while(game.moves.size() < plies)
+			{
+				final ArrayList<Move> moves = game.getPossibleMoves(true);
+				Move move = moves.get(game.moves.size() < 16 ? random.nextInt(4) / 3 : random.nextInt(moves.size()));
+				for(int tries = 0; !move.isLegal(); tries++)
+				{
+					if(tries == 50)
+					{
+						break play;
+					}
+					move = moves.get(random.nextInt(moves.size()));
+				}
+				move.commit(false, true);
+			}
+			corpus.add(game);
+			games.add(game);
+			// A flat store would keep a reference to a packed short[] of every game.
+			flatBytes += 4 + 16 + 2L * game.moves.size();
+		}
+		final long corpusBytes = corpus.getMoveBytes();
+		System.out.println("Flat: " + flatBytes / games.size() + " bytes per game, Corpus: " + corpusBytes / games.size() + " bytes per game, " + corpus.getNodeCount() + " nodes\n");
+		assertTrue(corpusBytes < flatBytes);
+		for(int i = 0; i < games.size(); i += 100)
+		{
+			assertEquals(games.get(i).toUCI(), corpus.getGame(i).toUCI());
+		}
+	}
+
+	@Test(timeout = 10000L)
+	public void gameExporter() throws ChessException, IOException
+	{
+		System.out.println("Game Exporter\n");
+		final ArrayList<Game> games = new ArrayList<>();
+		for(int i = 0; i < 50; i++)
+		{
+			games.add(Game.fromPGN("[Round \"" + i + "\"]\n\n1. e4 { Ünïcödé } e5 2. Nf3 Nc6 3. Bb5 a6 4. O-O " + (i % 3 == 0 ? "1-0" : "*") + "\n").get(0));
+		}
+		final StringBuilder expected = new StringBuilder();
+		for(Game game : games)
+		{
+			expected.append(game.toPGN(false, false, false, AlgebraicNotationVariation.FAN, Language.GERMAN)).append("\n");
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new GameExporter().setPGN(AlgebraicNotationVariation.FAN, Language.GERMAN).setChunkSize(3).setMaxPending(2).export(games, os);
+		assertEquals(expected.toString(), new String(os.toByteArray(), Charset.forName("UTF-8")));
+		for(CGNVersion version : CGNVersion.values())
+		{
+			final ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+			new CGNWriter(sequential, version).setBlockSize(7).write(games).flush();
+			os = new ByteArrayOutputStream();
+			new GameExporter().setCGN(version).setChunkSize(7).export(games, os);
+			assertTrue(Arrays.equals(sequential.toByteArray(), os.toByteArray()));
+		}
+	}
+
+	@Test(timeout = 5000L)
+	public void pgnWriter() throws ChessException, IOException
+	{
+		System.out.println("PGN Writer\n");
+		final ArrayList<Game> games = Game.fromPGN("1. e4 { Ünïcödé } e5 2. Nf3 Nc6 3. Bb5 a6 4. O-O 1-0\n\n[FEN \"3k4/8/8/8/8/8/7p/R3K3 b Q -\"]\n\n1... h1=Q 2. O-O-O+ *\n");
+		games.get(0).tags.put("Event", "The \"Immortal\" game");
+		final StringBuilder expected = new StringBuilder();
+		for(Game game : games)
+		{
+			expected.append(game.toPGN(false, false, false, AlgebraicNotationVariation.LAN, Language.ENGLISH)).append("\n");
+		}
+		final StringWriter writer = new StringWriter();
+		new PGNWriter(writer, AlgebraicNotationVariation.LAN, Language.ENGLISH, false, false, false).write(games).flush();
+		assertEquals(expected.toString(), writer.toString());
+		final StringBuilder pgn = new StringBuilder();
+		games.get(0).writePGN(pgn);
+		assertEquals(games.get(0).toPGN(), pgn.toString());
+		assertTrue(pgn.toString().startsWith("[Event \"The \\\"Immortal\\\" game\"]\n"));
+	}
+
+	@Test(timeout = 10000L)
+	public void gameIngester() throws ChessException, IOException
+	{
+		System.out.println("Game Ingester\n");
+		final Path directory = Files.createTempDirectory("compactchess");
+		final Path subdirectory = Files.createDirectory(directory.resolve("2019-01"));
+		final Path good = directory.resolve("a.pgn");
+		final Path bad = directory.resolve("b.PGN");
+		final Path cgn = subdirectory.resolve("c.cgn");
+		final Path ignored = directory.resolve("d.txt");
+		Files.write(good, "1. e4 e5 *\n\n1. d4 d5 *\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(bad, "1. e4 e5 *\n\n1. e5 *\n\n1. c4 *\n".getBytes(StandardCharsets.UTF_8));
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new CGNWriter(os).write(Game.fromPGN("1. Nf3 *\n\n1. g3 *\n\n1. b3 *\n")).flush();
+		Files.write(cgn, os.toByteArray());
+		Files.write(ignored, "1. e4 *".getBytes(StandardCharsets.UTF_8));
+		try
+		{
+			assertEquals(Arrays.asList(cgn, good, bad), GameIngester.findFiles(directory));
+			final Thread thread = Thread.currentThread();
+			final HashMap<Path, Integer> games = new HashMap<>();
+			final HashMap<Path, Throwable> errors = new HashMap<>();
+			final GameIngester ingester = new GameIngester().setThreads(2).setQueueSize(1).ingest(directory, new GameIngester.Consumer()
+			{
+				@Override
+				public void game(Path file, Game game)
+				{
+					assertSame(thread, Thread.currentThread());
+					games.put(file, (games.containsKey(file) ? games.get(file) : 0) + 1);
+				}
+
+				@Override
+				public void fileDone(Path file, int count, Throwable error, int filesDone, int files)
+				{
+					assertSame(thread, Thread.currentThread());
+					assertEquals(3, files);
+					assertEquals(errors.size() + 1, filesDone);
+					assertEquals((int) games.get(file), count);
+					errors.put(file, error);
+				}
+			});
+			assertEquals(3, ingester.getFiles());
+			assertEquals(1, ingester.getFailedFiles());
+			assertEquals(6, ingester.getGames());
+			assertEquals(2, (int) games.get(good));
+			assertEquals(1, (int) games.get(bad));
+			assertEquals(3, (int) games.get(cgn));
+			assertNull(errors.get(good));
+			assertTrue(errors.get(bad) instanceof ChessException);
+			assertNull(errors.get(cgn));
+		}
+		finally
+		{
+			for(Path file : new Path[]{good, bad, cgn, ignored, subdirectory, directory})
+			{
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	@Test(timeout = 10000L)
+	public void gamePipeline() throws ChessException, IOException
+	{
+		System.out.println("Game Pipeline\n");
+		final String pgn = "[White \"A\\\\B\"]\n\n1. e4 e5 2. Nf3 1-0\n\n1. d4 *\n\n1. c4 c5 1/2-1/2\n\n1. f3 e5 2. g4 Qh4# 0-1\n";
+		final GamePipeline.Stats stats = new GamePipeline.Stats();
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new GamePipeline(GamePipeline.Source.pgn(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)), Language.ENGLISH, false, false)).setBufferSize(1).filter(new GamePipeline.Filter()
+		{
+			@Override
+			public boolean accept(Game game)
+			{
+				return game.moves.size() > 1;
+			}
+		}).then(stats, 3).run(GamePipeline.Sink.ndjson(os));
+		assertEquals(3, stats.getGames());
+		assertEquals(9, stats.getPlies());
+		assertEquals(1, stats.getGames(GameStatus.WHITE_WINS));
+		assertEquals(1, stats.getGames(GameStatus.DRAW));
+		assertEquals(1, stats.getGames(GameStatus.BLACK_WINS));
+		final String[] lines = new String(os.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		assertEquals(3, lines.length);
+		// The stats stage has 3 threads, so the games may have been reordered.
+		Arrays.sort(lines);
+		for(String line : lines)
+		{
+			assertTrue(line.startsWith("{\"tags\":{\"Event\":\"-\",\"Site\":\"-\","));
+		}
+		assertTrue(lines[0].endsWith("},\"moves\":[\"f2f3\",\"e7e5\",\"g2g4\",\"d8h4\"]}"));
+		assertTrue(lines[1].endsWith("},\"moves\":[\"c2c4\",\"c7c5\"]}"));
+		assertTrue(lines[2].contains(",\"White\":\"A\\\\\\\\B\",\"Result\":\"1-0\","));
+		assertTrue(lines[2].endsWith("},\"moves\":[\"e2e4\",\"e7e5\",\"g1f3\"]}"));
+		final ArrayList<Game> games = new ArrayList<>();
+		try
+		{
+			new GamePipeline(GamePipeline.Source.of(Game.fromPGN(pgn))).setBufferSize(1).then(new GamePipeline.Stage()
+			{
+				@Override
+				public Game process(Game game) throws ChessException
+				{
+					if(game.moves.size() == 1)
+					{
+						throw new ChessException("Too short");
+					}
+					return game;
+				}
+			}, 2).run(GamePipeline.Sink.to(games));
+			fail();
+		}
+		catch(ChessException e)
+		{
+			assertEquals("Too short", e.getMessage());
+		}
+		assertTrue(games.size() < 4);
+	}
+
+	@Test(timeout = 10000L)
+	public void gameDeduplicator() throws ChessException, IOException
+	{
+		System.out.println("Game Deduplicator\n");
+		final String pgn = "[White \"A\"]\n\n1. e4 e5 2. Nf3 *\n\n[White \"B\"]\n\n1. e4 {Best by test} e5 2. Nf3 1-0\n\n1. e4 e5 2. Nc3 *\n\n[FEN \"rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1\"]\n\n1... e5 2. Nf3 *\n";
+		final ArrayList<Game> games = Game.fromPGN(pgn);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new CGNWriter(os).write(games).flush();
+		final ArrayList<Game> cgnGames = Game.fromCGN(new ByteArrayInputStream(os.toByteArray()));
+		assertTrue(Arrays.equals(GameDeduplicator.hash(games.get(0)), GameDeduplicator.hash(games.get(1))));
+		assertTrue(Arrays.equals(GameDeduplicator.hash(games.get(0)), GameDeduplicator.hash(cgnGames.get(0))));
+		assertFalse(Arrays.equals(GameDeduplicator.hash(games.get(0)), GameDeduplicator.hash(games.get(2))));
+		assertFalse(Arrays.equals(GameDeduplicator.hash(games.get(0)), GameDeduplicator.hash(games.get(3))));
+		assertFalse(Arrays.equals(GameDeduplicator.hash(games.get(0), "White"), GameDeduplicator.hash(games.get(1), "White")));
+		final ArrayList<Game> unique = new ArrayList<>();
+		final GameDeduplicator deduplicator = new GameDeduplicator();
+		new GamePipeline(GamePipeline.Source.pgn(new ByteArrayInputStream((pgn + "\n" + pgn).getBytes(StandardCharsets.UTF_8)), Language.ENGLISH, false, true)).filter(deduplicator).run(GamePipeline.Sink.to(unique));
+		assertEquals(3, unique.size());
+		assertEquals("A", unique.get(0).tags.get("White"));
+		assertEquals(3, deduplicator.getUnique());
+		assertEquals(5, deduplicator.getDuplicates());
+		final GameDeduplicator byWhite = new GameDeduplicator().setKeyTags("White");
+		for(Game game : games)
+		{
+			assertTrue(byWhite.add(game));
+		}
+		assertFalse(byWhite.add(cgnGames.get(1)));
+		final String[] whiteMoves = new String[]{"a3", "a4", "b3", "b4", "c3", "c4", "d3", "d4", "e3", "e4", "f3", "f4", "g3", "g4", "h3", "h4", "Na3", "Nc3", "Nf3", "Nh3"};
+		final StringBuilder openings = new StringBuilder();
+		for(String whiteMove : whiteMoves)
+		{
+			for(String blackMove : whiteMoves)
+			{
+				openings.append("1. ").append(whiteMove).append(" ").append(blackMove.replace('3', '6').replace('4', '5')).append(" *\n\n");
+			}
+		}
+		final ArrayList<Game> openingGames = Game.fromPGN(openings.toString());
+		final GameDeduplicator growing = new GameDeduplicator(1);
+		final long memory = growing.getMemory();
+		for(Game game : openingGames)
+		{
+			assertTrue(growing.add(game));
+		}
+		for(Game game : openingGames)
+		{
+			assertFalse(growing.add(game));
+		}
+		assertEquals(400, growing.getUnique());
+		assertEquals(400, growing.getDuplicates());
+		assertTrue(growing.getMemory() > memory);
+		final ArrayList<Game> parallelUnique = new ArrayList<>();
+		new GamePipeline(GamePipeline.Source.pgn(new ByteArrayInputStream((openings.toString() + openings.toString()).getBytes(StandardCharsets.UTF_8)), Language.ENGLISH, false, true)).then(growing, 4).run(GamePipeline.Sink.to(parallelUnique));
+		assertEquals(0, parallelUnique.size());
+		assertEquals(1200, growing.getDuplicates());
+		assertFalse(growing.add(openingGames.get(0)));
+		growing.close();
+		assertEquals(0, growing.getMemory());
+		assertEquals(400, growing.getUnique());
+		try
+		{
+			growing.add(openingGames.get(0));
+			fail();
+		}
+		catch(IllegalStateException ignored)
+		{
+		}
+	}
+
+	@Test(timeout = 10000L)
+	public void gameValidator() throws ChessException, IOException
+	{
+		System.out.println("Game Validator\n");
+		final String pgn = "1. e4 e5 2. Nf3 *\n\n1. e4 e5 2. Ke3 *\n\n1. e4 e5 2. Bb5 d6 3. Bxe8 *\n\n[FEN \"4k3/8/8/8/8/8/4r3/4K2R w K - 0 1\"]\n\n1. O-O *\n\n1. e4 e5 2. e4e5 *\n\n1. d4 d5 2. c4 dxc4 1-0\n";
+		final ArrayList<GameValidator.Report> reports = new ArrayList<>();
+		final GameValidator validator = new GameValidator().setChunkSize(2).setMaxPending(1).validatePGN(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)), new GameValidator.Consumer()
+		{
+			@Override
+			public void report(GameValidator.Report report)
+			{
+				reports.add(report);
+			}
+		});
+		assertEquals(6, reports.size());
+		for(int i = 0; i < reports.size(); i++)
+		{
+			assertEquals(i + 1, reports.get(i).game);
+		}
+		assertTrue(reports.get(0).isLegal());
+		assertEquals(0, reports.get(0).illegalPly);
+		assertEquals(3, reports.get(0).plies);
+		assertEquals("OK", reports.get(0).toString());
+		assertEquals(3, reports.get(1).illegalPly);
+		assertEquals("Ply 3: No such piece 'K' for Ke3", reports.get(1).toString());
+		assertEquals(4, reports.get(2).illegalPly);
+		assertEquals("d7d6", reports.get(2).move);
+		assertEquals("You can't play a move which would leave you in check", reports.get(2).reason);
+		assertEquals("Ply 1 (e1g1): You can't castle while in check", reports.get(3).toString());
+		assertEquals("Ply 3 (e4e5): Your pawn on e4 can't move to e5", reports.get(4).toString());
+		assertTrue(reports.get(5).isLegal());
+		assertEquals(6, validator.getGames());
+		assertEquals(4, validator.getInvalidGames());
+		assertEquals(3 + 2 + 3 + 0 + 2 + 4, validator.getPlies());
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new CGNWriter(os).write(Game.fromPGN("1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 *\n\n1. e4 d5 2. exd5 c6 3. dxc6 Qd7 4. cxd7+ Kd8 5. dxc8=Q+ *\n")).flush();
+		reports.clear();
+		new GameValidator().validateCGN(new ByteArrayInputStream(os.toByteArray()), CGNVersion.latest, new GameValidator.Consumer()
+		{
+			@Override
+			public void report(GameValidator.Report report)
+			{
+				reports.add(report);
+			}
+		});
+		assertEquals(2, reports.size());
+		assertTrue(reports.get(0).isLegal());
+		assertEquals(10, reports.get(0).plies);
+		assertTrue(reports.get(1).isLegal());
+		assertEquals(9, reports.get(1).plies);
+		final Game game = Game.fromPGN("1. e4 e5 2. Nf3 *", Language.ENGLISH, false, true).get(0);
+		assertTrue(GameValidator.validate(game).isLegal());
+		// Bad tags only affect their own game.
+		reports.clear();
+		final String badTags = "1. e4 *\n\n[Result \"foo\"]\n\n1. d4 *\n\n[FEN \"not a position\"]\n\n1. c4 *\n\n1. Nf3 *\n";
+		new GameValidator().validatePGN(new ByteArrayInputStream(badTags.getBytes(StandardCharsets.UTF_8)), new GameValidator.Consumer()
+		{
+			@Override
+			public void report(GameValidator.Report report)
+			{
+				reports.add(report);
+			}
+		});
+		assertEquals(4, reports.size());
+		assertTrue(reports.get(0).isLegal());
+		assertTrue(reports.get(1).isLegal());
+		assertFalse(reports.get(2).isLegal());
+		assertEquals(-1, reports.get(2).illegalPly);
+		assertTrue(reports.get(3).isLegal());
+		assertEquals(4, reports.get(3).game);
+	}
+
+	@Test(timeout = 60000L)
+	public void gameValidatorBenchmark() throws ChessException, IOException
+	{
+		System.out.println("Game Validator Benchmark\n");
+		final Random random = new Random(1337);
+		final ArrayList<Game> games = new ArrayList<>();
+		long plies = 0;
+		for(int i = 0; i < 20; i++)
+		{
+			final Game game = new Game().start();
+			play:
+			while(game.status == GameStatus.ONGOING && game.moves.size() < 160)
+			{
+				final ArrayList<Move> moves = game.getPossibleMoves(true);
+				Move move = moves.get(random.nextInt(moves.size()));
+				for(int tries = 0; !move.isLegal(); tries++)
+				{
+					if(tries == 100)
+					{
+						break play;
+					}
+					move = moves.get(random.nextInt(moves.size()));
+				}
+				move.commit();
+			}
+			for(int j = 0; j < 25; j++)
+			{
+				games.add(game);
+				plies += game.moves.size();
+			}
+		}
+		final ByteArrayOutputStream cgn = new ByteArrayOutputStream();
+		new CGNWriter(cgn, CGNVersion.V3).write(games).flush();
+		final GameValidator.Consumer consumer = new GameValidator.Consumer()
+		{
+			@Override
+			public void report(GameValidator.Report report)
+			{
+				assertTrue(report.toString(), report.isLegal());
+			}
+		};
+		long time = Long.MAX_VALUE;
+		for(int run = 0; run < 3; run++)
+		{
+			final long start = System.nanoTime();
+			assertEquals(plies, new GameValidator().validateCGN(new ByteArrayInputStream(cgn.toByteArray()), CGNVersion.V3, consumer).getPlies());
+			time = Math.min(time, System.nanoTime() - start);
+		}
+		System.out.println(plies + " plies validated in " + (time / 1000000) + " ms, " + (plies * 1000000000L / time) + " plies/s");
+		System.out.println();
+	}
+
+	@Test(timeout = 5000L)
+	public void trustedReplay() throws ChessException, IOException
+	{
+		System.out.println("Trusted Replay\n");
+		final String pgn = "[Event \"Castling and en passant\"]\n\n1. e4 Nf6 2. e5 d5 3. exd6 e6 4. Nf3 Be7 5. Bc4 O-O 6. O-O Nc6 7. dxe7 Nxe7 8. Re1 Ng6 *\n\n" +
+				"[Event \"Scholar's mate\"]\n\n1. e4 e5 2. Bc4 Nc6 3. Qh5 Nf6 4. Qxf7# 1-0\n\n" +
+				"[Event \"Pinned knight\"]\n[FEN \"4k3/8/8/b7/8/2N3N1/8/4K3 w - -\"]\n\n1. Ne4 Kd8 *\n\n" +
+				"[Event \"Promotion\"]\n[FEN \"3k4/8/8/8/8/8/7p/R3K3 b Q -\"]\n\n1... h1=Q+ 2. Kd2 Qxa1 *\n";
+		final ArrayList<Game> games = Game.fromPGN(pgn);
+		final ArrayList<Game> trustedGames = Game.fromPGN(pgn, Language.ENGLISH, false, true);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		for(Game game : games)
+		{
+			game.toCGN(os);
+		}
+		final ArrayList<Game> trustedCGNGames = Game.fromCGN(new ByteArrayInputStream(os.toByteArray()), false, CGNVersion.latest, true);
+		assertEquals(games.size(), trustedGames.size());
+		assertEquals(games.size(), trustedCGNGames.size());
+		for(int i = 0; i < games.size(); i++)
+		{
+			for(Game trusted : new Game[]{trustedGames.get(i), trustedCGNGames.get(i)})
+			{
+				assertEquals(games.get(i).getFEN(), trusted.getFEN());
+				assertEquals(games.get(i).status, trusted.status);
+				assertEquals(games.get(i).endReason, trusted.endReason);
+				assertEquals(games.get(i).toPGN(true, false, false), trusted.toPGN(true, false, false));
+			}
+		}
+		assertEquals(EndReason.CHECKMATE, trustedCGNGames.get(1).endReason);
+		assertEquals(GameStatus.WHITE_WINS, trustedCGNGames.get(1).status);
+		assertFalse(trustedGames.get(0).whiteCanCastle);
+		assertFalse(trustedGames.get(0).blackCanCastleQueenside);
+	}
+
+	@Test(timeout = 10000L)
+	public void cgnIndex() throws ChessException, IOException
+	{
+		System.out.println("CGN Index\n");
+		final ArrayList<Game> games = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+		{
+			games.add(Game.fromPGN("[Round \"" + i + "\"]\n[Date \"2019.03." + (10 + i) + "\"]\n[WhiteElo \"" + (2000 + i) + "\"]\n\n1. e4 e5 2. Nf3 Nc6 " + (i % 2 == 0 ? "1-0" : "1/2-1/2") + "\n").get(0));
+		}
+		for(CGNVersion version : CGNVersion.values())
+		{
+			final File cgn = File.createTempFile("compactchess", ".cgn");
+			final File file = File.createTempFile("compactchess", ".cgni");
+			cgn.deleteOnExit();
+			file.deleteOnExit();
+			final FileOutputStream os = new FileOutputStream(cgn);
+			new CGNWriter(os, version).setBlockSize(4).write(games).close();
+			CGNIndex.build(cgn, version, file, version != CGNVersion.V2).close();
+			final CGNIndex index = new CGNIndex(cgn, file).setTrusted(version == CGNVersion.V3);
+			assertEquals(10, index.size());
+			assertEquals("7", index.getGame(7).tags.get("Round"));
+			assertEquals(games.get(7).toUCI(), index.getGame(7).toUCI());
+			final ArrayList<Game> range = index.getGames(3, 10);
+			assertEquals(7, range.size());
+			for(int i = 0; i < range.size(); i++)
+			{
+				assertEquals(String.valueOf(3 + i), range.get(i).tags.get("Round"));
+			}
+			assertEquals(games.get(9).toUCI(), index.getGames(0, 10).get(9).toUCI());
+			if(version == CGNVersion.V2)
+			{
+				try
+				{
+					index.getDate(0);
+					fail("Header fields were read from an index without them");
+				}
+				catch(IllegalStateException ignored)
+				{
+				}
+			}
+			else
+			{
+				assertEquals(20190315, index.getDate(5));
+				assertEquals(2005, index.getElo(5, Color.WHITE));
+				assertEquals(-1, index.getElo(5, Color.BLACK));
+				assertEquals(GameStatus.DRAW, index.getStatus(5));
+				assertEquals(GameStatus.WHITE_WINS, index.getStatus(6));
+			}
+			index.close();
+		}
+	}
+
+	/**
+	 * Runs the given batch command with the given input as stdin.
+	 *
+	 * @return The exit code followed by what was written to stdout and what was written to stderr.
+	 */
+	private static Object[] batch(byte[] input, String... args)
+	{
+		final InputStream in = System.in;
+		final PrintStream out = System.out;
+		final PrintStream err = System.err;
+		final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		final int exitCode;
+		try
+		{
+			System.setIn(new ByteArrayInputStream(input));
+			System.setOut(new PrintStream(stdout, true));
+			System.setErr(new PrintStream(stderr, true));
+			exitCode = Batch.run(args);
+		}
+		finally
+		{
+			System.setIn(in);
+			System.setOut(out);
+			System.setErr(err);
+		}
+		return new Object[]{exitCode, stdout.toByteArray(), new String(stderr.toByteArray(), StandardCharsets.UTF_8)};
+	}
+
+	@Test(timeout = 10000L)
+	public void batch() throws ChessException
+	{
+		System.out.println("Batch\n");
+		final String pgn = "[White \"A\"]\n\n1. e4 e5 2. Nf3 Nc6 1-0\n\n1. d4 d5 2. c4 dxc4 *\n\n[FEN \"4k3/8/8/8/8/8/8/4K2R w K - 0 1\"]\n\n1. O-O Kd7 1/2-1/2\n";
+		final byte[] pgnBytes = pgn.getBytes(StandardCharsets.UTF_8);
+		final Object[] toCGN = Tests.batch(pgnBytes, "convert", "--from", "pgn", "--to", "cgn", "--threads", "2");
+		assertEquals(0, toCGN[0]);
+		final Object[] toPGN = Tests.batch((byte[]) toCGN[1], "convert", "--from", "cgn", "--to", "pgn", "--threads", "2");
+		assertEquals(0, toPGN[0]);
+		final ArrayList<Game> games = Game.fromPGN(pgn);
+		final ArrayList<Game> converted = Game.fromPGN(new String((byte[]) toPGN[1], StandardCharsets.UTF_8));
+		assertEquals(games.size(), converted.size());
+		for(int i = 0; i < games.size(); i++)
+		{
+			assertEquals(games.get(i).toUCI(), converted.get(i).toUCI());
+			assertEquals(games.get(i).status, converted.get(i).status);
+		}
+		assertEquals("A", converted.get(0).tags.get("White"));
+		assertTrue(((String) toPGN[2]).startsWith("3 games, 10 plies in "));
+		final Object[] legal = Tests.batch(pgnBytes, "validate");
+		assertEquals(0, legal[0]);
+		assertEquals("1 OK\n2 OK\n3 OK\n", new String((byte[]) legal[1], StandardCharsets.UTF_8));
+		final byte[] mixed = (pgn + "\n1. e4 e5 2. Ke3 *\n").getBytes(StandardCharsets.UTF_8);
+		final Object[] illegal = Tests.batch(mixed, "validate");
+		assertEquals(1, illegal[0]);
+		assertEquals("1 OK\n2 OK\n3 OK\n4 Ply 3: No such piece 'K' for Ke3\n", new String((byte[]) illegal[1], StandardCharsets.UTF_8));
+		final Object[] stats = Tests.batch(mixed, "stats");
+		assertEquals(0, stats[0]);
+		final String statsOutput = new String((byte[]) stats[1], StandardCharsets.UTF_8);
+		assertTrue(statsOutput.startsWith("Games: 3\nPlies: 10\nAverage plies: 3.3"));
+		assertTrue(statsOutput.contains("Longest game: 4 plies\nInvalid games: 1\n"));
+		final Object[] broken = Tests.batch(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, "convert", "--from", "cgn", "--to", "pgn");
+		assertEquals(1, broken[0]);
+		assertTrue(((String) broken[2]).contains(" games, 0 plies in "));
+		assertEquals(2, Tests.batch(pgnBytes, "convert", "--from", "txt")[0]);
+	}
+
 	@Test(timeout = 10000L)
 	public void engine() throws ChessException, IOException, InterruptedException
 	{